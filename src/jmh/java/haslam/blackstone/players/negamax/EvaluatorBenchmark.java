@@ -0,0 +1,32 @@
+package haslam.blackstone.players.negamax;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the evaluation functions: the state evaluation run at the
+ * leaves, and the field evaluation used to order moves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EvaluatorBenchmark {
+
+    @Benchmark
+    public int evaluateState(PositionState position) {
+        return Evaluator.evaluateState(position.state, 0);
+    }
+
+    @Benchmark
+    public int evaluateField(PositionState position) {
+        State state = position.state;
+        int sum = 0;
+        for(int field : position.candidates) {
+            sum += Evaluator.evaluateField(state, field, state.currentIndex);
+        }
+        return sum;
+    }
+}
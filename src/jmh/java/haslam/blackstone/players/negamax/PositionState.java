@@ -0,0 +1,35 @@
+package haslam.blackstone.players.negamax;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark input: one of the {@link BenchmarkPositions}, set up on a new
+ * state. Positions 0-1 are openings, 2-3 middlegames and 4-5 tactical
+ * positions with open threats on the board.
+ */
+@State(Scope.Thread)
+public class PositionState {
+
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int position;
+
+    haslam.blackstone.players.negamax.State state;
+    // Empty fields near the stones, the moves the search would consider
+    int[] candidates;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.state = new haslam.blackstone.players.negamax.State(
+                BenchmarkPositions.SIZE);
+        BenchmarkPositions.parse(BenchmarkPositions.POSITIONS[position],
+                BenchmarkPositions.SIZE).forEach(state::makeMove);
+        this.candidates = new int[state.getCandidateCount(2)];
+        for(int i = 0; i < candidates.length; i++) {
+            candidates[i] = state.getCandidate(2, i);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package haslam.blackstone.players.negamax;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for move generation and ordering, and a complete search to a
+ * fixed depth.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    private static final int TABLE_SIZE_MB = 16;
+
+    /**
+     * Search of the position, reused by every invocation.
+     */
+    @State(Scope.Thread)
+    public static class OrderingState {
+
+        NegamaxSearch search;
+        int radius;
+        int[] moves;
+
+        @Setup(Level.Trial)
+        public void setup(PositionState position) {
+            NegamaxSettings settings = NegamaxSettings.withDefaults();
+            this.search = new NegamaxSearch(position.state,
+                    new TranspositionTable(TABLE_SIZE_MB), settings, false);
+            this.radius = settings.getCandidateRadius();
+            this.moves = new int[BenchmarkPositions.SIZE
+                    * BenchmarkPositions.SIZE];
+        }
+    }
+
+    /**
+     * New search of the position for every invocation, starting from an
+     * empty transposition table and empty ordering heuristics, so that every
+     * invocation searches the same tree.
+     */
+    @State(Scope.Thread)
+    public static class SearchState {
+
+        @Param({"4"})
+        public int depth;
+
+        NegamaxSearch search;
+        private TranspositionTable table;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            this.table = new TranspositionTable(TABLE_SIZE_MB);
+        }
+
+        @Setup(Level.Invocation)
+        public void setupInvocation(PositionState position) {
+            table.clear();
+            this.search = new NegamaxSearch(new haslam.blackstone.players
+                    .negamax.State(position.state), table,
+                    NegamaxSettings.withDefaults(), false);
+        }
+    }
+
+    @Benchmark
+    public int getSortedMoves(OrderingState ordering) {
+        return ordering.search.getSortedMoves(ordering.search.getState(),
+                ordering.radius, ordering.moves, 0);
+    }
+
+    @Benchmark
+    public Object negamax(SearchState search) {
+        return search.search.iterativeDeepening(search.depth, search.depth,
+                Long.MAX_VALUE);
+    }
+}
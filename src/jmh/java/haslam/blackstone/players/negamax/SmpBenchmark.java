@@ -0,0 +1,67 @@
+package haslam.blackstone.players.negamax;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the search scales with the number of threads. Every position
+ * in {@link BenchmarkPositions} is searched to a fixed depth, with an empty
+ * transposition table for each position, so the time per thread count gives
+ * the speedup. Run on a machine with at least as many cores as the largest
+ * thread count, e.g. -Djmh.args="-p threads=1,2,4 SmpBenchmark".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SmpBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"5"})
+    public int depth;
+
+    private NegamaxPlayer player;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Per-iteration search info is not useful here
+        Configurator.setLevel(NegamaxSearch.class.getName(),
+                org.apache.logging.log4j.Level.WARN);
+        Configurator.setLevel(NegamaxPlayer.class.getName(),
+                org.apache.logging.log4j.Level.WARN);
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setThreads(threads);
+        settings.setHashKeptBetweenGames(false);
+        this.player = new NegamaxPlayer(settings);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        player.cleanup();
+    }
+
+    @Benchmark
+    public long search() {
+        long nodes = 0;
+        for(String position : BenchmarkPositions.POSITIONS) {
+            player.setupGame(1, BenchmarkPositions.SIZE, 0, 0);
+            player.loadPosition(BenchmarkPositions.parse(position,
+                    BenchmarkPositions.SIZE));
+            player.search(depth, Long.MAX_VALUE);
+            nodes += player.getNodeCount();
+        }
+        return nodes;
+    }
+}
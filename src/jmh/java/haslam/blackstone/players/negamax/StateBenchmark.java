@@ -0,0 +1,41 @@
+package haslam.blackstone.players.negamax;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for updating and querying the state, which happens at every
+ * node of the search. Each invocation covers every candidate move of the
+ * position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateBenchmark {
+
+    @Benchmark
+    public long makeUndoMove(PositionState position) {
+        State state = position.state;
+        long hash = 0;
+        for(int field : position.candidates) {
+            state.makeMove(field);
+            hash ^= state.getZobristHash();
+            state.undoMove(field);
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public void terminal(PositionState position, Blackhole blackhole) {
+        State state = position.state;
+        for(int field : position.candidates) {
+            state.makeMove(field);
+            blackhole.consume(state.terminal());
+            state.undoMove(field);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package haslam.blackstone.players.negamax;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the threat lookups, run on every candidate move of the
+ * position for the player to move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ThreatUtilsBenchmark {
+
+    @Benchmark
+    public void getFours(PositionState position, Blackhole blackhole) {
+        State state = position.state;
+        for(int field : position.candidates) {
+            blackhole.consume(ThreatUtils.getFours(state, field / state.size,
+                    field % state.size, state.currentIndex));
+        }
+    }
+
+    @Benchmark
+    public void getThrees(PositionState position, Blackhole blackhole) {
+        State state = position.state;
+        for(int field : position.candidates) {
+            blackhole.consume(ThreatUtils.getThrees(state, field / state.size,
+                    field % state.size, state.currentIndex));
+        }
+    }
+
+    @Benchmark
+    public void getRefutations(PositionState position, Blackhole blackhole) {
+        State state = position.state;
+        for(int field : position.candidates) {
+            blackhole.consume(ThreatUtils.getRefutations(state, field
+                    / state.size, field % state.size, state.currentIndex));
+        }
+    }
+}
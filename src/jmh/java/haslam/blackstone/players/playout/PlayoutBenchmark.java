@@ -0,0 +1,47 @@
+package haslam.blackstone.players.playout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playouts per second on one core, for every policy: each invocation plays
+ * a game out from the opening (a stone in the centre) and undoes it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+public class PlayoutBenchmark {
+
+    @Param({"UNIFORM", "NEAR", "THREATS"})
+    public PlayoutPolicy policy;
+
+    @Param({"15", "19"})
+    public int size;
+
+    private PlayoutBoard board;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.board = new PlayoutBoard(size);
+        board.makeMove((size / 2) * size + size / 2);
+        this.random = new SplittableRandom(1);
+    }
+
+    @Benchmark
+    public int playout() {
+        return board.playout(policy, random);
+    }
+}
@@ -87,10 +87,21 @@ public class GameThread extends Thread {
     @Override
     public void run() {
         // Send settings to haslam.blackstone.players.
-        players[0].setupGame(1, settings.getSize(),
-                settings.getMoveTimeMillis(), settings.getGameTimeMillis());
-        players[1].setupGame(2, settings.getSize(),
-                settings.getMoveTimeMillis(), settings.getGameTimeMillis());
+        // Limits which aren't enabled are sent as 0.
+        long moveTimeMillis = settings.moveTimingEnabled() ?
+                settings.getMoveTimeMillis() : 0;
+        long gameTimeMillis = settings.gameTimingEnabled() ?
+                settings.getGameTimeMillis() : 0;
+        // Pass search reports from the haslam.blackstone.players to listeners.
+        for (int i = 0; i < players.length; i++) {
+            int playerIndex = i + 1;
+            players[i].setSearchListener(report -> listeners.forEach(
+                    listener -> listener.searchReported(playerIndex, report)));
+        }
+        players[0].setupGame(1, settings.getSize(), moveTimeMillis,
+                gameTimeMillis);
+        players[1].setupGame(2, settings.getSize(), moveTimeMillis,
+                gameTimeMillis);
 
         // We've started this thread from a non-empty state. Set this so we
         // know when to send the board to the haslam.blackstone.players.
@@ -163,6 +174,8 @@ public class GameThread extends Thread {
         }
         players[0].cleanup();
         players[1].cleanup();
+        players[0].setSearchListener(null);
+        players[1].setSearchListener(null);
     }
 
     /**
@@ -1,12 +1,37 @@
 package haslam.blackstone.core;
 
+import haslam.blackstone.players.negamax.ArchiveSolver;
+import haslam.blackstone.players.negamax.Bench;
+import haslam.blackstone.players.negamax.OpeningBookBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Required due to JavaFX weirdness in Java 11 +.
  * http://mail.openjdk.java.net/pipermail/openjfx-dev/2018-June/021977.html
+ *
+ * Run with "bench [depth]" to benchmark the engine without the GUI,
+ * "book [options] book-file archive..." to build an opening book, or
+ * "solve [options] archive..." to mark the positions of archived games as
+ * solved.
  */
 public class Main {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("bench")) {
+            Bench.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals("book")) {
+            OpeningBookBuilder.main(Arrays.copyOfRange(args, 1,
+                    args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals("solve")) {
+            ArchiveSolver.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Launcher.main(args);
     }
 }
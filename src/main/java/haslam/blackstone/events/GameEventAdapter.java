@@ -1,6 +1,7 @@
 package haslam.blackstone.events;
 
 import haslam.blackstone.core.Move;
+import haslam.blackstone.players.SearchReport;
 
 import java.util.List;
 
@@ -50,4 +51,8 @@ public class GameEventAdapter implements GameListener {
     @Override
     public void playerAdded() {
     }
+
+    @Override
+    public void searchReported(int playerIndex, SearchReport report) {
+    }
 }
@@ -1,6 +1,7 @@
 package haslam.blackstone.events;
 
 import haslam.blackstone.core.Move;
+import haslam.blackstone.players.SearchReport;
 
 import java.util.List;
 
@@ -64,4 +65,12 @@ public interface GameListener {
      */
     void playerAdded();
 
+    /**
+     * Called when a player reports on its search, after each iteration and
+     * when the move is decided. May be called from the player's threads.
+     * @param playerIndex Player identifier
+     * @param report Search report
+     */
+    void searchReported(int playerIndex, SearchReport report);
+
 }
@@ -1,5 +1,6 @@
 package haslam.blackstone.piskvork;
 
+import haslam.blackstone.core.Defaults;
 import haslam.blackstone.core.Move;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -45,8 +46,13 @@ public class PiskvorkPlayer implements Player {
         this.playerOutputWriter = new PrintWriter(playerProcess.getOutputStream());
         playerInputThread.start();
         writePiskvorkCommand(new InfoCommand(InfoCommand.InfoCommandKey.MAX_MEMORY, "0"));
+        // A turn timeout of 0 asks the brain to play as fast as possible, so
+        // untimed moves are limited by the game time instead
+        long turnTimeMillis = moveTimeMillis > 0 ? moveTimeMillis :
+                gameTimeMillis > 0 ? gameTimeMillis :
+                Defaults.MOVE_TIMEOUT_MILLIS;
         writePiskvorkCommand(new InfoCommand(InfoCommand.InfoCommandKey.TIMEOUT_TURN,
-                String.valueOf(moveTimeMillis)));
+                String.valueOf(turnTimeMillis)));
         writePiskvorkCommand(new InfoCommand(InfoCommand.InfoCommandKey.TIMEOUT_MATCH,
                 String.valueOf(gameTimeMillis)));
         writePiskvorkCommand(new StartCommand(boardSize));
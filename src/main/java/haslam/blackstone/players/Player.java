@@ -3,6 +3,7 @@ package haslam.blackstone.players;
 import haslam.blackstone.core.Move;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface for a Gomoku player. At the most basic level, the game will call
@@ -19,8 +20,10 @@ public interface Player {
      * a game begins.
      * @param index Position (1: black, 2: white)
      * @param boardSize Size of the board (n*n intersections), usually 15 or 19
-     * @param moveTimeMillis Max time per move in milliseconds (100ms leniency)
-     * @param gameTimeMillis Max time per game in milliseconds
+     * @param moveTimeMillis Max time per move in milliseconds (100ms leniency),
+     *                       or 0 if moves are not timed
+     * @param gameTimeMillis Max time per game in milliseconds, or 0 if the
+     *                       game is not timed
      */
     void setupGame(int index, int boardSize, long moveTimeMillis,
                    long gameTimeMillis);
@@ -49,9 +52,19 @@ public interface Player {
      */
     Move beginGame(long gameTimeRemainingMillis);
 
+    /**
+     * Set a listener for reports on the player's search, sent while the
+     * player thinks about a move and once the move is decided. The listener
+     * may be called from the player's own threads. Optional, players which
+     * don't search can ignore it.
+     * @param listener Listener to receive search reports, or null to remove
+     *                 it
+     */
+    default void setSearchListener(Consumer<SearchReport> listener) { }
+
     /**
      * Clean up any resources. Called at the end of a game. Optional.
      */
     default void cleanup() { }
-    
+
 }
@@ -2,6 +2,7 @@ package haslam.blackstone.players;
 
 import haslam.blackstone.piskvork.PiskvorkPlayer;
 import haslam.blackstone.players.human.HumanPlayer;
+import haslam.blackstone.players.mcts.MctsPlayer;
 import haslam.blackstone.players.negamax.NegamaxPlayer;
 import haslam.blackstone.players.random.RandomPlayer;
 
@@ -20,6 +21,7 @@ public class PlayerRegistry {
 
     private static final List<String> availablePlayers = Arrays.asList(
             "Negamax",
+            "MCTS",
             "Human",
             "Random"
     );
@@ -49,6 +51,8 @@ public class PlayerRegistry {
         switch(playerName) {
             case "Negamax":
                 return new NegamaxPlayer();
+            case "MCTS":
+                return new MctsPlayer();
             case "Human":
                 return new HumanPlayer();
             case "Random":
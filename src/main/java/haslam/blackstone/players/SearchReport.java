@@ -0,0 +1,168 @@
+package haslam.blackstone.players;
+
+import haslam.blackstone.core.Move;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics from a player's search, sent after every iteration of the
+ * search and once more when the move is decided. Counters cover every
+ * search thread, and are kept as longs so they don't overflow on long
+ * searches.
+ *
+ * @see Player#setSearchListener
+ */
+public class SearchReport {
+
+    private final boolean finished;
+    private final int depth;
+    private final int selectiveDepth;
+    private final int score;
+    private final Move bestMove;
+    private final List<Move> principalVariation;
+    private final long nodes;
+    private final long interiorNodes;
+    private final long branches;
+    private final long hashProbes;
+    private final long hashHits;
+    private final long cutoffs;
+    private final long firstMoveCutoffs;
+    private final long searchTimeNanos;
+    private final long threatSearchTimeNanos;
+
+    /**
+     * Create a new search report.
+     * @param finished True if the move has been decided, false for a report
+     *                 on an iteration of a search still running
+     * @param depth Deepest iteration completed
+     * @param selectiveDepth Deepest ply reached
+     * @param score Score of the best move, from the player's perspective
+     * @param bestMove Best move, or null if unknown
+     * @param principalVariation Expected line of play, starting with the
+     *                           best move
+     * @param nodes Nodes visited
+     * @param interiorNodes Nodes visited which weren't leaves
+     * @param branches Moves searched at interior nodes
+     * @param hashProbes Transposition table lookups
+     * @param hashHits Transposition table lookups which found the state
+     * @param cutoffs Interior nodes which failed high (beta cutoffs)
+     * @param firstMoveCutoffs Cutoffs caused by the first move searched
+     * @param searchTimeNanos Time spent in the main search, in nanoseconds
+     * @param threatSearchTimeNanos Time spent looking for a forced win
+     *                              before the main search, in nanoseconds
+     */
+    public SearchReport(boolean finished, int depth, int selectiveDepth,
+                        int score, Move bestMove, List<Move>
+                                principalVariation, long nodes,
+                        long interiorNodes, long branches, long hashProbes,
+                        long hashHits, long cutoffs, long firstMoveCutoffs,
+                        long searchTimeNanos, long threatSearchTimeNanos) {
+        this.finished = finished;
+        this.depth = depth;
+        this.selectiveDepth = selectiveDepth;
+        this.score = score;
+        this.bestMove = bestMove;
+        this.principalVariation = Collections.unmodifiableList(
+                new ArrayList<>(principalVariation));
+        this.nodes = nodes;
+        this.interiorNodes = interiorNodes;
+        this.branches = branches;
+        this.hashProbes = hashProbes;
+        this.hashHits = hashHits;
+        this.cutoffs = cutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.searchTimeNanos = searchTimeNanos;
+        this.threatSearchTimeNanos = threatSearchTimeNanos;
+    }
+
+    /**
+     * @return True if the move has been decided, false if this is a report
+     * on an iteration of a search still running
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public Move getBestMove() {
+        return bestMove;
+    }
+
+    public List<Move> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return Nodes visited per second of the main search
+     */
+    public long getNodesPerSecond() {
+        return searchTimeNanos > 0 ? (long) (nodes * 1e9 / searchTimeNanos)
+                : 0;
+    }
+
+    /**
+     * @return Average number of moves searched at interior nodes
+     */
+    public double getAverageBranches() {
+        return interiorNodes > 0 ? (double) branches / interiorNodes : 0;
+    }
+
+    /**
+     * @return Fraction of transposition table lookups which found the state
+     */
+    public double getHashHitRate() {
+        return hashProbes > 0 ? (double) hashHits / hashProbes : 0;
+    }
+
+    /**
+     * @return Fraction of cutoffs caused by the first move searched, a
+     * measure of how good the move ordering is
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs > 0 ? (double) firstMoveCutoffs / cutoffs : 0;
+    }
+
+    public long getSearchTimeMillis() {
+        return searchTimeNanos / 1000000;
+    }
+
+    public long getThreatSearchTimeMillis() {
+        return threatSearchTimeNanos / 1000000;
+    }
+
+    /**
+     * @return Total time spent on the move so far, in milliseconds
+     */
+    public long getTimeMillis() {
+        return (searchTimeNanos + threatSearchTimeNanos) / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Depth: %d/%d, Evaluation: %d, Nodes: %d, "
+                + "Nodes/s: %d, Time: %dms (%dms threat search), "
+                + "Hash hits: %.1f%%, First move cutoffs: %.1f%%, "
+                + "Branches (avg): %.2f, PV: %s", depth, selectiveDepth,
+                score, nodes, getNodesPerSecond(), getTimeMillis(),
+                getThreatSearchTimeMillis(), getHashHitRate() * 100,
+                getFirstMoveCutoffRate() * 100, getAverageBranches(),
+                principalVariation);
+    }
+}
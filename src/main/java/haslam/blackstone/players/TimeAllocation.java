@@ -0,0 +1,68 @@
+package haslam.blackstone.players;
+
+import haslam.blackstone.core.Defaults;
+
+/**
+ * Shares out the time limits of a game between moves, for the players which
+ * manage their own time. The remaining game time is spread over the moves
+ * a player expects to have left, and capped by the move time if moves are
+ * timed.
+ */
+public final class TimeAllocation {
+
+    // Time kept back from every limit, for the work around the search
+    // (stopping the threads, passing the move back to the game)
+    private static final long SAFETY_MARGIN_MILLIS = 30;
+    // Moves a player expects to have left in a game, which decreases as
+    // the game goes on down to the minimum
+    private static final int EXPECTED_GAME_MOVES = 40;
+    private static final int MIN_MOVES_TO_GO = 12;
+    // Most of the remaining game time a single move can use (1/n)
+    private static final int MAX_GAME_TIME_FRACTION = 5;
+
+    private TimeAllocation() {
+    }
+
+    /**
+     * Work out the time a move can't exceed.
+     * @param moveTimeMillis Time per move in milliseconds, 0 if untimed
+     * @param gameTimeMillis Time per game in milliseconds, 0 if untimed
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @return Time limit, in milliseconds (at least 1)
+     */
+    public static long getMaxMoveTime(long moveTimeMillis, long
+            gameTimeMillis, long gameTimeRemainingMillis) {
+        long limit;
+        if(gameTimeMillis > 0) {
+            limit = getRemaining(gameTimeRemainingMillis)
+                    / MAX_GAME_TIME_FRACTION;
+            if(moveTimeMillis > 0) {
+                limit = Math.min(limit, moveTimeMillis - SAFETY_MARGIN_MILLIS);
+            }
+        } else if(moveTimeMillis > 0) {
+            limit = moveTimeMillis - SAFETY_MARGIN_MILLIS;
+        } else {
+            limit = Defaults.MOVE_TIMEOUT_MILLIS;
+        }
+        return Math.max(1, limit);
+    }
+
+    /**
+     * Work out a move's share of the remaining game time, for games with a
+     * game time limit.
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @param movesMade Number of moves made in the game so far, by both
+     *                  players
+     * @return Time the move should normally take, in milliseconds
+     */
+    public static long getGameTimeShare(long gameTimeRemainingMillis,
+                                        int movesMade) {
+        int movesToGo = Math.max(MIN_MOVES_TO_GO, EXPECTED_GAME_MOVES
+                - movesMade / 2);
+        return getRemaining(gameTimeRemainingMillis) / movesToGo;
+    }
+
+    private static long getRemaining(long gameTimeRemainingMillis) {
+        return Math.max(0, gameTimeRemainingMillis - SAFETY_MARGIN_MILLIS);
+    }
+}
@@ -0,0 +1,365 @@
+package haslam.blackstone.players.mcts;
+
+import haslam.blackstone.core.Move;
+import haslam.blackstone.players.Player;
+import haslam.blackstone.players.SearchReport;
+import haslam.blackstone.players.TimeAllocation;
+import haslam.blackstone.players.playout.PlayoutBoard;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Monte Carlo tree search player. Moves are chosen by playing random games
+ * from the current position and growing a tree of the moves that did best,
+ * with UCT (upper confidence bounds applied to trees) balancing the best
+ * moves so far against the least explored ones.
+ *
+ * The search runs on several threads which all grow the same tree, using
+ * virtual losses to keep them on different lines. The tree is stored in
+ * arrays sized from the memory budget in the settings, so memory use is
+ * fixed for the whole game. After each move, the part of the tree below
+ * the moves actually played is kept for the next search, when tree reuse is
+ * enabled.
+ *
+ * @see MctsSearch
+ * @see Tree
+ */
+public class MctsPlayer implements Player {
+
+    private static final Logger LOGGER =
+            LogManager.getLogger(MctsPlayer.class.getName());
+
+    // Score reported for a win rate of 100% (and minus this for 0%)
+    private static final int REPORT_SCORE_SCALE = 1000;
+
+    private final MctsSettings settings;
+
+    private int size;
+    private long moveTimeMillis;
+    private long gameTimeMillis;
+    private volatile Consumer<SearchReport> searchListener;
+
+    // Tree being searched, and a spare one to copy the reused part into
+    private Tree tree;
+    private Tree spare;
+    private int treeSizeMb;
+    // Node of the current position in the tree, or -1 if it isn't in it
+    private int currentNode;
+
+    private MctsSearch mainSearch;
+    private MctsSearch[] helperSearches;
+    private ExecutorService helperPool;
+
+    /**
+     * Create a new MCTS player with the default engine settings.
+     */
+    public MctsPlayer() {
+        this(MctsSettings.withDefaults());
+    }
+
+    /**
+     * Create a new MCTS player.
+     * @param settings Engine settings to use
+     */
+    public MctsPlayer(MctsSettings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public void setupGame(int index, int boardSize, long moveTimeMillis,
+                          long gameTimeMillis) {
+        this.moveTimeMillis = moveTimeMillis;
+        this.gameTimeMillis = gameTimeMillis;
+        this.size = boardSize;
+        // The trees are the largest allocation, keep them between games
+        if(tree == null || treeSizeMb != settings.getTreeSizeMb()) {
+            long capacity = settings.getTreeSizeMb() * (1L << 20)
+                    / (2 * Tree.NODE_BYTES);
+            this.tree = new Tree((int) Math.min(Integer.MAX_VALUE - 8,
+                    capacity));
+            this.spare = new Tree(tree.getCapacity());
+            this.treeSizeMb = settings.getTreeSizeMb();
+        }
+
+        int helpers = Math.max(0, settings.getThreads() - 1);
+        if(helperSearches != null && helperSearches.length != helpers) {
+            cleanup();
+        }
+        if(helpers > 0 && helperPool == null) {
+            this.helperPool = Executors.newFixedThreadPool(helpers, task -> {
+                Thread thread = new Thread(task, "MctsHelper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        SplittableRandom random = new SplittableRandom();
+        this.mainSearch = new MctsSearch(new PlayoutBoard(size), settings,
+                random.split());
+        this.helperSearches = new MctsSearch[helpers];
+        for(int i = 0; i < helpers; i++) {
+            helperSearches[i] = new MctsSearch(new PlayoutBoard(size),
+                    settings, random.split());
+        }
+        tree.reset(-1);
+        this.currentNode = 0;
+    }
+
+    @Override
+    public Move loadBoard(List<Move> orderedMoves, long
+            gameTimeRemainingMillis) {
+        resetBoards();
+        for(Move move : orderedMoves) {
+            makeMove(toField(move));
+        }
+        tree.reset(mainSearch.getBoard().getLastMove());
+        this.currentNode = 0;
+        return playBestMove(gameTimeRemainingMillis);
+    }
+
+    @Override
+    public Move getMove(Move opponentsMove, long gameTimeRemainingMillis) {
+        int field = toField(opponentsMove);
+        makeMove(field);
+        // Keep the subtree of the opponent's move, if it was searched
+        int child = currentNode == -1 ? -1 : findChild(currentNode, field);
+        if(child != -1 && settings.isTreeReuseEnabled()) {
+            spare.copySubtree(tree, child);
+            Tree searched = tree;
+            this.tree = spare;
+            this.spare = searched;
+        } else {
+            tree.reset(field);
+        }
+        this.currentNode = 0;
+        return playBestMove(gameTimeRemainingMillis);
+    }
+
+    @Override
+    public Move beginGame(long gameTimeRemainingMillis) {
+        int field = (size / 2) * size + size / 2;
+        makeMove(field);
+        tree.reset(field);
+        this.currentNode = 0;
+        Move move = toMove(field);
+        // Decided without searching, so there are no playouts or score
+        publishReport(new SearchReport(true, 0, 0, 0, move, Collections
+                .singletonList(move), 0, 0, 0, 0, 0, 0, 0, 0, 0));
+        return move;
+    }
+
+    @Override
+    public void setSearchListener(Consumer<SearchReport> listener) {
+        this.searchListener = listener;
+    }
+
+    @Override
+    public void cleanup() {
+        if(helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+    }
+
+    /**
+     * Search the current position, play the most visited move and report
+     * on the search.
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @return Move played
+     */
+    private Move playBestMove(long gameTimeRemainingMillis) {
+        long start = System.nanoTime();
+        search(getTimeLimit(gameTimeRemainingMillis));
+        long time = System.nanoTime() - start;
+
+        int best = getMostVisitedChild(0);
+        reportMove(best, time);
+        this.currentNode = best;
+        int field = tree.getMove(best);
+        makeMove(field);
+        return toMove(field);
+    }
+
+    /**
+     * Run the search threads on the current position.
+     * @param timeNanos Time limit, in nanoseconds
+     */
+    void search(long timeNanos) {
+        // Expand the root up front, so there's a move to play however short
+        // the search is
+        if(!tree.isExpanded(0)) {
+            int[] moves = new int[size * size];
+            tree.reset(tree.getMove(0));
+            tree.startExpansion(0);
+            tree.expand(0, moves, mainSearch.generateChildren(moves));
+        }
+
+        long deadline = System.nanoTime() + timeNanos;
+        setStopped(false);
+        List<Future<?>> pending = new ArrayList<>();
+        for(MctsSearch helper : helperSearches) {
+            pending.add(helperPool.submit(() -> helper.search(tree,
+                    deadline, false)));
+        }
+        mainSearch.search(tree, deadline, true);
+        setStopped(true);
+        for(Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                LOGGER.error("Helper search failed", e);
+            }
+        }
+    }
+
+    /**
+     * Work out the time to spend on a move. The search can't stop early,
+     * so a move takes its share of the game time, or the whole move time
+     * when only moves are timed.
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @return Time limit, in nanoseconds
+     */
+    private long getTimeLimit(long gameTimeRemainingMillis) {
+        long limit = TimeAllocation.getMaxMoveTime(moveTimeMillis,
+                gameTimeMillis, gameTimeRemainingMillis);
+        if(gameTimeMillis > 0) {
+            limit = Math.max(1, Math.min(limit, TimeAllocation
+                    .getGameTimeShare(gameTimeRemainingMillis, mainSearch
+                            .getBoard().getMoves())));
+        }
+        return limit * 1000000;
+    }
+
+    /**
+     * Log and publish the report for a decided move.
+     * @param best Node of the move decided on
+     * @param timeNanos Time taken by the search, in nanoseconds
+     */
+    private void reportMove(int best, long timeNanos) {
+        long playouts = mainSearch.getPlayouts();
+        int selectiveDepth = mainSearch.getSelectiveDepth();
+        for(MctsSearch helper : helperSearches) {
+            playouts += helper.getPlayouts();
+            selectiveDepth = Math.max(selectiveDepth,
+                    helper.getSelectiveDepth());
+        }
+        List<Move> pv = new ArrayList<>();
+        int node = 0;
+        while(tree.isExpanded(node)) {
+            node = getMostVisitedChild(node);
+            pv.add(toMove(tree.getMove(node)));
+        }
+        long stats = tree.getStats(best);
+        int visits = (int) (stats >>> 32);
+        double winRate = visits == 0 ? 0.5 : (stats & 0xFFFFFFFFL) / 2.0
+                / visits;
+        int score = (int) Math.round((winRate * 2 - 1) * REPORT_SCORE_SCALE);
+
+        SearchReport report = new SearchReport(true, pv.size(),
+                selectiveDepth, score, toMove(tree.getMove(best)), pv,
+                playouts, 0, 0, 0, 0, 0, 0, timeNanos, 0);
+        LOGGER.info("Time: {}ms", report.getTimeMillis());
+        LOGGER.info("Playouts: {}", playouts);
+        LOGGER.info("Playouts/s: {}", report.getNodesPerSecond());
+        LOGGER.info("Tree nodes: {}/{}", tree.getUsed(), tree.getCapacity());
+        LOGGER.info("Win rate: {}%", String.format("%.1f", winRate * 100));
+        publishReport(report);
+    }
+
+    /**
+     * Send a report to the search listener, if there is one.
+     * @param report Search report
+     */
+    private void publishReport(SearchReport report) {
+        Consumer<SearchReport> listener = searchListener;
+        if(listener != null) {
+            listener.accept(report);
+        }
+    }
+
+    /**
+     * @param node Expanded node
+     * @return Child of the node with the most visits
+     */
+    private int getMostVisitedChild(int node) {
+        int first = tree.getFirstChild(node);
+        int best = first;
+        for(int child = first + 1; child < first + tree.getChildCount(node);
+            child++) {
+            if(tree.getVisits(child) > tree.getVisits(best)) best = child;
+        }
+        return best;
+    }
+
+    /**
+     * @param node Node
+     * @param field Move to look for
+     * @return Child of the node reached by the move, or -1 if the node
+     * isn't expanded or has no such child
+     */
+    private int findChild(int node, int field) {
+        if(!tree.isExpanded(node)) return -1;
+        int first = tree.getFirstChild(node);
+        for(int child = first; child < first + tree.getChildCount(node);
+            child++) {
+            if(tree.getMove(child) == field) return child;
+        }
+        return -1;
+    }
+
+    private void setStopped(boolean stopped) {
+        mainSearch.setStopped(stopped);
+        for(MctsSearch helper : helperSearches) {
+            helper.setStopped(stopped);
+        }
+    }
+
+    /**
+     * Apply a move to the board of every search.
+     * @param field Move to apply, as a field index
+     */
+    private void makeMove(int field) {
+        mainSearch.getBoard().makeMove(field);
+        for(MctsSearch helper : helperSearches) {
+            helper.getBoard().makeMove(field);
+        }
+    }
+
+    /**
+     * Clear the board of every search, back to the start of the game.
+     */
+    private void resetBoards() {
+        mainSearch.getBoard().rewind(0);
+        for(MctsSearch helper : helperSearches) {
+            helper.getBoard().rewind(0);
+        }
+    }
+
+    private int toField(Move move) {
+        return move.row * size + move.col;
+    }
+
+    private Move toMove(int field) {
+        return new Move(field / size, field % size);
+    }
+
+    /**
+     * @return Tree being searched, rooted at the current position until the
+     * player moves
+     */
+    Tree getTree() {
+        return tree;
+    }
+}
@@ -0,0 +1,195 @@
+package haslam.blackstone.players.mcts;
+
+import haslam.blackstone.players.playout.PlayoutBoard;
+import haslam.blackstone.players.playout.PlayoutPolicy;
+
+import java.util.SplittableRandom;
+
+/**
+ * One thread of a Monte Carlo tree search. Every thread has its own board
+ * and random number generator and runs playouts on the tree shared by all
+ * of them:
+ *
+ * Selection: from the root, follow the child with the best UCT value until
+ * reaching a leaf. Every node passed through gets a visit straight away, so
+ * its value drops (a virtual loss) and other threads prefer other nodes.
+ *
+ * Expansion: a leaf is expanded once it has been visited a few times. The
+ * children are the empty fields near the stones, unless the player to move
+ * can win or has to block a four, in which case that's the only child.
+ *
+ * Simulation: the game is played out to the end with the playout policy
+ * from the settings.
+ *
+ * Backpropagation: the result is added to every node on the path, from the
+ * point of view of the player who made the move leading to the node.
+ */
+class MctsSearch {
+
+    // Visits a leaf needs before it's expanded
+    private static final int EXPAND_VISITS = 2;
+    // Playouts between checks of the clock
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    private final PlayoutBoard board;
+    private final MctsSettings settings;
+    private final SplittableRandom random;
+    // Nodes on the path of the current playout
+    private final int[] path;
+    private final int[] children;
+
+    private volatile boolean stopped;
+    private long playouts;
+    private int selectiveDepth;
+
+    /**
+     * Create a new search.
+     * @param board Board holding the position to search, kept up to date by
+     *              the player
+     * @param settings Engine settings
+     * @param random Random number generator for the playouts
+     */
+    MctsSearch(PlayoutBoard board, MctsSettings settings, SplittableRandom
+            random) {
+        this.board = board;
+        this.settings = settings;
+        this.random = random;
+        int fields = board.getSize() * board.getSize();
+        this.path = new int[fields + 1];
+        this.children = new int[fields];
+    }
+
+    /**
+     * Run playouts from the position on the board until stopped or the
+     * deadline is reached.
+     * @param tree Tree rooted at the position on the board
+     * @param deadline Value of System.nanoTime() to stop at
+     * @param stopOnForcedMove Stop as soon as the root has a single child
+     */
+    void search(Tree tree, long deadline, boolean stopOnForcedMove) {
+        this.playouts = 0;
+        this.selectiveDepth = 0;
+        int rootMoves = board.getMoves();
+        while(!stopped) {
+            playout(tree, rootMoves);
+            playouts++;
+            if(playouts % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime()
+                    >= deadline) {
+                break;
+            }
+            if(stopOnForcedMove && tree.isExpanded(0) && tree
+                    .getChildCount(0) == 1) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Run a single playout: select a leaf, expand it if it's been visited
+     * enough, play the game out and update the nodes on the path.
+     * @param tree Tree rooted at the position on the board
+     * @param rootMoves Moves on the board at the root
+     */
+    private void playout(Tree tree, int rootMoves) {
+        int rootIndex = board.getCurrentIndex();
+        int node = 0;
+        int depth = 0;
+        path[0] = 0;
+        tree.addVisit(0);
+        while(tree.isExpanded(node) && board.terminal() == 0) {
+            node = select(tree, node);
+            tree.addVisit(node);
+            board.makeMove(tree.getMove(node));
+            path[++depth] = node;
+        }
+        if(board.terminal() == 0 && tree.getVisits(node) >= EXPAND_VISITS
+                && tree.startExpansion(node)) {
+            int count = generateChildren(children);
+            if(tree.expand(node, children, count)) {
+                node = select(tree, node);
+                tree.addVisit(node);
+                board.makeMove(tree.getMove(node));
+                path[++depth] = node;
+            }
+        }
+        selectiveDepth = Math.max(selectiveDepth, depth);
+
+        int result = board.playout(settings.getPlayoutPolicy(), random);
+        board.rewind(rootMoves);
+
+        // Nodes at odd depths were reached by a move of the player to move
+        // at the root, nodes at even depths by the opponent
+        for(int i = 0; i <= depth; i++) {
+            int mover = i % 2 == 1 ? rootIndex : 3 - rootIndex;
+            tree.addReward(path[i], result == 3 ? 1 : result == mover ? 2
+                    : 0);
+        }
+    }
+
+    /**
+     * Select the child of a node with the best UCT value. Children which
+     * haven't been visited are selected first.
+     * @param tree Tree to select in
+     * @param node Expanded node
+     * @return Child selected
+     */
+    private int select(Tree tree, int node) {
+        double logVisits = Math.log(Math.max(1, tree.getVisits(node)));
+        double exploration = settings.getExploration();
+        int first = tree.getFirstChild(node);
+        int count = tree.getChildCount(node);
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for(int child = first; child < first + count; child++) {
+            long stats = tree.getStats(child);
+            int visits = (int) (stats >>> 32);
+            if(visits == 0) return child;
+            double reward = (stats & 0xFFFFFFFFL) / 2.0;
+            double value = reward / visits + exploration * Math.sqrt(
+                    logVisits / visits);
+            if(value > bestValue) {
+                best = child;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the moves to expand a node with. Only the winning move is kept
+     * if the player to move has a four, and only the block if the opponent
+     * has one.
+     * @param moves Buffer to write the moves to
+     * @return Number of moves
+     */
+    int generateChildren(int[] moves) {
+        int forced = PlayoutPolicy.findForcedMove(board);
+        if(forced != -1) {
+            moves[0] = forced;
+            return 1;
+        }
+        return board.getCandidates(moves);
+    }
+
+    void setStopped(boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    PlayoutBoard getBoard() {
+        return board;
+    }
+
+    /**
+     * @return Playouts run in the last search
+     */
+    long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * @return Deepest node reached in the tree in the last search
+     */
+    int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+}
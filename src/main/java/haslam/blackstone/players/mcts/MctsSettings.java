@@ -0,0 +1,137 @@
+package haslam.blackstone.players.mcts;
+
+import haslam.blackstone.players.playout.PlayoutPolicy;
+
+/**
+ * Engine settings for the MCTS player. These are independent of the game
+ * settings (board size, timing) and only affect how the search is run.
+ *
+ * @see MctsPlayer
+ */
+public class MctsSettings {
+
+    private static final int DEFAULT_THREADS =
+            Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_TREE_SIZE_MB = 64;
+    private static final double DEFAULT_EXPLORATION = 0.7;
+    private static final boolean DEFAULT_TREE_REUSE = true;
+    private static final PlayoutPolicy DEFAULT_PLAYOUT_POLICY =
+            PlayoutPolicy.THREATS;
+
+    private int threads;
+    private int treeSizeMb;
+    private double exploration;
+    private boolean treeReuse;
+    private PlayoutPolicy playoutPolicy;
+
+    /**
+     * Create a new MctsSettings instance.
+     * @param threads Number of search threads, including the main thread
+     * @param treeSizeMb Memory budget for the search tree, in MB
+     * @param exploration Exploration constant of the UCT formula
+     * @param treeReuse Whether or not to keep the relevant part of the tree
+     *                  from one move to the next
+     * @param playoutPolicy Policy choosing the moves of the playouts
+     */
+    public MctsSettings(int threads, int treeSizeMb, double exploration,
+                        boolean treeReuse, PlayoutPolicy playoutPolicy) {
+        this.threads = threads;
+        this.treeSizeMb = treeSizeMb;
+        this.exploration = exploration;
+        this.treeReuse = treeReuse;
+        this.playoutPolicy = playoutPolicy;
+    }
+
+    /**
+     * Get the number of threads used by the search. All threads search the
+     * same tree.
+     * @return Number of search threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads used by the search. Takes effect the next
+     * time a game is set up.
+     * @param threads Number of search threads, including the main thread
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Get the memory budget for the search tree. The tree never grows
+     * beyond it, half is kept free to copy the tree into between moves.
+     * @return Tree size in megabytes
+     */
+    public int getTreeSizeMb() {
+        return treeSizeMb;
+    }
+
+    /**
+     * Set the memory budget for the search tree. Takes effect the next time
+     * a game is set up.
+     * @param treeSizeMb Tree size in megabytes
+     */
+    public void setTreeSizeMb(int treeSizeMb) {
+        this.treeSizeMb = treeSizeMb;
+    }
+
+    /**
+     * Get the exploration constant of the UCT formula. Higher values spread
+     * the playouts over more moves, lower values focus on the best moves.
+     * @return Exploration constant
+     */
+    public double getExploration() {
+        return exploration;
+    }
+
+    /**
+     * Set the exploration constant of the UCT formula.
+     * @param exploration Exploration constant
+     */
+    public void setExploration(double exploration) {
+        this.exploration = exploration;
+    }
+
+    /**
+     * Check if the tree is reused between moves. When enabled, the subtree
+     * of the moves played is kept and the search continues from it.
+     * @return True if enabled
+     */
+    public boolean isTreeReuseEnabled() {
+        return treeReuse;
+    }
+
+    /**
+     * Enable/disable reusing the tree between moves.
+     * @param enabled Enabled value
+     */
+    public void setTreeReuseEnabled(boolean enabled) {
+        this.treeReuse = enabled;
+    }
+
+    /**
+     * Get the policy choosing the moves of the playouts. Smarter policies
+     * give more accurate results, but fewer playouts in the same time.
+     * @return Playout policy
+     */
+    public PlayoutPolicy getPlayoutPolicy() {
+        return playoutPolicy;
+    }
+
+    /**
+     * Set the policy choosing the moves of the playouts.
+     * @param playoutPolicy Playout policy
+     */
+    public void setPlayoutPolicy(PlayoutPolicy playoutPolicy) {
+        this.playoutPolicy = playoutPolicy;
+    }
+
+    public static MctsSettings withDefaults() {
+        return new MctsSettings(DEFAULT_THREADS, DEFAULT_TREE_SIZE_MB,
+                DEFAULT_EXPLORATION, DEFAULT_TREE_REUSE,
+                DEFAULT_PLAYOUT_POLICY);
+    }
+}
@@ -0,0 +1,214 @@
+package haslam.blackstone.players.mcts;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Search tree stored in fixed size arrays, indexed by node. The root is
+ * node 0, and the children of a node are allocated together as a block of
+ * consecutive nodes, so a node only stores its first child and the number
+ * of children. Memory use is fixed when the tree is created: once every
+ * node is allocated, leaves are no longer expanded and the search carries
+ * on with playouts from the existing leaves.
+ *
+ * The tree is shared by every search thread. The visits and reward of a
+ * node are packed into a single long (visits in the high 32 bits, reward
+ * in half points in the low 32 bits) so that both can be updated with one
+ * atomic add. A visit is added when a thread passes through a node and the
+ * reward only once its playout finishes, so until then the visit counts as
+ * a loss (a virtual loss) and steers other threads to other nodes.
+ */
+class Tree {
+
+    // Bytes of storage per node, for sizing the tree from a memory budget
+    static final int NODE_BYTES = 28;
+
+    // Expansion state of a node
+    private static final int LEAF = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+    // No space left for the children
+    private static final int FULL = 3;
+
+    private final int capacity;
+    // Move leading to each node, as a field index
+    private final int[] moves;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final AtomicLongArray stats;
+    private final AtomicIntegerArray expansion;
+    private final AtomicInteger used;
+    // Nodes of the source tree in the order they were copied, used by
+    // copySubtree(): node i of this tree is a copy of copiedFrom[i]
+    private final int[] copiedFrom;
+
+    /**
+     * Create a new tree.
+     * @param capacity Maximum number of nodes
+     */
+    Tree(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.moves = new int[this.capacity];
+        this.firstChild = new int[this.capacity];
+        this.childCount = new int[this.capacity];
+        this.stats = new AtomicLongArray(this.capacity);
+        this.expansion = new AtomicIntegerArray(this.capacity);
+        this.used = new AtomicInteger();
+        this.copiedFrom = new int[this.capacity];
+        reset(-1);
+    }
+
+    /**
+     * Clear the tree, leaving a single unexpanded root.
+     * @param move Move leading to the root (the last move of the game), or
+     *             -1 if the board is empty
+     */
+    void reset(int move) {
+        used.set(1);
+        initNode(0, move);
+    }
+
+    private void initNode(int node, int move) {
+        moves[node] = move;
+        firstChild[node] = -1;
+        childCount[node] = 0;
+        stats.set(node, 0);
+        expansion.set(node, LEAF);
+    }
+
+    /**
+     * Claim the expansion of a leaf, so that only one thread expands it.
+     * @param node Node to expand
+     * @return True if the calling thread should expand the node
+     */
+    boolean startExpansion(int node) {
+        return expansion.compareAndSet(node, LEAF, EXPANDING);
+    }
+
+    /**
+     * Add the children of a node claimed with startExpansion(). If the tree
+     * is full, the node stays a leaf for good.
+     * @param node Node to expand
+     * @param children Moves leading to the children
+     * @param count Number of children
+     * @return True if the children were added
+     */
+    boolean expand(int node, int[] children, int count) {
+        int first = allocate(count);
+        if(first == -1 || count == 0) {
+            expansion.set(node, FULL);
+            return false;
+        }
+        for(int i = 0; i < count; i++) {
+            initNode(first + i, children[i]);
+        }
+        firstChild[node] = first;
+        childCount[node] = count;
+        // Publishes the children to the other threads
+        expansion.set(node, EXPANDED);
+        return true;
+    }
+
+    /**
+     * Allocate a block of nodes.
+     * @param count Number of nodes
+     * @return First node of the block, or -1 if there isn't enough space
+     */
+    private int allocate(int count) {
+        while(true) {
+            int first = used.get();
+            if(first + count > capacity) return -1;
+            if(used.compareAndSet(first, first + count)) return first;
+        }
+    }
+
+    boolean isExpanded(int node) {
+        return expansion.get(node) == EXPANDED;
+    }
+
+    int getMove(int node) {
+        return moves[node];
+    }
+
+    int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    int getChildCount(int node) {
+        return childCount[node];
+    }
+
+    /**
+     * Count a visit to a node, before its reward is known.
+     * @param node Node visited
+     */
+    void addVisit(int node) {
+        stats.addAndGet(node, 1L << 32);
+    }
+
+    /**
+     * Add the reward of a finished playout through a node.
+     * @param node Node visited
+     * @param halfPoints Reward for the player who made the move leading to
+     *                   the node: 2 for a win, 1 for a draw, 0 for a loss
+     */
+    void addReward(int node, int halfPoints) {
+        stats.addAndGet(node, halfPoints);
+    }
+
+    int getVisits(int node) {
+        return (int) (stats.get(node) >>> 32);
+    }
+
+    /**
+     * @param node Node
+     * @return Visits and reward (in half points) of the node, packed into a
+     * long, read together
+     */
+    long getStats(int node) {
+        return stats.get(node);
+    }
+
+    /**
+     * @return Number of nodes in use
+     */
+    int getUsed() {
+        return Math.min(used.get(), capacity);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Replace this tree with a subtree of another tree, rooted at one of
+     * its nodes. Used to keep the relevant part of the tree between moves.
+     * Nodes are copied breadth first, so if the subtree doesn't fit, its
+     * deepest nodes are left out. Must not run alongside a search of either
+     * tree.
+     * @param source Tree to copy from
+     * @param root Root of the subtree to copy
+     */
+    void copySubtree(Tree source, int root) {
+        reset(source.moves[root]);
+        stats.set(0, source.stats.get(root));
+        copiedFrom[0] = root;
+        for(int node = 0; node < used.get(); node++) {
+            int from = copiedFrom[node];
+            if(!source.isExpanded(from)) continue;
+            int count = source.childCount[from];
+            int first = allocate(count);
+            if(first == -1) break;
+            for(int i = 0; i < count; i++) {
+                int child = source.firstChild[from] + i;
+                initNode(first + i, source.moves[child]);
+                stats.set(first + i, source.stats.get(child));
+                copiedFrom[first + i] = child;
+            }
+            firstChild[node] = first;
+            childCount[node] = count;
+            expansion.set(node, EXPANDED);
+        }
+    }
+}
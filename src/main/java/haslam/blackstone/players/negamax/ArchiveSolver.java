@@ -0,0 +1,210 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Marks the positions of archived games as solved. Every game is replayed,
+ * then solved with the proof-number search from the last position back
+ * towards the start, until a position can't be proven (or is won by the
+ * other player). The first position proven is where the game was decided.
+ * Proven positions are stored in a solved position cache, if one is given,
+ * so that players using the cache play them without searching.
+ *
+ * Archives are read by GameArchive, and directories are searched for
+ * archives.
+ *
+ * Usage: ArchiveSolver [-size n] [-nodes n] [-time ms] [-cache file]
+ *        archive...
+ * e.g. java -jar blackstone.jar solve -cache solved.bin games/
+ *
+ * @see ProofNumberSearch
+ * @see SolvedPositionCache
+ */
+public class ArchiveSolver {
+
+    private static final int DEFAULT_SIZE = 15;
+    // Budget for each position
+    private static final long DEFAULT_NODES = 1000000;
+    private static final long DEFAULT_TIME_MILLIS = 10000;
+    private static final int TABLE_SIZE_MB = 64;
+
+    private final int size;
+    private final long nodeLimit;
+    private final long timeNanos;
+    private final SolvedPositionCache cache;
+    private final State state;
+    private final ProofNumberSearch search;
+
+    // Result of the last game solved
+    private int winner;
+    private List<Move> line = Collections.emptyList();
+
+    /**
+     * Create a new archive solver.
+     * @param size Size of the board, games on other board sizes are skipped
+     * @param nodeLimit Maximum number of nodes to search for each position
+     * @param timeNanos Time limit for each position, in nanoseconds
+     * @param cache Cache to store proven positions in, or null
+     */
+    ArchiveSolver(int size, long nodeLimit, long timeNanos,
+                  SolvedPositionCache cache) {
+        this.size = size;
+        this.nodeLimit = nodeLimit;
+        this.timeNanos = timeNanos;
+        this.cache = cache;
+        this.state = new State(size);
+        this.search = new ProofNumberSearch(state, TABLE_SIZE_MB);
+    }
+
+    /**
+     * Solve the positions of a game. Moves after the end of the game, or
+     * after an illegal move, are ignored.
+     * @param moves Moves of the game, in order
+     * @return Number of moves made in the position where the game was
+     * decided, or -1 if the last position couldn't be proven
+     */
+    int solveGame(List<Move> moves) {
+        this.winner = 0;
+        this.line = Collections.emptyList();
+        int ply = 0;
+        for(Move move : moves) {
+            if(!isLegal(move)) break;
+            state.makeMove(move);
+            ply++;
+            if(state.terminal() != 0) break;
+        }
+        // A finished game is solved from the position before the last move
+        if(state.terminal() != 0) {
+            state.undoMove(moves.get(--ply));
+        }
+
+        int decided = -1;
+        while(true) {
+            int result = search.solve(nodeLimit, timeNanos);
+            if(result == ProofNumberSearch.UNKNOWN) break;
+            int player = state.currentIndex;
+            int won = result == ProofNumberSearch.WIN ? player : player == 1
+                    ? 2 : 1;
+            // The other player won this position, and threw it away later
+            if(decided >= 0 && won != winner) break;
+            List<Move> proof = search.getWinningLine();
+            if(cache != null && !proof.isEmpty()) {
+                cache.store(state, proof.get(0).row * size + proof.get(0)
+                        .col, result == ProofNumberSearch.WIN ? Evaluator
+                        .WIN_SCORE : -Evaluator.WIN_SCORE);
+            }
+            decided = ply;
+            this.winner = won;
+            this.line = new ArrayList<>(proof);
+            if(ply == 0) break;
+            state.undoMove(moves.get(--ply));
+        }
+
+        while(ply > 0) {
+            state.undoMove(moves.get(--ply));
+        }
+        return decided;
+    }
+
+    private boolean isLegal(Move move) {
+        return move.row >= 0 && move.row < size && move.col >= 0
+                && move.col < size && state.getIndex(move.row, move.col)
+                == 0;
+    }
+
+    /**
+     * @return Player index who won the last game solved, or 0 if it wasn't
+     * decided
+     */
+    int getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return Winning line from the position where the last game solved was
+     * decided
+     */
+    List<Move> getLine() {
+        return line;
+    }
+
+    private static String format(List<Move> moves, int size) {
+        return moves.stream().map(move -> move.getAlgebraicString(size))
+                .collect(Collectors.joining(","));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = DEFAULT_SIZE;
+        long nodes = DEFAULT_NODES;
+        long timeMillis = DEFAULT_TIME_MILLIS;
+        String cacheFile = null;
+        int i = 0;
+        for(; i < args.length && args[i].startsWith("-"); i += 2) {
+            String value = args[i + 1];
+            switch(args[i]) {
+                case "-size":
+                    size = Integer.parseInt(value);
+                    break;
+                case "-nodes":
+                    nodes = Long.parseLong(value);
+                    break;
+                case "-time":
+                    timeMillis = Long.parseLong(value);
+                    break;
+                case "-cache":
+                    cacheFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: "
+                            + args[i]);
+            }
+        }
+        if(args.length - i < 1) {
+            System.out.println("Usage: solve [-size n] [-nodes n] [-time ms] "
+                    + "[-cache file] archive...");
+            return;
+        }
+
+        SolvedPositionCache cache = cacheFile == null ? null :
+                SolvedPositionCache.open(Paths.get(cacheFile), size);
+        try {
+            ArchiveSolver solver = new ArchiveSolver(size, nodes, timeMillis
+                    * 1000000L, cache);
+            int games = 0;
+            int decided = 0;
+            for(int archive = i; archive < args.length; archive++) {
+                for(Path file : GameArchive.listFiles(Paths.get(
+                        args[archive]))) {
+                    List<List<Move>> archived = GameArchive.readGames(file,
+                            size);
+                    for(int game = 0; game < archived.size(); game++) {
+                        int ply = solver.solveGame(archived.get(game));
+                        games++;
+                        if(ply < 0) {
+                            System.out.printf("%s #%d: not decided%n",
+                                    file.getFileName(), game + 1);
+                            continue;
+                        }
+                        decided++;
+                        System.out.printf("%s #%d: player %d wins after move "
+                                + "%d: %s%n", file.getFileName(), game + 1,
+                                solver.getWinner(), ply, format(solver
+                                        .getLine(), size));
+                    }
+                }
+            }
+            System.out.printf("%nGames: %d%n", games);
+            System.out.printf("Decided: %d%n", decided);
+        } finally {
+            if(cache != null) cache.close();
+        }
+    }
+}
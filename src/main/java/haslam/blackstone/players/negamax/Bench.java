@@ -0,0 +1,78 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+/**
+ * Quick check of the speed and behaviour of a build. Every position in
+ * {@link BenchmarkPositions} is searched to a fixed depth on one thread,
+ * with a new transposition table each time. Zobrist keys are fixed, so the
+ * same build searches the same tree on every machine: the total node count
+ * is a signature that only changes when the search itself changes, while
+ * the time and node rate measure the machine and the build.
+ *
+ * Usage: Bench [depth]
+ * e.g. java -jar blackstone.jar bench 6
+ */
+public class Bench {
+
+    private static final int DEFAULT_DEPTH = 6;
+    // Fixed rather than taken from the settings, the table size changes the
+    // tree searched
+    private static final int HASH_SIZE_MB = 16;
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) :
+                DEFAULT_DEPTH;
+        // Per-iteration search info is not useful here
+        Configurator.setLevel(NegamaxSearch.class.getName(), Level.WARN);
+
+        System.out.printf("Depth %d, %d positions%n", depth,
+                BenchmarkPositions.POSITIONS.length);
+        System.out.printf("%8s %14s %12s %12s %8s%n", "Position", "Nodes",
+                "Time (ms)", "Nodes/s", "Move");
+        long totalNodes = 0;
+        long totalTime = 0;
+        for(int i = 0; i < BenchmarkPositions.POSITIONS.length; i++) {
+            long[] result = run(BenchmarkPositions.POSITIONS[i], depth);
+            totalNodes += result[0];
+            totalTime += result[1];
+            System.out.printf("%8d %14d %12.1f %12.0f %8s%n", i + 1,
+                    result[0], result[1] / 1e6, result[0] / (result[1]
+                            / 1e9), format((int) result[2]));
+        }
+        System.out.printf("%nTime (ms): %.1f%n", totalTime / 1e6);
+        System.out.printf("Nodes/s: %.0f%n", totalNodes / (totalTime / 1e9));
+        System.out.printf("Nodes searched: %d%n", totalNodes);
+    }
+
+    /**
+     * Search a position to a fixed depth.
+     * @param position Benchmark position
+     * @param depth Depth to search to
+     * @return Nodes searched, time taken in nanoseconds, and the best move
+     * as a field index
+     */
+    static long[] run(String position, int depth) {
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setThreads(1);
+        State state = new State(BenchmarkPositions.SIZE);
+        BenchmarkPositions.parse(position, BenchmarkPositions.SIZE)
+                .forEach(state::makeMove);
+        NegamaxSearch search = new NegamaxSearch(state, new
+                TranspositionTable(HASH_SIZE_MB), settings, true);
+
+        long start = System.nanoTime();
+        Move best = search.iterativeDeepening(2, depth, Long.MAX_VALUE);
+        long time = System.nanoTime() - start;
+        return new long[] {search.getNodeCount(), time,
+                best.row * BenchmarkPositions.SIZE + best.col};
+    }
+
+    private static String format(int field) {
+        return new Move(field / BenchmarkPositions.SIZE, field
+                % BenchmarkPositions.SIZE).getAlgebraicString(
+                BenchmarkPositions.SIZE);
+    }
+}
@@ -0,0 +1,47 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed set of positions used to measure the performance of the engine.
+ * Positions are taken from engine games and cover the opening, middlegame
+ * and tactical positions with open threats on the board. Each position is a
+ * list of moves in algebraic notation, in the order they were played.
+ */
+final class BenchmarkPositions {
+
+    static final int SIZE = 15;
+
+    static final String[] POSITIONS = {
+            // Openings
+            "H8,J9,J10,J7",
+            "H8,G6,F7,H6",
+            // Middlegames
+            "H8,G6,F7,H6,F6,F5,G8,G5,H9,E6,I8,F8",
+            "H8,J9,J10,J7,I9,G7,H10,I10,I11,H7,I7,I8,K11,L12",
+            // Tactical positions
+            "H8,G6,G10,I8,G9,I6,G11,G8,F10,I7,I9",
+            "H8,J9,J10,J7,I9,G7,H10,I10,I11,H7,I7,I8,K11,L12,K10,G10,H9,H11,"
+                    + "K8,G6,F5,G9,G8,K9,E6,I12,F9,F7,E8,G12,F13,F12,H12",
+    };
+
+    private BenchmarkPositions() { }
+
+    /**
+     * Convert a position string into a list of moves.
+     * @param position Comma separated list of moves, e.g. "H8,J9"
+     * @param size Size of the board
+     * @return List of moves, in order
+     */
+    static List<Move> parse(String position, int size) {
+        List<Move> moves = new ArrayList<>();
+        for(String move : position.split(",")) {
+            moves.add(new Move(move.charAt(0),
+                    Integer.parseInt(move.substring(1)), size));
+        }
+        return moves;
+    }
+}
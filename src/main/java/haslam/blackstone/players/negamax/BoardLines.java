@@ -0,0 +1,101 @@
+package haslam.blackstone.players.negamax;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every field on a board to the four lines passing through it. The
+ * board has one line per row, column and diagonal in each direction, and a
+ * field is identified by its position along each of its lines.
+ *
+ * Directions follow the same order used throughout the AI:
+ *
+ * [0] Diagonal from top left to bottom right
+ * [1] Diagonal from top right to bottom left
+ * [2] Vertical from top to bottom
+ * [3] Horizontal from left to right
+ *
+ * Lines are stored as bitboards, where bit (position + PADDING) is set for
+ * every stone on the line. The padding makes it possible to read the 9
+ * fields centred on any position with a single shift, including positions
+ * near the edge of the board. Geometry is shared by every state with the
+ * same board size.
+ */
+final class BoardLines {
+
+    // Bits reserved before the first position of a line
+    static final int PADDING = 4;
+    // Mask for a 9 field window, 4 fields either side of the centre
+    static final int WINDOW_MASK = 0x1FF;
+
+    // Row/column step taken for one position along a line, per direction
+    static final int[] ROW_STEP = {1, 1, 1, 0};
+    static final int[] COL_STEP = {1, -1, 0, 1};
+
+    private static final Map<Integer, BoardLines> LINES =
+            new ConcurrentHashMap<>();
+
+    final int size;
+    final int lineCount;
+    // Line id and position along the line, indexed by [direction][field]
+    final int[][] lineIds;
+    final int[][] positions;
+    // Bits set for every position on a line that lies on the board
+    final int[] bounds;
+    // Number of fields on a line, and the field at each position
+    final int[] lengths;
+    final int[][] fields;
+
+    private BoardLines(int size) {
+        this.size = size;
+        this.lineCount = 6 * size - 2;
+        this.lineIds = new int[4][size * size];
+        this.positions = new int[4][size * size];
+        this.bounds = new int[lineCount];
+        this.lengths = new int[lineCount];
+        this.fields = new int[lineCount][size];
+
+        // Lines are numbered direction by direction: diagonals (2n - 1 of
+        // each), then columns (n), then rows (n)
+        int diagonals = 2 * size - 1;
+        for(int row = 0; row < size; row++) {
+            for(int col = 0; col < size; col++) {
+                int field = row * size + col;
+                lineIds[0][field] = col - row + size - 1;
+                positions[0][field] = Math.min(row, col);
+                lineIds[1][field] = diagonals + row + col;
+                positions[1][field] = row - Math.max(0, row + col - size + 1);
+                lineIds[2][field] = 2 * diagonals + col;
+                positions[2][field] = row;
+                lineIds[3][field] = 2 * diagonals + size + row;
+                positions[3][field] = col;
+                for(int direction = 0; direction < 4; direction++) {
+                    int line = lineIds[direction][field];
+                    bounds[line] |= 1 << (positions[direction][field]
+                            + PADDING);
+                    fields[line][positions[direction][field]] = field;
+                    lengths[line]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the line geometry for a board size.
+     * @param size Number of intersections on each side of the board
+     * @return Shared geometry instance
+     */
+    static BoardLines forSize(int size) {
+        return LINES.computeIfAbsent(size, BoardLines::new);
+    }
+
+    /**
+     * Read the 9 field window centred on a position from a line bitboard.
+     * @param line Line bitboard (padded)
+     * @param position Position of the centre field along the line
+     * @return 9 bit window, where bit 4 is the centre field
+     */
+    static int window(int line, int position) {
+        return (line >>> position) & WINDOW_MASK;
+    }
+}
@@ -28,47 +28,60 @@ package haslam.blackstone.players.negamax;
  * total strength is subtracted from the score and the current haslam.blackstone.players
  * strength is added to give a final value.
  *
+ * Every window of 5 containing n stones of a player (and nothing else) is
+ * therefore counted once for each of its n stones, so a player's total
+ * strength is the sum of WINDOW_SCORES[n] over every window on the board.
+ * The state keeps this total up to date as moves are made, by rescoring
+ * only the windows passing through the changed field.
+ *
  * This evaluation function was adapted from the open-source AI Carbon, created
  * by Michał Czardybon.
  */
 public class Evaluator {
 
+    // Score of a won position, offset by the remaining depth so that
+    // quicker wins are preferred
+    static final int WIN_SCORE = 10000;
+
     private static final int[] SCORES = {19, 15, 11, 7, 3};
 
+    // Score of a window of 5 containing n stones of a player and no
+    // opponent stones, indexed by n. Each stone in the window scores
+    // SCORES[empty], and full windows (fives) are not scored.
+    static final int[] WINDOW_SCORES = new int[6];
+
+    static {
+        for(int stones = 1; stones < 5; stones++) {
+            WINDOW_SCORES[stones] = stones * SCORES[5 - stones];
+        }
+    }
+
     /**
-     * Given some array representing a vertical/horizontal/diagonal direction
-     * on the board, calculate a score based on how many possible fives can be
-     * formed and in how many moves.
+     * Given the 9 fields centred on a stone in some vertical/horizontal/
+     * diagonal direction, calculate a score based on how many possible
+     * fives can be formed and in how many moves.
      *
-     * @param direction A 1D field array representing a direction on the board
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use (opponent stones
+     *                and fields off the board)
      * @return Score for this direction
      */
-    private static int scoreDirection(Field[] direction, int index) {
+    private static int scoreDirection(int stones, int blocked) {
         int score = 0;
 
-        // Pass a window of 5 across the field array
-        for(int i = 0; (i + 4) < direction.length; i++) {
-            int empty = 0;
-            int stones = 0;
-            for(int j = 0; j <= 4; j++) {
-                if(direction[i + j].index == 0) {
-                    empty++;
-                }
-                else if(direction[i + j].index == index) {
-                    stones++;
-                } else {
-                    // Opponent stone in this window, can't form a five
-                    break;
-                }
-            }
+        // Pass a window of 5 across the 9 fields
+        for(int i = 0; i < 5; i++) {
+            int window = 0x1F << i;
+            // Opponent stone in this window, can't form a five
+            if((blocked & window) != 0) continue;
+
+            int empty = 5 - Integer.bitCount(stones & window);
             // Ignore already formed fives, and empty windows
             if(empty == 0 || empty == 5) continue;
 
             // Window contains only empty spaces and player stones, can form
             // a five, get score based on how many moves needed
-            if(stones + empty == 5) {
-                score += SCORES[empty];
-            }
+            score += SCORES[empty];
         }
         return score;
     }
@@ -84,29 +97,23 @@ public class Evaluator {
 
         // Check for a winning/losing position
         int terminal = state.terminal();
-        if(terminal == playerIndex) return 10000 + depth;
-        if(terminal == opponentIndex) return -10000 - depth;
+        if(terminal == playerIndex) return WIN_SCORE + depth;
+        if(terminal == opponentIndex) return -WIN_SCORE - depth;
 
-        // Evaluate each field separately, subtracting from the score if the
-        // field belongs to the opponent, adding if it belongs to the player
-        int score = 0;
-        for(int i = 0; i < state.board.length; i++) {
-            for(int j = 0; j < state.board.length; j++) {
-                if(state.board[i][j].index == opponentIndex) {
-                    score -= evaluateField(state, i, j, opponentIndex);
-                } else if(state.board[i][j].index == playerIndex) {
-                    score += evaluateField(state, i, j, playerIndex);
-                }
-            }
-        }
-        return score;
+        // Strength of each player is maintained by the state, subtract the
+        // opponents strength from the current players strength
+        return state.getScore(playerIndex) - state.getScore(opponentIndex);
     }
 
     public static int evaluateField(State state, int row, int col, int index) {
+        return evaluateField(state, row * state.size + col, index);
+    }
+
+    static int evaluateField(State state, int field, int index) {
         int score = 0;
         for(int direction = 0; direction < 4; direction++) {
-            score += scoreDirection(state.directions[row][col][direction],
-                    index);
+            score += scoreDirection(state.getStones(index, field, direction),
+                    state.getBlocked(index, field, direction));
         }
         return score;
     }
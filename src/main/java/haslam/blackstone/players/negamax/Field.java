@@ -9,26 +9,18 @@ public class Field {
     protected final int col;
     
     // The index (state) of the field, 0 if empty, 1/2 if player 1/2 has
-    // occupied it, and 3 if out of bounds
-    protected int index;
-
-    /**
-     * Default constructor for a field, set to out of bounds.
-     */
-    protected Field() {
-        this.row = 0;
-        this.col = 0;
-        this.index = 3;
-    }
+    // occupied it
+    protected final int index;
 
     /**
      * Create a field with a row/column identifier.
      * @param row Row on the board
      * @param col Column on the board
+     * @param index Index (state) of the field
      */
-    protected Field(int row, int col) {
+    protected Field(int row, int col, int index) {
         this.row = row;
         this.col = col;
-        this.index = 0;
+        this.index = index;
     }
 }
@@ -0,0 +1,94 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.GameState;
+import haslam.blackstone.core.Move;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads archived games, for the tools which learn from them. Archives are
+ * the files saved by the GUI: positions saved as .gomoku files, and text
+ * files holding a board size on one line and the moves of a game on the
+ * next, e.g. "15" then "H8,J9,J10". A text file can hold several games,
+ * one per line, with the size line only needed when the size changes.
+ *
+ * @see OpeningBookBuilder
+ * @see ArchiveSolver
+ */
+final class GameArchive {
+
+    private GameArchive() {
+    }
+
+    /**
+     * List the archive files at a path.
+     * @param path Archive file, or a directory to search for archive files
+     * @return Archive files, in name order
+     * @throws IOException If the directory can't be read
+     */
+    static List<Path> listFiles(Path path) throws IOException {
+        if(!Files.isDirectory(path)) {
+            return Collections.singletonList(path);
+        }
+        try(Stream<Path> walk = Files.walk(path)) {
+            return walk.filter(Files::isRegularFile).filter(file -> {
+                String name = file.getFileName().toString();
+                return name.endsWith(".gomoku") || name.endsWith(".txt");
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Read the games in an archive file.
+     * @param file Archive file
+     * @param size Board size, games on other board sizes are skipped
+     * @return Moves of every game, in order
+     * @throws IOException If the file can't be read
+     */
+    static List<List<Move>> readGames(Path file, int size)
+            throws IOException {
+        List<List<Move>> games = new ArrayList<>();
+        if(file.getFileName().toString().endsWith(".gomoku")) {
+            try(InputStream in = Files.newInputStream(file);
+                ObjectInputStream objects = new ObjectInputStream(in)) {
+                GameState game = (GameState) objects.readObject();
+                if(game.getSize() == size) {
+                    games.add(game.getMovesMade());
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Not a saved game: " + file, e);
+            }
+        } else {
+            int gameSize = size;
+            for(String line : Files.readAllLines(file)) {
+                line = line.trim();
+                if(line.isEmpty()) continue;
+                if(line.chars().allMatch(Character::isDigit)) {
+                    gameSize = Integer.parseInt(line);
+                } else if(gameSize == size) {
+                    games.add(parseMoves(line, size));
+                }
+            }
+        }
+        return games;
+    }
+
+    private static List<Move> parseMoves(String line, int size) {
+        List<Move> moves = new ArrayList<>();
+        for(String move : line.split(",")) {
+            move = move.trim();
+            moves.add(new Move(move.charAt(0), Integer.parseInt(
+                    move.substring(1)), size));
+        }
+        return moves;
+    }
+}
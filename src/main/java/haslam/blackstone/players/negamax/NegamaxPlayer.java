@@ -2,330 +2,819 @@ package haslam.blackstone.players.negamax;
 
 import haslam.blackstone.core.Move;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import haslam.blackstone.players.Player;
+import haslam.blackstone.players.SearchReport;
 
 /**
- * Negamax player, with alpha-beta pruning and further optimisations
+ * Negamax player, with alpha-beta pruning and further optimisations. The
+ * search can be run on several threads (Lazy SMP): helper threads search
+ * the same position on private copies of the state, and the results they
+ * store in the shared transposition table speed up the main search.
+ *
+ * The time spent on each move is decided by a TimeManager, from the game
+ * and move time limits and the stability of the best move. Searches are
+ * stopped at the time limit by a timer thread, so the search itself only
+ * reads the clock every few nodes.
+ *
+ * With pondering enabled, the player keeps searching on the opponent's
+ * time. After returning a move, it plays the reply expected by the
+ * principal variation on its own state and searches its answer, starting
+ * with the threat-space search. If the opponent plays that reply (a ponder
+ * hit), a solved or book move is played straight away, and otherwise the
+ * search carries on under the time manager, timed from the hit. If not,
+ * the search is stopped and the expected reply undone, and the next search
+ * still benefits from the table the ponder search filled.
+ *
+ * Progress is published as a SearchReport after every iteration of the
+ * main search and once the move is decided, with counters summed over all
+ * the threads. Iterations of a ponder search aren't reported until the
+ * opponent plays the expected reply.
+ *
+ * With an opening book set in the settings, positions found in the book are
+ * played from it without searching. With a solved position cache set,
+ * moves proven to win or lose are stored in it on a background thread, and
+ * played from it when their position comes up again, in this run or a
+ * later one.
+ *
+ * @see NegamaxSearch
  */
 public class NegamaxPlayer implements Player {
 
     private static final Logger LOGGER =
             LogManager.getLogger(NegamaxPlayer.class.getName());
 
-    private long timeNanos;
-    private long startTime;
+    // Fraction of the move time given to the threat-space search before
+    // the main search starts (1/n)
+    private static final int THREAT_SPACE_TIME_FRACTION = 10;
+    // Deepest iteration of a search, searches are normally stopped by the
+    // time manager well before this
+    private static final int MAX_DEPTH = NegamaxSearch.MAX_PLY - 1;
+    // Time limit of a ponder search, which runs until the opponent moves
+    private static final long PONDER_TIME_NANOS = Long.MAX_VALUE / 4;
+
+    private final NegamaxSettings settings;
+
+    private TimeManager timeManager;
+    // Start of the current move, from a ponder hit rather than the start of
+    // the ponder search
+    private volatile long startTime;
+    // Time spent in the threat-space search before the current search
+    private long threatSearchTime;
+    private volatile Consumer<SearchReport> searchListener;
+    // True while searching on the opponent's time, before a ponder hit
+    private volatile boolean pondering;
+    // Time from the time limit of the last search to it stopping, 0 if it
+    // finished before the limit
+    private long stopLatency;
+
+    private NegamaxSearch mainSearch;
+    private NegamaxSearch[] helperSearches;
+    private ExecutorService helperPool;
+    private ExecutorService ponderPool;
+    private ScheduledExecutorService timer;
+    private Future<Move> ponderResult;
+    // Reply the ponder search expects, null if it searches the opponent's
+    // position instead
+    private Move ponderMove;
+    // Report for a solved or book move after the expected reply, looked up
+    // before the ponder search starts (the state can't be read while it
+    // runs), null if there is none
+    private SearchReport ponderKnown;
+    // True if the ponder search found a forced win with the threat-space
+    // search, before starting the main search
+    private volatile boolean ponderWin;
+    private TranspositionTable table;
+    private int tableSizeMb;
+    private OpeningBook book;
+    private String bookFile;
+    private SolvedPositionCache solvedCache;
+    private int size;
 
-    private int totalNodeCount;
-    private int nonLeafCount;
-    private int branchesExploredSum;
+    /**
+     * Create a new negamax player with the default engine settings.
+     */
+    public NegamaxPlayer() {
+        this(NegamaxSettings.withDefaults());
+    }
 
-    private State state;
-    private int size;
-    private List<Move> moves;
-
-    /**
-     * Determines if we need to respond to any threats on the board, if so,
-     * we use a reduced set of moves in the search.
-     * @param state State to check
-     * @return List of defensive threat moves
-     */
-    private List<Move> getThreatResponses(State state) {
-        int playerIndex = state.currentIndex;
-        int opponentIndex = state.currentIndex == 2 ? 1 : 2;
-
-        HashSet<Move> fours = new HashSet<>();
-        HashSet<Move> threes = new HashSet<>();
-        HashSet<Move> refutations = new HashSet<>();
-
-        HashSet<Move> opponentFours = new HashSet<>();
-        HashSet<Move> opponentThrees = new HashSet<>();
-        HashSet<Move> opponentRefutations = new HashSet<>();
-
-        // Check for threats first and respond to them if they exist
-        for(int i = 0; i < state.board.length; i++) {
-            for(int j = 0; j < state.board.length; j++) {
-                if(state.board[i][j].index == opponentIndex) {
-                    opponentFours.addAll(ThreatUtils.getFours(state,
-                            state.board[i][j], opponentIndex));
-                    opponentThrees.addAll(ThreatUtils.getThrees(state,
-                            state.board[i][j], opponentIndex));
-                    opponentRefutations.addAll(ThreatUtils.getRefutations
-                            (state, state.board[i][j], opponentIndex));
-                }
-                else if(state.board[i][j].index == playerIndex) {
-                    fours.addAll(ThreatUtils.getFours(state, state.board[i][j],
-                            playerIndex));
-                    threes.addAll(ThreatUtils.getThrees(state, state
-                            .board[i][j], playerIndex));
-                    refutations.addAll(ThreatUtils.getRefutations(state, state
-                            .board[i][j], playerIndex));
-                }
-            }
-        }
+    /**
+     * Create a new negamax player.
+     * @param settings Engine settings to use
+     */
+    public NegamaxPlayer(NegamaxSettings settings) {
+        this.settings = settings;
+    }
 
-        // We have a four on the board, play it
-        if(!fours.isEmpty()) {
-            return new ArrayList<>(fours);
+    /**
+     * Create a report on the current search, with the counters of every
+     * thread added together.
+     * @param finished True if the move has been decided
+     * @param bestMove Move decided on, or null to take the best move of the
+     *                 last completed iteration
+     * @return Search report
+     */
+    private SearchReport createReport(boolean finished, Move bestMove) {
+        long nodes = mainSearch.getNodeCount();
+        long interiorNodes = mainSearch.getNonLeafCount();
+        long branches = mainSearch.getBranchesExploredSum();
+        long hashProbes = mainSearch.getHashProbes();
+        long hashHits = mainSearch.getHashHits();
+        long cutoffs = mainSearch.getCutoffs();
+        long firstMoveCutoffs = mainSearch.getFirstMoveCutoffs();
+        int selectiveDepth = mainSearch.getSelectiveDepth();
+        for(NegamaxSearch helper : helperSearches) {
+            nodes += helper.getNodeCount();
+            interiorNodes += helper.getNonLeafCount();
+            branches += helper.getBranchesExploredSum();
+            hashProbes += helper.getHashProbes();
+            hashHits += helper.getHashHits();
+            cutoffs += helper.getCutoffs();
+            firstMoveCutoffs += helper.getFirstMoveCutoffs();
+            selectiveDepth = Math.max(selectiveDepth,
+                    helper.getSelectiveDepth());
         }
-
-        // Opponent has a four, defend against it
-        if(!opponentFours.isEmpty()) {
-            return new ArrayList<>(opponentFours);
+        List<Move> pv = mainSearch.getPrincipalVariation();
+        if(bestMove == null && !pv.isEmpty()) {
+            bestMove = pv.get(0);
         }
+        return new SearchReport(finished, mainSearch.getCompletedDepth(),
+                selectiveDepth, mainSearch.getScore(), bestMove, pv, nodes,
+                interiorNodes, branches, hashProbes, hashHits, cutoffs,
+                firstMoveCutoffs, System.nanoTime() - startTime,
+                threatSearchTime);
+    }
 
-        // We have a three that we can play to win.
-        // Either we play the three and win, or our opponent has a refutation
-        // that leads to their win. So we only consider our three and the
-        // opponents refutations.
-        if(!threes.isEmpty()) {
-            threes.addAll(opponentRefutations);
-            return new ArrayList<>(threes);
-        }
+    /**
+     * Create the report for a move decided without the main search: a
+     * solved or book move, a forced win found by the threat-space search,
+     * or the opening move.
+     * @param move Move decided on
+     * @param score Score of the move
+     * @return Finished search report, with no nodes searched
+     */
+    private SearchReport createMoveReport(Move move, int score) {
+        return new SearchReport(true, 0, 0, score, move,
+                Collections.singletonList(move), 0, 0, 0, 0, 0, 0, 0, 0,
+                threatSearchTime);
+    }
 
-        // Opponent has a three, defend against it and add refutation moves
-        if(!opponentThrees.isEmpty()) {
-            opponentThrees.addAll(refutations);
-            return new ArrayList<>(opponentThrees);
+    /**
+     * Send a report to the search listener, if there is one.
+     * @param report Search report
+     */
+    private void publishReport(SearchReport report) {
+        Consumer<SearchReport> listener = searchListener;
+        if(listener != null) {
+            listener.accept(report);
         }
+    }
 
-        return new ArrayList<>();
+    /**
+     * Log and publish the report for a decided move, including the amount of
+     * nodes traversed in the game tree and the nodes traversed per second.
+     * @param bestMove Move decided on
+     */
+    private void reportMove(Move bestMove) {
+        SearchReport report = createReport(true, bestMove);
+        if(report.getNodes() > 0) {
+            LOGGER.info("Time: {}ms ({}ms threat search)", report
+                    .getTimeMillis(), report.getThreatSearchTimeMillis());
+            LOGGER.info("Nodes: {}", report.getNodes());
+            LOGGER.info("Nodes/s: {}", report.getNodesPerSecond());
+            LOGGER.info("Branches explored (avg): {} ",
+                    String.format("%.2f", report.getAverageBranches()));
+            LOGGER.info("Hash hits: {}%", String.format("%.1f",
+                    report.getHashHitRate() * 100));
+            LOGGER.info("First move cutoffs: {}%", String.format("%.1f",
+                    report.getFirstMoveCutoffRate() * 100));
+            if(stopLatency > 0) {
+                LOGGER.info("Stop latency: {}us", stopLatency / 1000);
+            }
+        }
+        publishReport(report);
     }
 
     /**
-     * Generate a list of sorted and pruned moves for this state. Moves are
-     * pruned when they are too far away from existing stones, and also when
-     * threats are found which require an immediate response.
-     * @param state State to get moves for
-     * @return A list of moves, sorted and pruned
+     * Publish a report on the iteration the main search just completed,
+     * unless pondering before the opponent has moved.
      */
-    private List<Move> getSortedMoves(State state) {
-        // Board is empty, return a move in the middle of the board
-        if(state.getMoves() == 0) {
-            List<Move> moves = new ArrayList<>();
-            moves.add(new Move(state.board.length / 2, state.board.length / 2));
-            return moves;
+    private void reportIteration() {
+        if(!pondering && searchListener != null) {
+            publishReport(createReport(false, null));
         }
+    }
 
-        List<Move> threatResponses = getThreatResponses(state);
-        if(!threatResponses.isEmpty()) {
-            return threatResponses;
+    @Override
+    public void setupGame(int index, int boardSize, long moveTimeMillis, long gameTimeMillis) {
+        stopPondering(null, 0);
+        this.timeManager = new TimeManager(moveTimeMillis, gameTimeMillis);
+        // Keep the table from the previous game if we can, positions from
+        // previous games are likely to come up again in a match
+        if(table == null || size != boardSize
+                || tableSizeMb != settings.getHashSizeMb()
+                || !settings.isHashKeptBetweenGames()) {
+            this.table = new TranspositionTable(settings.getHashSizeMb());
+            this.tableSizeMb = settings.getHashSizeMb();
+        }
+        this.size = boardSize;
+        // The book is only mapped, so opening it is instant however big it
+        // is, and it's kept for as long as the settings point to it
+        if(!Objects.equals(bookFile, settings.getOpeningBookFile())) {
+            this.bookFile = settings.getOpeningBookFile();
+            this.book = openBook(bookFile);
         }
 
-        List<ScoredMove> scoredMoves = new ArrayList<>();
+        int helpers = Math.max(0, settings.getThreads() - 1);
+        if(helperSearches != null && helperSearches.length != helpers) {
+            cleanup();
+        }
+        if(helpers > 0 && helperPool == null) {
+            this.helperPool = Executors.newFixedThreadPool(helpers, task -> {
+                Thread thread = new Thread(task, "NegamaxHelper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.mainSearch = new NegamaxSearch(new State(size), table, settings,
+                true);
+        mainSearch.setIterationListener(this::reportIteration);
+        this.helperSearches = new NegamaxSearch[helpers];
+        for(int i = 0; i < helpers; i++) {
+            helperSearches[i] = new NegamaxSearch(new State(size), table,
+                    settings, false);
+        }
 
-        // Grab closest moves
-        List<Move> moves = new ArrayList<>();
-        for(int i = 0; i < state.board.length; i++) {
-            for(int j = 0; j < state.board.length; j++) {
-                if(state.board[i][j].index == 0) {
-                    if(state.hasAdjacent(i, j, 2)) {
-                        int score = Evaluator.evaluateField(state, i, j,
-                                state.currentIndex);
-                        scoredMoves.add(new ScoredMove(new Move(i, j), score));
-                    }
-                }
-            }
+        // The cache is opened for every game and closed by cleanup() at the
+        // end of it, so the file is only locked while a game is played (its
+        // index is rebuilt each time). A game set up again without being
+        // cleaned up first has its cache closed here.
+        if(solvedCache != null) {
+            solvedCache.close();
         }
+        this.solvedCache = openSolvedCache(settings.getSolvedCacheFile());
+    }
 
-        // Sort based on move score
-        Collections.sort(scoredMoves);
-        for(ScoredMove move : scoredMoves) {
-            moves.add(move.move);
+    @Override
+    public Move loadBoard(List<Move> orderedMoves, long gameTimeRemainingMillis) {
+        stopPondering(null, 0);
+        loadPosition(orderedMoves);
+        Move bestMove = getBestMove(gameTimeRemainingMillis);
+        makeMove(bestMove);
+        startPondering(bestMove);
+        return bestMove;
+    }
+
+    @Override
+    public Move getMove(Move opponentsMove, long gameTimeRemainingMillis) {
+        Move bestMove = stopPondering(opponentsMove, gameTimeRemainingMillis);
+        if(bestMove == null) {
+            makeMove(opponentsMove);
+            bestMove = getBestMove(gameTimeRemainingMillis);
         }
-        return moves;
+        makeMove(bestMove);
+        startPondering(bestMove);
+        return bestMove;
     }
 
     /**
-     * Run the negamax algorithm for a node in the game tree.
-     * @param state Node to search
-     * @param depth Depth to search to
-     * @param alpha Alpha bound
-     * @param beta Beta bound
-     * @return Score of the node
-     * @throws InterruptedException Timeout or interrupted by the user
+     * Find the best move in the current position, within the time given to
+     * it by the time manager.
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @return Best move found
      */
-    private int negamax(State state, int depth, int alpha, int beta)
-            throws InterruptedException {
-        totalNodeCount++;
-        if(Thread.interrupted() || (System.nanoTime() - startTime) > timeNanos) {
-            throw new InterruptedException();
+    private Move getBestMove(long gameTimeRemainingMillis) {
+        SearchReport known = probeKnownMove();
+        if(known != null) {
+            publishReport(known);
+            return known.getBestMove();
         }
-        if(depth == 0 || state.terminal() != 0) {
-            return Evaluator.evaluateState(state, depth);
+        timeManager.startMove(gameTimeRemainingMillis, mainSearch.getState()
+                .getMoves());
+        // Look for a forced win first, with a fraction of the time
+        long start = System.nanoTime();
+        Move win = mainSearch.findForcedWin(timeManager.getSoftLimit()
+                / THREAT_SPACE_TIME_FRACTION);
+        this.threatSearchTime = System.nanoTime() - start;
+        if(win != null) {
+            storeSolved(win, Evaluator.WIN_SCORE);
+            publishReport(createMoveReport(win, Evaluator.WIN_SCORE));
+            this.threatSearchTime = 0;
+            return win;
         }
-        nonLeafCount++;
+        Move best = search(MAX_DEPTH, timeManager.getHardLimit()
+                - threatSearchTime, timeManager);
+        reportMove(best);
+        storeSearchResult(best);
+        this.threatSearchTime = 0;
+        return best;
+    }
 
-        int value;
-        int best = Integer.MIN_VALUE;
-        int countBranches = 0;
+    @Override
+    public void setSearchListener(Consumer<SearchReport> listener) {
+        this.searchListener = listener;
+    }
 
-        List<Move> moves = getSortedMoves(state);
+    @Override
+    public Move beginGame(long gameTimeRemainingMillis) {
+        SearchReport known = probeKnownMove();
+        if(known == null) {
+            known = createMoveReport(new Move(size / 2, size / 2), 0);
+        }
+        publishReport(known);
+        Move move = known.getBestMove();
+        makeMove(move);
+        startPondering(move);
+        return move;
+    }
 
-        for (Move move : moves) {
-            countBranches++;
-            state.makeMove(move);
-            value = -negamax(state, depth - 1, -beta, -alpha);
-            state.undoMove(move);
-            if(value > best) {
-                best = value;
-            }
-            if(best > alpha) alpha = best;
-            if(best >= beta) {
-                break;
-            }
+    @Override
+    public void cleanup() {
+        stopPondering(null, 0);
+        if(timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        if(ponderPool != null) {
+            ponderPool.shutdownNow();
+            ponderPool = null;
+        }
+        if(helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+        if(solvedCache != null) {
+            solvedCache.close();
+            solvedCache = null;
+        }
+    }
+
+    /**
+     * Open an opening book file.
+     * @param file Path of the book file, or null
+     * @return Opening book, or null if there is no file or it can't be
+     * opened
+     */
+    private OpeningBook openBook(String file) {
+        if(file == null) return null;
+        try {
+            OpeningBook opened = OpeningBook.open(Paths.get(file));
+            LOGGER.info("Opening book: {} ({} entries)", file,
+                    opened.getEntryCount());
+            return opened;
+        } catch (IOException e) {
+            LOGGER.warn("Could not open opening book: {}", file, e);
+            return null;
         }
-        branchesExploredSum += countBranches;
-        return best;
     }
 
     /**
-     * Run a depth-limited negamax search on a set of moves, sorting them by
-     * score.
-     * @param depth Depth to search to
-     * @return Original move list sorted by best score first
+     * Look up the current position in the opening book.
+     * @return Report for the book move, or null if there is no book or the
+     * position isn't in it
      */
-    private List<Move> searchMoves(State state, List<Move> moves, int depth)
-            throws InterruptedException {
+    private SearchReport probeBook() {
+        if(book == null) return null;
+        Move move = book.probe(mainSearch.getState());
+        if(move == null) return null;
+        LOGGER.info("Book move: {}", move.getAlgebraicString(size));
+        return createMoveReport(move, 0);
+    }
+
+    /**
+     * Look up the current position in the solved position cache, then in
+     * the opening book.
+     * @return Report for the solved or book move, or null if the position
+     * is in neither
+     */
+    private SearchReport probeKnownMove() {
+        SearchReport report = probeSolvedCache();
+        return report != null ? report : probeBook();
+    }
 
-        List<ScoredMove> scoredMoves = new ArrayList<>();
-        for(Move move : moves) {
-            scoredMoves.add(new ScoredMove(move, Integer.MIN_VALUE));
+    /**
+     * Open a solved position cache file, creating it if it doesn't exist.
+     * @param file Path of the cache file, or null
+     * @return Solved position cache, or null if there is no file or it
+     * can't be opened
+     */
+    private SolvedPositionCache openSolvedCache(String file) {
+        if(file == null) return null;
+        try {
+            SolvedPositionCache opened = SolvedPositionCache.open(Paths.get(
+                    file), size);
+            LOGGER.info("Solved position cache: {} ({} entries)", file,
+                    opened.getEntryCount());
+            return opened;
+        } catch (IOException e) {
+            LOGGER.warn("Could not open solved position cache: {}", file, e);
+            return null;
         }
+    }
 
-        int alpha = -11000;
-        int beta = 11000;
-        int best = Integer.MIN_VALUE;
+    /**
+     * Look up the current position in the solved position cache.
+     * @return Report for the move proven to win, or the best defence of a
+     * proven loss, or null if there is no cache or the position isn't in it
+     */
+    private SearchReport probeSolvedCache() {
+        if(solvedCache == null) return null;
+        long entry = solvedCache.probe(mainSearch.getState());
+        if(entry == 0) return null;
+        int field = SolvedPositionCache.getMove(entry);
+        Move move = new Move(field / size, field % size);
+        LOGGER.info("Solved position: {} ({})", move.getAlgebraicString(
+                size), SolvedPositionCache.getScore(entry) > 0 ? "win"
+                : "loss");
+        return createMoveReport(move, SolvedPositionCache.getScore(entry));
+    }
 
-        for(ScoredMove move : scoredMoves) {
-            state.makeMove(move.move);
-            move.score = -negamax(state, depth - 1, -beta, -alpha);
-            state.undoMove(move.move);
-            if(move.score > best) best = move.score;
-            if(best > alpha) alpha = best;
-            if(best >= beta) break;
+    /**
+     * Store the move to play in the current position in the solved position
+     * cache, if the position is solved.
+     * @param move Move to play
+     * @param score Score of the move, stored if it's a win or loss score
+     */
+    private void storeSolved(Move move, int score) {
+        if(solvedCache == null || Math.abs(score) < NegamaxSearch
+                .WIN_THRESHOLD) {
+            return;
         }
+        solvedCache.store(mainSearch.getState(), move.row * size + move.col,
+                score);
+    }
 
-        scoredMoves.sort((move1, move2) -> move2.score - move1.score);
-        printSearchInfo(scoredMoves.get(0).move, scoredMoves.get(0).score,
-                depth);
+    /**
+     * Store the result of the last search in the solved position cache, if
+     * it solved the position. The score belongs to the last completed
+     * iteration, so the move is only stored if that iteration chose it.
+     * @param best Move decided on
+     */
+    private void storeSearchResult(Move best) {
+        if(solvedCache == null) return;
+        List<Move> pv = mainSearch.getPrincipalVariation();
+        if(!pv.isEmpty() && pv.get(0).equals(best)) {
+            storeSolved(best, mainSearch.getScore());
+        }
+    }
 
-        moves.clear();
-        for(ScoredMove move : scoredMoves) moves.add(move.move);
-        return moves;
+    /**
+     * Run a depth increasing search on the current position, using the
+     * helper threads alongside the calling thread.
+     * @param maxDepth Maximum depth to search to
+     * @param timeNanos Time limit, in nanoseconds
+     * @return Best move found by the main search
+     */
+    Move search(int maxDepth, long timeNanos) {
+        return search(maxDepth, timeNanos, null);
     }
 
     /**
-     * Run negamax for an increasing depth, sorting the moves after every
-     * completed search
-     * @param startDepth Start depth
-     * @param endDepth Maximum depth
-     * @return Best move found
+     * Run a depth increasing search on the current position, using the
+     * helper threads alongside the calling thread.
+     * @param maxDepth Maximum depth to search to
+     * @param timeNanos Time limit, in nanoseconds
+     * @param manager Time manager deciding when to stop between iterations,
+     *                or null to search until the time limit or the depth
+     * @return Best move found by the main search
      */
-    private Move iterativeDeepening(int startDepth, int endDepth)  {
+    private Move search(int maxDepth, long timeNanos, TimeManager manager) {
+        setStopped(false);
+        mainSearch.setTimeManager(manager);
         this.startTime = System.nanoTime();
-        List<Move> moves = getSortedMoves(state);
-        if(moves.size() == 1) return moves.get(0);
-        for(int i = startDepth; i <= endDepth; i++) {
+        return runSearch(maxDepth, timeNanos);
+    }
+
+    /**
+     * Run a depth increasing search, without clearing the stopped flags or
+     * setting the time manager of the searches first. Used to start a
+     * search on another thread, which can then be stopped (or given a time
+     * manager) straight away.
+     * @param maxDepth Maximum depth to search to
+     * @param timeNanos Time limit, in nanoseconds
+     * @return Best move found by the main search
+     */
+    private Move runSearch(int maxDepth, long timeNanos) {
+        // Age the entries in the hash table
+        table.newSearch();
+        long searchStart = System.nanoTime();
+
+        // Start the helpers. Every other helper starts one ply deeper, so
+        // the threads spread out over more depths instead of searching the
+        // same tree in lockstep.
+        List<Future<?>> pending = new ArrayList<>();
+        for(int i = 0; i < helperSearches.length; i++) {
+            NegamaxSearch helper = helperSearches[i];
+            int startDepth = i % 2 == 0 ? 3 : 2;
+            pending.add(helperPool.submit(() -> helper.iterativeDeepening(
+                    startDepth, maxDepth, timeNanos)));
+        }
+
+        // The main search decides the move, then the helpers are stopped
+        ScheduledFuture<?> stop = scheduleStop(timeNanos);
+        Move best = mainSearch.iterativeDeepening(2, maxDepth, timeNanos);
+        this.stopLatency = Math.max(0, System.nanoTime() - searchStart
+                - timeNanos);
+        cancelStop(stop);
+        for(NegamaxSearch helper : helperSearches) {
+            helper.setStopped(true);
+        }
+        for(Future<?> future : pending) {
             try {
-                moves = searchMoves(state, moves, i);
+                future.get();
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 break;
+            } catch (ExecutionException e) {
+                LOGGER.error("Helper search failed", e);
             }
         }
-        return moves.get(0);
+        return best;
     }
 
     /**
-     * Print performance information, including the amount of nodes traversed
-     * in the game tree and the nodes traversed per millisecond.
+     * Stop every search once a time limit runs out, on the timer thread.
+     * @param timeNanos Time limit, in nanoseconds
+     * @return Scheduled stop, or null if the search isn't timed
      */
-    private void printPerformanceInfo() {
-        if(totalNodeCount > 0) {
-            long duration = (System.nanoTime() - startTime) / 1000000;
-            double nodesPerMs = totalNodeCount / (duration > 0 ? duration : 1);
-            double avgBranches = (double) branchesExploredSum / (double)
-                    nonLeafCount;
-            LOGGER.info("Time: {}ms", duration);
-            LOGGER.info( "Nodes: {}", totalNodeCount);
-            LOGGER.info("Nodes/ms: {}", nodesPerMs);
-            LOGGER.info("Branches explored (avg): {} ",
-                    String.format("%.2f", avgBranches));
+    private ScheduledFuture<?> scheduleStop(long timeNanos) {
+        if(timeNanos >= PONDER_TIME_NANOS) return null;
+        if(timer == null) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "NegamaxTimer");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return timer.schedule(() -> setStopped(true), timeNanos,
+                TimeUnit.NANOSECONDS);
     }
-    
+
     /**
-     * Print the result of a search. Includes the best move found, depth
-     * searched, and the evaluation score.
+     * Cancel a scheduled stop. If it has already started, wait for it to
+     * finish, so that it can't stop the next search.
+     * @param stop Scheduled stop, or null
      */
-    private void printSearchInfo(Move bestMove, int score, int depth) {
-        String moveAlgebraic = bestMove.getAlgebraicString(size);
-        LOGGER.info("Depth: {}, Evaluation: {}, Best move: {}", depth, score,
-                moveAlgebraic);
+    private void cancelStop(ScheduledFuture<?> stop) {
+        if(stop == null || stop.cancel(false)) return;
+        try {
+            stop.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Scheduled stop failed", e);
+        }
     }
 
-    @Override
-    public void setupGame(int index, int boardSize, long moveTimeMillis, long gameTimeMillis) {
-        this.size = boardSize;
-        this.timeNanos = (moveTimeMillis) * 1000000;
-        this.moves = new ArrayList<>();
+    /**
+     * Start searching on the opponent's time, if pondering is enabled. The
+     * expected reply is the second move of the principal variation, as
+     * long as the variation starts with the move that was played.
+     * @param bestMove Move the player just played
+     */
+    private void startPondering(Move bestMove) {
+        if(!settings.isPonderingEnabled()) return;
+        if(ponderPool == null) {
+            this.ponderPool = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "NegamaxPonder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        List<Move> pv = mainSearch.getPrincipalVariation();
+        this.ponderMove = null;
+        this.ponderKnown = null;
+        // The principal variation can be left over from an earlier search
+        // after a book move, so check the reply is still legal
+        if(pv.size() > 1 && pv.get(0).equals(bestMove) && mainSearch
+                .getState().getIndex(pv.get(1).row, pv.get(1).col) == 0) {
+            this.ponderMove = pv.get(1);
+            makeMove(ponderMove);
+            this.ponderKnown = probeKnownMove();
+        }
+        // Cleared here rather than on the ponder thread, so that stopping
+        // the search (or giving it a time manager) before it starts still
+        // works
+        setStopped(false);
+        mainSearch.setTimeManager(null);
+        this.startTime = System.nanoTime();
+        this.pondering = true;
+        this.ponderWin = false;
+        // The usual share of the last move's time, the next move's limits
+        // aren't known until the opponent moves
+        long threatTimeNanos = timeManager.getSoftLimit()
+                / THREAT_SPACE_TIME_FRACTION;
+        boolean expectingReply = ponderMove != null;
+        SearchReport known = ponderKnown;
+        this.ponderResult = known != null
+                ? CompletableFuture.completedFuture(known.getBestMove())
+                : ponderPool.submit(() -> ponder(expectingReply,
+                        threatTimeNanos));
     }
 
-    @Override
-    public Move loadBoard(List<Move> orderedMoves, long gameTimeRemainingMillis) {
-        this.moves = orderedMoves;
-        Move bestMove = getBestMove();
-        moves.add(bestMove);
-        return bestMove;
+    /**
+     * Search on the opponent's time, on the ponder thread. A position after
+     * the expected reply gets the threat-space search first, as any other
+     * move would.
+     * @param expectingReply True if the expected reply has been played
+     * @param threatTimeNanos Time limit of the threat-space search
+     * @return Best move found
+     */
+    private Move ponder(boolean expectingReply, long threatTimeNanos) {
+        if(expectingReply) {
+            Move win = mainSearch.findForcedWin(threatTimeNanos);
+            if(win != null) {
+                this.ponderWin = true;
+                return win;
+            }
+        }
+        return runSearch(MAX_DEPTH, PONDER_TIME_NANOS);
     }
 
-    @Override
-    public Move getMove(Move opponentsMove, long gameTimeRemainingMillis) {
-        moves.add(opponentsMove);
-        Move bestMove = getBestMove();
-        moves.add(bestMove);
-        return bestMove;
+    /**
+     * Stop searching on the opponent's time. On a ponder hit, a solved or
+     * book move is returned straight away (there is no search for it), and
+     * otherwise the search carries
+     * on under the time manager and its move is returned, with the
+     * opponent's move already on the state. Otherwise the search is
+     * stopped, and the expected reply undone.
+     * @param opponentsMove Move the opponent played, or null to stop
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @return Best move if the opponent played the expected reply, otherwise
+     * null
+     */
+    private Move stopPondering(Move opponentsMove, long
+            gameTimeRemainingMillis) {
+        if(ponderResult == null) return null;
+        Future<Move> result = ponderResult;
+        this.ponderResult = null;
+        this.pondering = false;
+
+        Move best = null;
+        if(ponderMove != null && ponderMove.equals(opponentsMove)) {
+            LOGGER.info("Ponder hit: {}", ponderMove.getAlgebraicString(
+                    size));
+            this.startTime = System.nanoTime();
+            timeManager.startMove(gameTimeRemainingMillis, mainSearch
+                    .getState().getMoves());
+            if(ponderKnown != null) {
+                publishReport(ponderKnown);
+                return ponderKnown.getBestMove();
+            }
+            // Stops the search between iterations, like any other search,
+            // from here on
+            mainSearch.setTimeManager(timeManager);
+            try {
+                best = result.get(timeManager.getHardLimit(),
+                        TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                setStopped(true);
+                best = awaitPonderResult(result);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.error("Ponder search failed", e);
+            }
+            if(best != null && ponderWin) {
+                storeSolved(best, Evaluator.WIN_SCORE);
+                publishReport(createMoveReport(best, Evaluator.WIN_SCORE));
+                return best;
+            }
+            if(best != null) {
+                reportMove(best);
+                storeSearchResult(best);
+                return best;
+            }
+        }
+
+        // The search has to finish before the state can be used again
+        setStopped(true);
+        awaitPonderResult(result);
+        if(ponderMove != null) {
+            undoMove(ponderMove);
+        }
+        return null;
     }
 
-    private Move getBestMove() {
-        // Reset performance counts, clear the hash table
-        this.totalNodeCount = 0;
-        this.nonLeafCount = 0;
-        this.branchesExploredSum = 0;
+    /**
+     * Wait for a stopped ponder search to finish, even if interrupted.
+     * @param result Result of the ponder search
+     * @return Best move found, or null if the search failed
+     */
+    private Move awaitPonderResult(Future<Move> result) {
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    LOGGER.error("Ponder search failed", e);
+                    return null;
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-        // Create a new internal state object, sync with the game state
-        this.state = new State(size);
-        moves.forEach((move) -> {
-            state.makeMove(move);
-        });
+    /**
+     * Set the stopped flag of every search.
+     * @param stopped True to stop the searches
+     */
+    private void setStopped(boolean stopped) {
+        mainSearch.setStopped(stopped);
+        for(NegamaxSearch helper : helperSearches) {
+            helper.setStopped(stopped);
+        }
+    }
 
-        // Run a depth increasing search
-        Move best = iterativeDeepening(2, 8);
-        printPerformanceInfo();
-        return best;
+    /**
+     * Replace the current position with a new one, on every search.
+     * @param orderedMoves List of moves made in the game, in order
+     */
+    void loadPosition(List<Move> orderedMoves) {
+        this.mainSearch = new NegamaxSearch(new State(size), table, settings,
+                true);
+        mainSearch.setIterationListener(this::reportIteration);
+        for(int i = 0; i < helperSearches.length; i++) {
+            helperSearches[i] = new NegamaxSearch(new State(size), table,
+                    settings, false);
+        }
+        orderedMoves.forEach(this::makeMove);
     }
 
-    @Override
-    public Move beginGame(long gameTimeRemainingMillis) {
-        Move move = new Move(size / 2, size / 2);
-        moves.add(move);
-        return move;
+    /**
+     * Apply a move to the state of every search.
+     * @param move Move to apply
+     */
+    private void makeMove(Move move) {
+        mainSearch.getState().makeMove(move);
+        for(NegamaxSearch helper : helperSearches) {
+            helper.getState().makeMove(move);
+        }
     }
 
-    private class ScoredMove implements Comparable<ScoredMove> {
-        public Move move;
-        public int score;
-        public ScoredMove(Move move, int score) {
-            this.move = move;
-            this.score = score;
+    /**
+     * Undo a move on the state of every search.
+     * @param move Move to undo
+     */
+    private void undoMove(Move move) {
+        mainSearch.getState().undoMove(move);
+        for(NegamaxSearch helper : helperSearches) {
+            helper.getState().undoMove(move);
         }
+    }
 
-        @Override
-        public int compareTo(ScoredMove move) {
-            return move.score - this.score;
+    /**
+     * @return Total number of nodes visited by all threads in the last search
+     */
+    long getNodeCount() {
+        long nodes = mainSearch.getNodeCount();
+        for(NegamaxSearch helper : helperSearches) {
+            nodes += helper.getNodeCount();
         }
+        return nodes;
+    }
+
+    /**
+     * @return Reply the current ponder search expects, or null if there is
+     * no ponder search or it searches the opponent's position
+     */
+    Move getPonderMove() {
+        return ponderResult != null ? ponderMove : null;
+    }
+
+    /**
+     * @return Time from the time limit of the last search to the search
+     * stopping in nanoseconds, 0 if it finished before the limit
+     */
+    long getStopLatency() {
+        return stopLatency;
+    }
+
+    /**
+     * @return Deepest iteration completed by the main search
+     */
+    int getCompletedDepth() {
+        return mainSearch.getCompletedDepth();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,1042 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * A single negamax search, with alpha-beta pruning and a transposition
+ * table. Each search runs on one thread using its own copy of the state, so
+ * several searches can run in parallel on the same position while sharing
+ * the transposition table (Lazy SMP).
+ *
+ * Uses principal variation search: the first move at every node is searched
+ * with the full window, and every other move with a null window, only
+ * re-searching with the full window when a move turns out to be better than
+ * the first. Iterations after the first start with an aspiration window
+ * around the previous score. The best line found (principal variation) is
+ * collected in a triangular table, indexed by [ply][ply..length].
+ *
+ * Moves are packed into ints (the field index, row * size + col) inside
+ * the search, and generated into buffers allocated once per ply, so that
+ * searching a node doesn't allocate. Move objects are only created for the
+ * result of the search.
+ *
+ * Moves are ordered by their static score from the evaluator, with ties
+ * broken by move ordering heuristics: moves which caused a beta cutoff in
+ * sibling nodes (two killer moves per ply), the move which last refuted the
+ * opponent's previous move (countermove), and a history score per player
+ * and square which grows every time a move causes a cutoff. The hash move
+ * is always searched first.
+ *
+ * Interior nodes where the player to move can make a four are checked for
+ * a short VCF (victory by continuous fours) with a threat-space search,
+ * which finds forced wins beyond the search depth.
+ *
+ * The search can be made selective below the root, on top of the move
+ * ordering, with each technique switched in the settings. Quiet moves
+ * late in the order are searched to a reduced depth, and only
+ * re-searched to the full depth if they fail high (late move reductions).
+ * A node is cut off if passing the turn still fails high in a reduced
+ * search (null move pruning), and quiet moves close to the leaves are
+ * skipped when the static evaluation is too far below alpha for them to
+ * matter (futility pruning). None of these apply while a four or three is
+ * on the board, and moves which make or stop a four or three (the threat
+ * sets of the state) are never reduced or skipped, so tactics are always
+ * searched to the full depth.
+ *
+ * Root moves which lead to the same position up to a symmetry of the board
+ * (common in the opening, where the stones are often symmetric) are only
+ * searched once. With canonical hashing enabled, the transposition table is
+ * keyed by the canonical hash of the state, so the rotations and
+ * reflections of a position share their entries. Hash moves are stored as
+ * seen in the canonical image and mapped back onto the board when probed.
+ *
+ * @see NegamaxPlayer
+ */
+class NegamaxSearch {
+
+    private static final Logger LOGGER =
+            LogManager.getLogger(NegamaxSearch.class.getName());
+
+    // Scores beyond this value are wins/losses found by the search
+    static final int WIN_THRESHOLD = Evaluator.WIN_SCORE - 1000;
+    // Bound outside of any possible score
+    private static final int INFINITY = 11000;
+    // Initial half-width of the aspiration window around the previous score
+    private static final int ASPIRATION_WINDOW = 50;
+    // Maximum number of plies searched from the root
+    static final int MAX_PLY = 64;
+
+    // Ordering bonuses, added to the static score of a move after it has
+    // been scaled by ORDERING_SCALE. The bonuses never add up to more than
+    // the scale, so they only reorder moves with the same static score.
+    private static final int ORDERING_SCALE = 64;
+    private static final int KILLER_BONUS = 32;
+    private static final int COUNTERMOVE_BONUS = 16;
+    private static final int MAX_HISTORY_BONUS = 15;
+    // History scores are divided by this to give the history bonus, and
+    // are halved at the start of every search and when they grow too large
+    private static final int HISTORY_DIVISOR = 64;
+    private static final int HISTORY_LIMIT = 1 << 20;
+    // Cutoffs closer to the leaves than this don't update the killers and
+    // countermoves, they are too specific to the position
+    private static final int MIN_ORDERING_DEPTH = 2;
+
+    // Limits for the VCF searches at interior nodes, which are only run
+    // close to the root where they are cheap compared to the subtree, and
+    // the size of the threat-space search table (as a power of 2)
+    private static final int NODE_VCF_MIN_DEPTH = 4;
+    private static final int NODE_VCF_DEPTH = 6;
+    private static final int NODE_VCF_NODES = 100;
+    private static final int THREAT_TABLE_BITS = 18;
+
+    // Late move reductions: quiet moves after the first few, at nodes with
+    // enough depth left. Reductions are by two plies, since the evaluation
+    // favours the player who moved last, and a search which ends on the
+    // other player's move fails high too often to save anything.
+    private static final int LMR_MIN_DEPTH = 3;
+    private static final int LMR_MIN_MOVES = 2;
+    private static final int LMR_REDUCTION = 2;
+    // Null move pruning: depth the null move search is reduced by, on top
+    // of the ply for the move itself (even, for the same reason)
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int NULL_MOVE_REDUCTION = 2;
+    // Futility pruning: most a quiet move can raise the evaluation by,
+    // indexed by remaining depth. A quiet move gains at most ~180 on the
+    // benchmark positions.
+    private static final int[] FUTILITY_MARGINS = {0, 200, 300};
+    // Threat sets of the state holding the moves which make a four or three
+    private static final int[] THREAT_MOVE_TYPES = {State.FOUR_MOVES,
+            State.THREE_MOVES};
+
+    private final State state;
+    private final TranspositionTable table;
+    private final boolean main;
+    private final int rootRadius;
+    private final int radius;
+    // Threat-space search on the same state, null if disabled
+    private final ThreatSpaceSearch threatSearch;
+    private final boolean lateMoveReductions;
+    private final boolean nullMovePruning;
+    private final boolean futilityPruning;
+    private final boolean canonicalHashing;
+    private final Symmetry symmetry;
+    // Only one null move is allowed on the current line, so that passing
+    // can't be used to skip over the opponent's threats
+    private boolean nullMoveActive;
+
+    private long timeNanos;
+    private long startTime;
+    // Set by another thread (usually a timer) to stop the search, read at
+    // every node
+    private volatile boolean stopped;
+    // The clock is only read every (mask + 1) nodes, as a backstop
+    private final int timeCheckMask;
+    // Decides when to stop between iterations, null to only stop at the
+    // time limit or the end depth. Can be set from another thread, when a
+    // ponder search becomes the search for the player's move.
+    private volatile TimeManager timeManager;
+    // Called after every completed iteration of the main search, null if
+    // nothing is listening
+    private Runnable iterationListener;
+
+    private long totalNodeCount;
+    private long nonLeafCount;
+    private long branchesExploredSum;
+    private long hashProbes;
+    private long hashHits;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private int selectiveDepth;
+    private int completedDepth;
+
+    // Triangular principal variation table, and the length of each line
+    private final int[][] pvTable;
+    private final int[] pvLength;
+    // Principal variation of the last completed iteration
+    private int[] principalVariation;
+    // Score of the search in progress, a bound if it fell outside of the
+    // aspiration window
+    private int rootScore;
+    // Best move and score of the last completed iteration. An iteration only
+    // completes once its score falls inside the window, so the order of the
+    // root moves after a failed search can't replace the best move.
+    private int bestMove;
+    private int bestScore;
+
+    // Moves generated at each ply, and the moves at the root along with
+    // their scores from the last iteration
+    private final int[][] moveBuffers;
+    private final int[] rootMoves;
+    private final int[] rootScores;
+    private int rootCount;
+    // Scratch space for sorting moves, and for collecting threat squares
+    // (which may be repeated on up to four lines, for two threat types)
+    private final long[] sortBuffer;
+    private final int[] threatBuffer;
+    // Threat squares already collected are marked with the current stamp
+    private final int[] seen;
+    private int seenStamp;
+    // Quiet moves generated at each ply, by position in the move buffer,
+    // and the threat moves of the node being generated marked with a stamp
+    private final boolean[][] quietMoves;
+    private final int[] tactical;
+    private int tacticalStamp;
+
+    // Move ordering heuristics: killer moves indexed by [ply][slot],
+    // history scores indexed by [player][field] and countermoves indexed by
+    // the field of the previous move. Moves are stored as field indexes, -1
+    // if empty.
+    private final int[][] killers;
+    private final int[][] history;
+    private final int[] countermoves;
+
+    /**
+     * Create a new search.
+     * @param state State to search, owned by this search
+     * @param table Transposition table, may be shared with other searches
+     * @param settings Engine settings
+     * @param main True if this is the main search, whose result is played.
+     *             Helper searches don't log their progress.
+     */
+    NegamaxSearch(State state, TranspositionTable table, NegamaxSettings
+            settings, boolean main) {
+        this.state = state;
+        this.table = table;
+        this.main = main;
+        this.rootRadius = clampRadius(settings.getRootCandidateRadius());
+        this.radius = clampRadius(settings.getCandidateRadius());
+        this.timeCheckMask = Integer.highestOneBit(Math.max(1, Math.min(
+                1 << 20, settings.getTimeCheckInterval() * 2 - 1))) - 1;
+        this.threatSearch = settings.isThreatSpaceSearchEnabled()
+                ? new ThreatSpaceSearch(state, THREAT_TABLE_BITS) : null;
+        this.lateMoveReductions = settings.isLateMoveReductionsEnabled();
+        this.nullMovePruning = settings.isNullMovePruningEnabled();
+        this.futilityPruning = settings.isFutilityPruningEnabled();
+        this.canonicalHashing = settings.isCanonicalHashingEnabled();
+        this.symmetry = Symmetry.forSize(state.size);
+        this.pvTable = new int[MAX_PLY][MAX_PLY];
+        this.pvLength = new int[MAX_PLY];
+        this.principalVariation = new int[0];
+        int fields = state.size * state.size;
+        this.moveBuffers = new int[MAX_PLY][fields];
+        this.rootMoves = new int[fields];
+        this.rootScores = new int[fields];
+        this.sortBuffer = new long[fields];
+        this.threatBuffer = new int[8 * fields];
+        this.seen = new int[fields];
+        this.quietMoves = new boolean[MAX_PLY][fields];
+        this.tactical = new int[fields];
+        this.killers = new int[MAX_PLY][2];
+        this.history = new int[3][fields];
+        this.countermoves = new int[fields];
+        for(int[] slots : killers) {
+            Arrays.fill(slots, -1);
+        }
+        Arrays.fill(countermoves, -1);
+    }
+
+    /**
+     * Determines if we need to respond to any threats on the board, if so,
+     * we use a reduced set of moves in the search.
+     * @param state State to check
+     * @param moves Buffer to write the defensive threat moves to
+     * @return Number of threat moves, 0 if there are no threats
+     */
+    private int getThreatResponses(State state, int[] moves) {
+        int playerIndex = state.currentIndex;
+        int opponentIndex = state.currentIndex == 2 ? 1 : 2;
+
+        // Threat squares are maintained by the state, so only collect
+        // them when they're needed
+        int count;
+
+        // We have a four on the board, play it
+        if(state.hasThreats(State.FOUR_SQUARES, playerIndex)) {
+            count = state.getThreats(State.FOUR_SQUARES, playerIndex,
+                    threatBuffer, 0);
+        }
+        // Opponent has a four, defend against it
+        else if(state.hasThreats(State.FOUR_SQUARES, opponentIndex)) {
+            count = state.getThreats(State.FOUR_SQUARES, opponentIndex,
+                    threatBuffer, 0);
+        }
+        // We have a three that we can play to win.
+        // Either we play the three and win, or our opponent has a refutation
+        // that leads to their win. So we only consider our three and the
+        // opponents refutations.
+        else if(state.hasThreats(State.THREE_SQUARES, playerIndex)) {
+            count = state.getThreats(State.THREE_SQUARES, playerIndex,
+                    threatBuffer, 0);
+            count = state.getThreats(State.REFUTATION_SQUARES, opponentIndex,
+                    threatBuffer, count);
+        }
+        // Opponent has a three, defend against it and add refutation moves
+        else if(state.hasThreats(State.THREE_SQUARES, opponentIndex)) {
+            count = state.getThreats(State.THREE_SQUARES, opponentIndex,
+                    threatBuffer, 0);
+            count = state.getThreats(State.REFUTATION_SQUARES, playerIndex,
+                    threatBuffer, count);
+        } else {
+            return 0;
+        }
+        return removeDuplicates(threatBuffer, count, moves);
+    }
+
+    /**
+     * Copy fields from one buffer to another, skipping fields that have
+     * already been copied.
+     * @param fields Fields to copy
+     * @param count Number of fields to copy
+     * @param moves Buffer to copy the fields to
+     * @return Number of distinct fields
+     */
+    private int removeDuplicates(int[] fields, int count, int[] moves) {
+        if(++seenStamp == 0) {
+            Arrays.fill(seen, 0);
+            seenStamp = 1;
+        }
+        int distinct = 0;
+        for(int i = 0; i < count; i++) {
+            if(seen[fields[i]] != seenStamp) {
+                seen[fields[i]] = seenStamp;
+                moves[distinct++] = fields[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Check whether either player has a four or a three on the board, which
+     * restricts the moves to the threat responses.
+     * @param state State to check
+     * @return True if there are threats to respond to
+     */
+    private static boolean hasPendingThreats(State state) {
+        for(int index = 1; index <= 2; index++) {
+            if(state.hasThreats(State.FOUR_SQUARES, index)
+                    || state.hasThreats(State.THREE_SQUARES, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int opponentOf(State state) {
+        return state.currentIndex == 1 ? 2 : 1;
+    }
+
+    /**
+     * Flag the quiet moves in a list of moves: moves which don't make a
+     * four or a three for either player, according to the threat sets of
+     * the state.
+     * @param state State the moves were generated for
+     * @param moves Moves to check
+     * @param count Number of moves
+     * @param quiet Flags to set, by position in the list of moves
+     */
+    private void findQuietMoves(State state, int[] moves, int count,
+                                boolean[] quiet) {
+        if(++tacticalStamp == 0) {
+            Arrays.fill(tactical, 0);
+            tacticalStamp = 1;
+        }
+        for(int index = 1; index <= 2; index++) {
+            for(int type : THREAT_MOVE_TYPES) {
+                if(!state.hasThreats(type, index)) continue;
+                int threats = state.getThreats(type, index, threatBuffer, 0);
+                for(int i = 0; i < threats; i++) {
+                    tactical[threatBuffer[i]] = tacticalStamp;
+                }
+            }
+        }
+        for(int i = 0; i < count; i++) {
+            quiet[i] = tactical[moves[i]] != tacticalStamp;
+        }
+    }
+
+    private static int clampRadius(int radius) {
+        return Math.max(1, Math.min(State.MAX_RADIUS, radius));
+    }
+
+    /**
+     * Generate a list of sorted and pruned moves for this state. Moves are
+     * pruned when they are too far away from existing stones, and also when
+     * threats are found which require an immediate response.
+     * @param state State to get moves for
+     * @param radius Distance from existing stones to consider moves within
+     * @param moves Buffer to write the moves to
+     * @param ply Distance from the root
+     * @return Number of moves, sorted and pruned
+     */
+    int getSortedMoves(State state, int radius, int[] moves, int ply) {
+        // Board is empty, return a move in the middle of the board
+        if(state.getMoves() == 0) {
+            moves[0] = (state.size / 2) * state.size + state.size / 2;
+            return 1;
+        }
+
+        int count = getThreatResponses(state, moves);
+        if(count == 0) {
+            // Grab closest moves, maintained by the state
+            count = state.getCandidateCount(radius);
+            for(int i = 0; i < count; i++) {
+                moves[i] = state.getCandidate(radius, i);
+            }
+        }
+
+        // Sort based on move score. Each move is packed with its score so
+        // that sorting orders by score, then by board position, and doesn't
+        // depend on the order the moves were found in.
+        int player = state.currentIndex;
+        int previous = state.getLastMove();
+        int countermove = previous != -1 ? countermoves[previous] : -1;
+        for(int i = 0; i < count; i++) {
+            int field = moves[i];
+            int score = Evaluator.evaluateField(state, field, player)
+                    * ORDERING_SCALE;
+            if(field == killers[ply][0] || field == killers[ply][1]) {
+                score += KILLER_BONUS;
+            }
+            if(field == countermove) {
+                score += COUNTERMOVE_BONUS;
+            }
+            score += Math.min(MAX_HISTORY_BONUS, history[player][field]
+                    / HISTORY_DIVISOR);
+            sortBuffer[i] = (long) -score << 32 | field;
+        }
+        Arrays.sort(sortBuffer, 0, count);
+        for(int i = 0; i < count; i++) {
+            moves[i] = (int) sortBuffer[i];
+        }
+        return count;
+    }
+
+    /**
+     * Run the negamax algorithm for a node in the game tree.
+     * @param state Node to search
+     * @param depth Depth to search to
+     * @param alpha Alpha bound
+     * @param beta Beta bound
+     * @param ply Distance from the root
+     * @return Score of the node
+     * @throws InterruptedException Timeout, stopped, or interrupted by the
+     * user
+     */
+    private int negamax(State state, int depth, int alpha, int beta, int ply)
+            throws InterruptedException {
+        totalNodeCount++;
+        if(stopped || ((totalNodeCount & timeCheckMask) == 0
+                && (Thread.interrupted()
+                || (System.nanoTime() - startTime) > timeNanos))) {
+            throw new InterruptedException();
+        }
+        pvLength[ply] = ply;
+        if(ply > selectiveDepth) selectiveDepth = ply;
+        if(depth == 0 || ply == MAX_PLY - 1 || state.terminal() != 0) {
+            return Evaluator.evaluateState(state, depth);
+        }
+
+        // Nodes searched with a full window can end up on the principal
+        // variation, so they aren't cut off by the table. This keeps the
+        // principal variation complete.
+        boolean pvNode = beta - alpha > 1;
+
+        // Check the transposition table for a previous search of this state
+        int canonical = canonicalHashing ? state.getCanonicalSymmetry() : 0;
+        long hash = state.getSymmetricHash(canonical);
+        long entry = table.probe(hash);
+        int hashMove = -1;
+        hashProbes++;
+        if(entry != 0) {
+            hashHits++;
+            hashMove = TranspositionTable.getMove(entry);
+            if(hashMove != -1) {
+                hashMove = symmetry.invert(canonical, hashMove);
+            }
+            if(!pvNode && TranspositionTable.getDepth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.getScore(entry),
+                        depth);
+                int bound = TranspositionTable.getBound(entry);
+                if(bound == TranspositionTable.EXACT) return score;
+                if(bound == TranspositionTable.LOWER_BOUND && score >= beta) {
+                    return score;
+                }
+                if(bound == TranspositionTable.UPPER_BOUND && score <= alpha) {
+                    return score;
+                }
+            }
+        }
+
+        // Look for a forced win through continuous fours, which may be
+        // deeper than the remaining depth
+        if(threatSearch != null && depth >= NODE_VCF_MIN_DEPTH
+                && state.hasThreats(State.FOUR_MOVES, state.currentIndex)) {
+            int win = threatSearch.solve(false, NODE_VCF_DEPTH, timeNanos
+                    - (System.nanoTime() - startTime), NODE_VCF_NODES);
+            if(win != -1) {
+                // The win ends after 2n - 1 plies, scored like a five found
+                // at that depth
+                pvTable[ply][ply] = win;
+                pvLength[ply] = ply + 1;
+                return Evaluator.WIN_SCORE + depth - (2 * threatSearch
+                        .getWinningDepth() - 1);
+            }
+        }
+
+        // The selective search only applies to quiet positions, threats on
+        // the board have to be answered at full depth
+        boolean quiet = !pvNode && !hasPendingThreats(state)
+                && Math.abs(beta) < WIN_THRESHOLD;
+        int staticScore = quiet ? Evaluator.evaluateState(state, depth) : 0;
+
+        // Pass, and cut off if the opponent still can't bring the score
+        // below beta with a reduced search. The opponent must not be able
+        // to make a four, since a VCF could be hidden by the reduction.
+        if(nullMovePruning && quiet && !nullMoveActive
+                && depth >= NULL_MOVE_MIN_DEPTH && staticScore >= beta
+                && !state.hasThreats(State.FOUR_MOVES, opponentOf(state))) {
+            state.makeNullMove();
+            nullMoveActive = true;
+            int value = -negamax(state, depth - 1 - NULL_MOVE_REDUCTION,
+                    -beta, -beta + 1, ply + 1);
+            nullMoveActive = false;
+            state.undoNullMove();
+            if(value >= beta) {
+                return beta;
+            }
+        }
+
+        nonLeafCount++;
+
+        int alphaOriginal = alpha;
+        int value;
+        int best = Integer.MIN_VALUE;
+        int bestMove = -1;
+        int countBranches = 0;
+
+        int[] moves = moveBuffers[ply];
+        int count = getSortedMoves(state, radius, moves, ply);
+        if(hashMove != -1) {
+            moveToFront(moves, count, hashMove);
+        }
+
+        boolean futile = futilityPruning && quiet
+                && depth < FUTILITY_MARGINS.length
+                && staticScore + FUTILITY_MARGINS[depth] <= alpha;
+        boolean reduce = lateMoveReductions && quiet
+                && depth >= LMR_MIN_DEPTH;
+        if(futile || reduce) {
+            findQuietMoves(state, moves, count, quietMoves[ply]);
+        }
+
+        for(int i = 0; i < count; i++) {
+            int move = moves[i];
+            boolean quietMove = (futile || reduce) && quietMoves[ply][i]
+                    && move != killers[ply][0] && move != killers[ply][1];
+            // Quiet moves can't raise the score to alpha here, so the
+            // margin is all they could add
+            if(futile && quietMove && countBranches > 0) {
+                best = Math.max(best, staticScore + FUTILITY_MARGINS[depth]);
+                continue;
+            }
+            countBranches++;
+            state.makeMove(move);
+            if(countBranches == 1 || depth == 1) {
+                // Leaves are evaluated exactly, so a null window would only
+                // lead to evaluating them twice
+                value = -negamax(state, depth - 1, -beta, -alpha, ply + 1);
+            } else {
+                // Prove this move is no better than the best so far with a
+                // null window, first at a reduced depth for late quiet
+                // moves, and re-search if it is
+                int reduction = reduce && quietMove && i >= LMR_MIN_MOVES
+                        ? LMR_REDUCTION : 0;
+                value = -negamax(state, depth - 1 - reduction, -alpha - 1,
+                        -alpha, ply + 1);
+                if(reduction > 0 && value > alpha) {
+                    value = -negamax(state, depth - 1, -alpha - 1, -alpha,
+                            ply + 1);
+                }
+                if(value > alpha && value < beta) {
+                    value = -negamax(state, depth - 1, -beta, -alpha,
+                            ply + 1);
+                }
+            }
+            state.undoMove(move);
+            if(value > best) {
+                best = value;
+                bestMove = move;
+            }
+            if(best > alpha) {
+                alpha = best;
+                updatePrincipalVariation(move, ply);
+            }
+            if(best >= beta) {
+                cutoffs++;
+                if(countBranches == 1) firstMoveCutoffs++;
+                updateOrdering(state, move, depth, ply);
+                break;
+            }
+        }
+        branchesExploredSum += countBranches;
+
+        int bound = best <= alphaOriginal ? TranspositionTable.UPPER_BOUND
+                : best >= beta ? TranspositionTable.LOWER_BOUND
+                : TranspositionTable.EXACT;
+        if(bestMove != -1) {
+            // When every move failed low the best move is no better than a
+            // guess, so the previous hash move is kept instead
+            int move = bound == TranspositionTable.UPPER_BOUND ? hashMove
+                    : bestMove;
+            if(move != -1) {
+                move = symmetry.apply(canonical, move);
+            }
+            table.store(hash, depth, scoreToTable(best, depth), bound, move);
+        }
+        return best;
+    }
+
+    /**
+     * Set the principal variation at a ply to a move, followed by the
+     * principal variation found for the reply.
+     * @param move Best move at this ply, as a field index
+     * @param ply Distance from the root
+     */
+    private void updatePrincipalVariation(int move, int ply) {
+        pvTable[ply][ply] = move;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1,
+                length - (ply + 1));
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+
+    /**
+     * Record a move which caused a beta cutoff, so that it is searched
+     * earlier in other nodes.
+     * @param state State the cutoff happened in
+     * @param move Move which caused the cutoff
+     * @param depth Remaining depth at the node
+     * @param ply Distance from the root
+     */
+    private void updateOrdering(State state, int move, int depth, int ply) {
+        if(depth >= MIN_ORDERING_DEPTH) {
+            if(killers[ply][0] != move) {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = move;
+            }
+            int previous = state.getLastMove();
+            if(previous != -1) {
+                countermoves[previous] = move;
+            }
+        }
+        int[] playerHistory = history[state.currentIndex];
+        playerHistory[move] += depth * depth;
+        if(playerHistory[move] > HISTORY_LIMIT) {
+            ageHistory();
+        }
+    }
+
+    /**
+     * Halve every history score, so that recent cutoffs count for more
+     * than old ones.
+     */
+    private void ageHistory() {
+        for(int[] playerHistory : history) {
+            for(int i = 0; i < playerHistory.length; i++) {
+                playerHistory[i] /= 2;
+            }
+        }
+    }
+
+    /**
+     * Move the hash move (best move from a previous search of this state) to
+     * the front of the move list, so that it is searched first.
+     * @param moves Move buffer
+     * @param count Number of moves in the buffer
+     * @param hashMove Hash move as a field index
+     */
+    private static void moveToFront(int[] moves, int count, int hashMove) {
+        for(int i = 0; i < count; i++) {
+            if(moves[i] == hashMove) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = hashMove;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Convert a score into a value that can be stored in the transposition
+     * table. Win/loss scores are offset by the remaining depth, so they are
+     * stored relative to the current state rather than the root.
+     * @param score Score returned by the search
+     * @param depth Remaining depth at the current state
+     * @return Score to store
+     */
+    private static int scoreToTable(int score, int depth) {
+        if(score >= WIN_THRESHOLD) return score - depth;
+        if(score <= -WIN_THRESHOLD) return score + depth;
+        return score;
+    }
+
+    /**
+     * Convert a score read from the transposition table back into a score
+     * relative to the root.
+     * @param score Score read from the table
+     * @param depth Remaining depth at the current state
+     * @return Score relative to the root
+     */
+    private static int scoreFromTable(int score, int depth) {
+        if(score >= WIN_THRESHOLD) return score + depth;
+        if(score <= -WIN_THRESHOLD) return score - depth;
+        return score;
+    }
+
+    /**
+     * Remove root moves leading to the same position as an earlier move, up
+     * to a symmetry the position already has. E.g. with a single stone in
+     * the centre, only 2 of the 8 moves next to it are different.
+     * @param moves Root moves, in order
+     * @param count Number of moves
+     * @return Number of moves left, in the same order
+     */
+    int removeSymmetricMoves(int[] moves, int count) {
+        int symmetries = 0;
+        int[] found = new int[Symmetry.COUNT];
+        for(int s = 1; s < Symmetry.COUNT; s++) {
+            if(state.isSymmetric(s)) found[symmetries++] = s;
+        }
+        if(symmetries == 0) return count;
+
+        // Images of the moves kept so far are marked as seen
+        if(++seenStamp == 0) {
+            Arrays.fill(seen, 0);
+            seenStamp = 1;
+        }
+        int kept = 0;
+        for(int i = 0; i < count; i++) {
+            int move = moves[i];
+            if(seen[move] == seenStamp) continue;
+            for(int j = 0; j < symmetries; j++) {
+                seen[symmetry.apply(found[j], move)] = seenStamp;
+            }
+            moves[kept++] = move;
+        }
+        return kept;
+    }
+
+    /**
+     * Run a depth-limited negamax search on the root moves, sorting them by
+     * score. The score of the best move is stored in rootScore.
+     * @param depth Depth to search to
+     * @param alpha Alpha bound (aspiration window)
+     * @param beta Beta bound (aspiration window)
+     */
+    private void searchMoves(State state, int depth, int alpha, int beta)
+            throws InterruptedException {
+        int best = Integer.MIN_VALUE;
+        pvLength[0] = 0;
+        Arrays.fill(rootScores, 0, rootCount, Integer.MIN_VALUE);
+
+        for(int i = 0; i < rootCount; i++) {
+            int move = rootMoves[i];
+            int score;
+            state.makeMove(move);
+            if(best == Integer.MIN_VALUE || depth == 1) {
+                score = -negamax(state, depth - 1, -beta, -alpha, 1);
+            } else {
+                score = -negamax(state, depth - 1, -alpha - 1, -alpha, 1);
+                if(score > alpha && score < beta) {
+                    score = -negamax(state, depth - 1, -beta, -alpha, 1);
+                }
+            }
+            state.undoMove(move);
+            rootScores[i] = score;
+            if(score > best) best = score;
+            if(best > alpha) {
+                alpha = best;
+                updatePrincipalVariation(move, 0);
+            }
+            if(best >= beta) break;
+        }
+
+        // Sort by score, keeping the previous order of moves with equal
+        // scores
+        for(int i = 1; i < rootCount; i++) {
+            int move = rootMoves[i];
+            int score = rootScores[i];
+            int j = i - 1;
+            while(j >= 0 && rootScores[j] < score) {
+                rootMoves[j + 1] = rootMoves[j];
+                rootScores[j + 1] = rootScores[j];
+                j--;
+            }
+            rootMoves[j + 1] = move;
+            rootScores[j + 1] = score;
+        }
+        this.rootScore = best;
+    }
+
+    /**
+     * Run negamax for an increasing depth, sorting the moves after every
+     * completed search
+     * @param startDepth Start depth
+     * @param endDepth Maximum depth
+     * @param timeNanos Time limit for the search, in nanoseconds
+     * @return Best move found
+     */
+    Move iterativeDeepening(int startDepth, int endDepth, long timeNanos) {
+        this.startTime = System.nanoTime();
+        this.timeNanos = timeNanos;
+        this.totalNodeCount = 0;
+        this.nonLeafCount = 0;
+        this.branchesExploredSum = 0;
+        this.hashProbes = 0;
+        this.hashHits = 0;
+        this.cutoffs = 0;
+        this.firstMoveCutoffs = 0;
+        this.selectiveDepth = 0;
+        this.completedDepth = 0;
+
+        this.principalVariation = new int[0];
+        for(int[] slots : killers) {
+            Arrays.fill(slots, -1);
+        }
+        ageHistory();
+
+        rootCount = getSortedMoves(state, rootRadius, rootMoves, 0);
+        rootCount = removeSymmetricMoves(rootMoves, rootCount);
+        this.bestMove = rootMoves[0];
+        this.bestScore = 0;
+        if(rootCount == 1) {
+            // A single move needs no search, and has no score
+            principalVariation = new int[] {bestMove};
+            return toMove(bestMove);
+        }
+        int moveCount = state.getMoves();
+        for(int i = startDepth; i <= Math.min(endDepth, MAX_PLY - 1); i++) {
+            try {
+                // Search with a narrow window around the previous score,
+                // widening it whenever the score falls outside of it
+                int window = ASPIRATION_WINDOW;
+                int alpha = -INFINITY;
+                int beta = INFINITY;
+                if(i > startDepth && Math.abs(bestScore) < WIN_THRESHOLD) {
+                    alpha = bestScore - window;
+                    beta = bestScore + window;
+                }
+                while(true) {
+                    searchMoves(state, i, alpha, beta);
+                    if(rootScore <= alpha && alpha > -INFINITY) {
+                        window *= 2;
+                        alpha = Math.max(-INFINITY, rootScore - window);
+                    } else if(rootScore >= beta && beta < INFINITY) {
+                        window *= 2;
+                        beta = Math.min(INFINITY, rootScore + window);
+                    } else {
+                        break;
+                    }
+                }
+                completedDepth = i;
+                principalVariation = Arrays.copyOf(pvTable[0], pvLength[0]);
+                bestMove = rootMoves[0];
+                bestScore = rootScore;
+                if(main) {
+                    printSearchInfo(rootMoves[0], rootScore, i);
+                    if(iterationListener != null) iterationListener.run();
+                }
+                TimeManager manager = timeManager;
+                if(manager != null && manager.stopAfterIteration(
+                        manager.getElapsed(), rootMoves[0], rootScore)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                // The search was abandoned part way through, restore the
+                // state so it can be used for the next move
+                state.rewind(moveCount);
+                if(nullMoveActive) {
+                    state.undoNullMove();
+                    nullMoveActive = false;
+                }
+                break;
+            }
+        }
+        return toMove(bestMove);
+    }
+
+    /**
+     * Convert a move used inside the search to a Move object.
+     * @param field Field index of the move
+     * @return Move
+     */
+    private Move toMove(int field) {
+        return new Move(field / state.size, field % state.size);
+    }
+
+    /**
+     * Search for a forced win from the current state with the threat-space
+     * search, first through continuous fours (VCF), then through
+     * continuous threats (VCT).
+     * @param timeNanos Time limit, in nanoseconds
+     * @return First move of the win, or null if no win was found or the
+     * threat-space search is disabled
+     */
+    Move findForcedWin(long timeNanos) {
+        if(threatSearch == null || state.getMoves() == 0) return null;
+        long start = System.nanoTime();
+        String type = "VCF";
+        int move = threatSearch.solve(false, ThreatSpaceSearch.MAX_DEPTH,
+                timeNanos / 2, Integer.MAX_VALUE);
+        if(move == -1) {
+            type = "VCT";
+            move = threatSearch.solve(true, ThreatSpaceSearch.MAX_DEPTH,
+                    timeNanos - (System.nanoTime() - start),
+                    Integer.MAX_VALUE);
+        }
+        if(move == -1) return null;
+        Move win = toMove(move);
+        if(main) {
+            LOGGER.info("{} found in {} moves, best move: {}", type,
+                    threatSearch.getWinningDepth(), win.getAlgebraicString(
+                            state.size));
+        }
+        return win;
+    }
+
+    /**
+     * Set the time manager consulted after each iteration. The time spent
+     * is counted from the time manager's start of the move, which can be
+     * after the start of the search.
+     * @param timeManager Time manager, or null to search until the time
+     *                    limit or the end depth
+     */
+    void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    /**
+     * Set a callback for the end of every completed iteration of the main
+     * search. The callback runs on the search thread, between iterations.
+     * @param iterationListener Callback, or null to remove it
+     */
+    void setIterationListener(Runnable iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * Stop the search as soon as possible, or allow it to run again. Called
+     * from another thread.
+     * @param stopped True to stop the search
+     */
+    void setStopped(boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    /**
+     * @return State owned by this search
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * @return Number of nodes visited in the last search
+     */
+    long getNodeCount() {
+        return totalNodeCount;
+    }
+
+    /**
+     * @return Number of interior (non-leaf) nodes visited in the last search
+     */
+    long getNonLeafCount() {
+        return nonLeafCount;
+    }
+
+    /**
+     * @return Total number of branches explored at interior nodes
+     */
+    long getBranchesExploredSum() {
+        return branchesExploredSum;
+    }
+
+    /**
+     * @return Number of transposition table lookups in the last search
+     */
+    long getHashProbes() {
+        return hashProbes;
+    }
+
+    /**
+     * @return Number of transposition table hits in the last search
+     */
+    long getHashHits() {
+        return hashHits;
+    }
+
+    /**
+     * @return Number of beta cutoffs at interior nodes in the last search
+     */
+    long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * @return Number of beta cutoffs caused by the first move searched
+     */
+    long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * @return Deepest ply reached in the last search
+     */
+    int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+
+    /**
+     * @return Deepest iteration completed in the last search
+     */
+    int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return Score of the best move in the last completed iteration
+     */
+    int getScore() {
+        return bestScore;
+    }
+
+    /**
+     * Get the best line found by the last completed iteration, starting
+     * with the best move.
+     * @return List of moves, alternating between the players
+     */
+    List<Move> getPrincipalVariation() {
+        List<Move> moves = new ArrayList<>();
+        for(int field : principalVariation) {
+            moves.add(toMove(field));
+        }
+        return moves;
+    }
+
+    /**
+     * Print the result of a search. Includes the best move found, depth
+     * searched, and the evaluation score.
+     */
+    private void printSearchInfo(int bestMove, int score, int depth) {
+        String moveAlgebraic = toMove(bestMove).getAlgebraicString(state.size);
+        StringJoiner line = new StringJoiner(" ");
+        for(Move move : getPrincipalVariation()) {
+            line.add(move.getAlgebraicString(state.size));
+        }
+        LOGGER.info("Depth: {}, Evaluation: {}, Best move: {}, PV: {}", depth,
+                score, moveAlgebraic, line);
+    }
+}
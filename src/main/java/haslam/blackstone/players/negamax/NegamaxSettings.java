@@ -0,0 +1,365 @@
+package haslam.blackstone.players.negamax;
+
+/**
+ * Engine settings for the negamax player. These are independent of the game
+ * settings (board size, timing) and only affect how the search is run.
+ *
+ * @see NegamaxPlayer
+ */
+public class NegamaxSettings {
+
+    private static final int DEFAULT_HASH_SIZE_MB = 64;
+    private static final boolean DEFAULT_KEEP_HASH_BETWEEN_GAMES = true;
+    private static final int DEFAULT_THREADS = 1;
+    private static final int DEFAULT_ROOT_CANDIDATE_RADIUS = 2;
+    private static final int DEFAULT_CANDIDATE_RADIUS = 2;
+    private static final boolean DEFAULT_THREAT_SPACE_SEARCH = true;
+    // Pondering keeps a thread busy on the opponent's time, so it's only
+    // used when asked for
+    private static final boolean DEFAULT_PONDERING = false;
+    private static final int DEFAULT_TIME_CHECK_INTERVAL = 1024;
+    // Late move reductions and null move pruning cost strength in self-play
+    // at short time limits, so they're off unless enabled for testing
+    private static final boolean DEFAULT_LATE_MOVE_REDUCTIONS = false;
+    private static final boolean DEFAULT_NULL_MOVE_PRUNING = false;
+    private static final boolean DEFAULT_FUTILITY_PRUNING = true;
+    private static final boolean DEFAULT_CANONICAL_HASHING = true;
+    // No book unless one has been built
+    private static final String DEFAULT_OPENING_BOOK_FILE = null;
+    private static final String DEFAULT_SOLVED_CACHE_FILE = null;
+
+    private int hashSizeMb;
+    private boolean keepHashBetweenGames;
+    private int threads;
+    private int rootCandidateRadius;
+    private int candidateRadius;
+    private boolean threatSpaceSearch;
+    private boolean pondering;
+    private int timeCheckInterval;
+    private boolean lateMoveReductions;
+    private boolean nullMovePruning;
+    private boolean futilityPruning;
+    private boolean canonicalHashing;
+    private String openingBookFile;
+    private String solvedCacheFile;
+
+    /**
+     * Create a new NegamaxSettings instance.
+     * @param hashSizeMb Memory budget for the transposition table, in MB
+     * @param keepHashBetweenGames Whether or not to keep the transposition
+     *                             table when a new game is set up
+     * @param threads Number of search threads, including the main thread
+     * @param rootCandidateRadius Distance from existing stones within which
+     *                            moves are searched at the root
+     * @param candidateRadius Distance from existing stones within which
+     *                        moves are searched below the root
+     * @param threatSpaceSearch Whether or not to search for forced wins with
+     *                          the threat-space search
+     * @param pondering Whether or not to search on the opponent's time
+     * @param timeCheckInterval Number of nodes between checks of the clock
+     * @param lateMoveReductions Whether or not to search late quiet moves
+     *                           to a reduced depth
+     * @param nullMovePruning Whether or not to prune nodes where passing
+     *                        still fails high
+     * @param futilityPruning Whether or not to skip quiet moves near the
+     *                        leaves which can't raise the score to alpha
+     * @param canonicalHashing Whether or not to key the transposition table
+     *                         by the canonical hash, shared by symmetric
+     *                         positions
+     * @param openingBookFile Path of the opening book to play from, or null
+     *                        to search every move
+     * @param solvedCacheFile Path of the file to remember solved positions
+     *                        in, or null to only keep them for the search
+     */
+    public NegamaxSettings(int hashSizeMb, boolean keepHashBetweenGames,
+                           int threads, int rootCandidateRadius,
+                           int candidateRadius, boolean threatSpaceSearch,
+                           boolean pondering, int timeCheckInterval,
+                           boolean lateMoveReductions,
+                           boolean nullMovePruning,
+                           boolean futilityPruning,
+                           boolean canonicalHashing,
+                           String openingBookFile,
+                           String solvedCacheFile) {
+        this.hashSizeMb = hashSizeMb;
+        this.keepHashBetweenGames = keepHashBetweenGames;
+        this.threads = threads;
+        this.rootCandidateRadius = rootCandidateRadius;
+        this.candidateRadius = candidateRadius;
+        this.threatSpaceSearch = threatSpaceSearch;
+        this.pondering = pondering;
+        this.timeCheckInterval = timeCheckInterval;
+        this.lateMoveReductions = lateMoveReductions;
+        this.nullMovePruning = nullMovePruning;
+        this.futilityPruning = futilityPruning;
+        this.canonicalHashing = canonicalHashing;
+        this.openingBookFile = openingBookFile;
+        this.solvedCacheFile = solvedCacheFile;
+    }
+
+    /**
+     * Get the memory budget for the transposition table.
+     * @return Table size in megabytes
+     */
+    public int getHashSizeMb() {
+        return hashSizeMb;
+    }
+
+    /**
+     * Set the memory budget for the transposition table. Takes effect the
+     * next time a game is set up.
+     * @param hashSizeMb Table size in megabytes
+     */
+    public void setHashSizeMb(int hashSizeMb) {
+        this.hashSizeMb = hashSizeMb;
+    }
+
+    /**
+     * Check if the transposition table is kept between games. Only has an
+     * effect when the same player instance plays more than one game, e.g.
+     * in a match.
+     * @return True if the table is kept between games
+     */
+    public boolean isHashKeptBetweenGames() {
+        return keepHashBetweenGames;
+    }
+
+    /**
+     * Keep or discard the transposition table between games.
+     * @param enabled Enabled value
+     */
+    public void setHashKeptBetweenGames(boolean enabled) {
+        this.keepHashBetweenGames = enabled;
+    }
+
+    /**
+     * Get the number of threads used by the search. Every thread beyond the
+     * first runs a helper search sharing the transposition table.
+     * @return Number of search threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads used by the search. Takes effect the next
+     * time a game is set up.
+     * @param threads Number of search threads, including the main thread
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Get the distance from existing stones within which moves are
+     * searched at the root. Distance is measured along the four lines
+     * through a field, as in State.hasAdjacent().
+     * @return Radius, from 1 to 4
+     */
+    public int getRootCandidateRadius() {
+        return rootCandidateRadius;
+    }
+
+    /**
+     * Set the distance from existing stones within which moves are
+     * searched at the root. A wider radius at the root avoids missing
+     * quiet moves, at a small cost.
+     * @param radius Radius, from 1 to 4
+     */
+    public void setRootCandidateRadius(int radius) {
+        this.rootCandidateRadius = radius;
+    }
+
+    /**
+     * Get the distance from existing stones within which moves are
+     * searched below the root.
+     * @return Radius, from 1 to 4
+     */
+    public int getCandidateRadius() {
+        return candidateRadius;
+    }
+
+    /**
+     * Set the distance from existing stones within which moves are
+     * searched below the root.
+     * @param radius Radius, from 1 to 4
+     */
+    public void setCandidateRadius(int radius) {
+        this.candidateRadius = radius;
+    }
+
+    /**
+     * Check if the threat-space search is enabled. When enabled, the player
+     * looks for a forced win (VCF, then VCT) before every search, and the
+     * search looks for a VCF at interior nodes.
+     * @return True if enabled
+     */
+    public boolean isThreatSpaceSearchEnabled() {
+        return threatSpaceSearch;
+    }
+
+    /**
+     * Enable/disable the threat-space search.
+     * @param enabled Enabled value
+     */
+    public void setThreatSpaceSearchEnabled(boolean enabled) {
+        this.threatSpaceSearch = enabled;
+    }
+
+    /**
+     * Check if pondering is enabled. When enabled, the player keeps searching
+     * after returning a move, on the reply it expects from the opponent.
+     * @return True if enabled
+     */
+    public boolean isPonderingEnabled() {
+        return pondering;
+    }
+
+    /**
+     * Enable/disable pondering.
+     * @param enabled Enabled value
+     */
+    public void setPonderingEnabled(boolean enabled) {
+        this.pondering = enabled;
+    }
+
+    /**
+     * Get the number of nodes searched between checks of the clock. The
+     * search is normally stopped by a timer thread, and the clock is only
+     * checked as a backstop, so a larger interval makes nodes cheaper at
+     * the cost of a longer worst case delay in stopping.
+     * @return Number of nodes, rounded up to a power of 2 by the search
+     */
+    public int getTimeCheckInterval() {
+        return timeCheckInterval;
+    }
+
+    /**
+     * Set the number of nodes searched between checks of the clock.
+     * @param nodes Number of nodes
+     */
+    public void setTimeCheckInterval(int nodes) {
+        this.timeCheckInterval = nodes;
+    }
+
+    /**
+     * Check if late move reductions are enabled. When enabled, quiet moves
+     * late in the move order are searched to a reduced depth first, and
+     * only searched to the full depth if they turn out to be good.
+     * @return True if enabled
+     */
+    public boolean isLateMoveReductionsEnabled() {
+        return lateMoveReductions;
+    }
+
+    /**
+     * Enable/disable late move reductions.
+     * @param enabled Enabled value
+     */
+    public void setLateMoveReductionsEnabled(boolean enabled) {
+        this.lateMoveReductions = enabled;
+    }
+
+    /**
+     * Check if null move pruning is enabled. When enabled, a node with no
+     * threats on the board is cut off if passing the turn to the opponent
+     * still fails high in a reduced search.
+     * @return True if enabled
+     */
+    public boolean isNullMovePruningEnabled() {
+        return nullMovePruning;
+    }
+
+    /**
+     * Enable/disable null move pruning.
+     * @param enabled Enabled value
+     */
+    public void setNullMovePruningEnabled(boolean enabled) {
+        this.nullMovePruning = enabled;
+    }
+
+    /**
+     * Check if futility pruning is enabled. When enabled, quiet moves close
+     * to the leaves are skipped when the static evaluation is too far below
+     * alpha for a quiet move to make up the difference.
+     * @return True if enabled
+     */
+    public boolean isFutilityPruningEnabled() {
+        return futilityPruning;
+    }
+
+    /**
+     * Enable/disable futility pruning.
+     * @param enabled Enabled value
+     */
+    public void setFutilityPruningEnabled(boolean enabled) {
+        this.futilityPruning = enabled;
+    }
+
+    /**
+     * Check if canonical hashing is enabled. When enabled, the transposition
+     * table is keyed by the canonical hash of a position (the smallest hash
+     * of its rotations and reflections), so symmetric positions share their
+     * entries.
+     * @return True if enabled
+     */
+    public boolean isCanonicalHashingEnabled() {
+        return canonicalHashing;
+    }
+
+    /**
+     * Enable/disable canonical hashing.
+     * @param enabled Enabled value
+     */
+    public void setCanonicalHashingEnabled(boolean enabled) {
+        this.canonicalHashing = enabled;
+    }
+
+    /**
+     * Get the opening book file. Positions found in the book are played
+     * straight from it, without searching.
+     * @return Path of the book file, or null if there is no book
+     */
+    public String getOpeningBookFile() {
+        return openingBookFile;
+    }
+
+    /**
+     * Set the opening book file. Takes effect the next time a game is set
+     * up.
+     * @param openingBookFile Path of the book file, or null for no book
+     */
+    public void setOpeningBookFile(String openingBookFile) {
+        this.openingBookFile = openingBookFile;
+    }
+
+    /**
+     * Get the solved position cache file. Positions proven won or lost are
+     * stored in the file, and played from it without searching when they
+     * come up again, including in later runs.
+     * @return Path of the cache file, or null if there is no cache
+     */
+    public String getSolvedCacheFile() {
+        return solvedCacheFile;
+    }
+
+    /**
+     * Set the solved position cache file, created if it doesn't exist.
+     * Takes effect the next time a game is set up.
+     * @param solvedCacheFile Path of the cache file, or null for no cache
+     */
+    public void setSolvedCacheFile(String solvedCacheFile) {
+        this.solvedCacheFile = solvedCacheFile;
+    }
+
+    public static NegamaxSettings withDefaults() {
+        return new NegamaxSettings(DEFAULT_HASH_SIZE_MB,
+                DEFAULT_KEEP_HASH_BETWEEN_GAMES, DEFAULT_THREADS,
+                DEFAULT_ROOT_CANDIDATE_RADIUS, DEFAULT_CANDIDATE_RADIUS,
+                DEFAULT_THREAT_SPACE_SEARCH, DEFAULT_PONDERING,
+                DEFAULT_TIME_CHECK_INTERVAL, DEFAULT_LATE_MOVE_REDUCTIONS,
+                DEFAULT_NULL_MOVE_PRUNING, DEFAULT_FUTILITY_PRUNING,
+                DEFAULT_CANONICAL_HASHING, DEFAULT_OPENING_BOOK_FILE,
+                DEFAULT_SOLVED_CACHE_FILE);
+    }
+}
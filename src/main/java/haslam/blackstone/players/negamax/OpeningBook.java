@@ -0,0 +1,137 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opening book, read straight from a memory-mapped file. Nothing is loaded
+ * onto the heap: opening the book only maps the file, and the operating
+ * system pages in the parts a probe touches, so even a large book opens
+ * instantly and a probe costs a binary search over the mapped entries.
+ *
+ * Positions are keyed by their canonical hash, the smallest Zobrist hash
+ * of the position under the 8 symmetries of the board, so one entry covers
+ * every rotation and reflection of a position. Moves are stored as seen in
+ * the canonical image, and mapped back onto the board when probed.
+ *
+ * File layout (big-endian):
+ *
+ * Header: magic (int), version (int), board size (int), reserved (int)
+ * Entries: key (long), move (int), weight (int)
+ *
+ * Entries are sorted by key, and moves of the same position by weight, the
+ * best first.
+ *
+ * @see OpeningBookBuilder
+ */
+final class OpeningBook {
+
+    static final int MAGIC = 0x42534F42;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int entries;
+    private final Symmetry symmetry;
+
+    private OpeningBook(ByteBuffer buffer, int size, int entries) {
+        this.buffer = buffer;
+        this.size = size;
+        this.entries = entries;
+        this.symmetry = Symmetry.forSize(size);
+    }
+
+    /**
+     * Open a book file. The file is mapped rather than read, and can be
+     * probed from several threads at once.
+     * @param file Book file, as written by OpeningBookBuilder
+     * @return Opening book
+     * @throws IOException If the file can't be mapped or isn't a book
+     */
+    static OpeningBook open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            if(length < HEADER_BYTES || length > Integer.MAX_VALUE
+                    || (length - HEADER_BYTES) % ENTRY_BYTES != 0) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    length);
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            return new OpeningBook(buffer, buffer.getInt(8), (int) ((length
+                    - HEADER_BYTES) / ENTRY_BYTES));
+        }
+    }
+
+    /**
+     * Look up the best book move in a position.
+     * @param state State to look up
+     * @return Book move, or null if the position isn't in the book
+     */
+    Move probe(State state) {
+        if(state.size != size || entries == 0) return null;
+        int canonical = state.getCanonicalSymmetry();
+        long key = state.getSymmetricHash(canonical);
+
+        // Moves which aren't empty on the board can only come from a hash
+        // collision, skip them
+        for(int i = findFirst(key); i < entries && getKey(i) == key; i++) {
+            int move = buffer.getInt(HEADER_BYTES + i * ENTRY_BYTES + 8);
+            if(move < 0 || move >= size * size) continue;
+            int field = symmetry.invert(canonical, move);
+            if(state.getIndex(field) == 0) {
+                return new Move(field / size, field % size);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Binary search for the first entry with a key.
+     * @param key Key to look for
+     * @return Index of the first entry with a key not less than the given
+     * key, or the number of entries if there is none
+     */
+    private int findFirst(long key) {
+        int low = 0;
+        int high = entries;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(getKey(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long getKey(int entry) {
+        return buffer.getLong(HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    /**
+     * @return Size of the board the book is for
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Number of entries (position and move pairs) in the book
+     */
+    int getEntryCount() {
+        return entries;
+    }
+}
@@ -0,0 +1,204 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an opening book from archived games. Every move made in the
+ * first few plies of a game scores for its position: 2 if the player who
+ * made it went on to win, 1 for a draw or an unfinished game, and nothing
+ * for a loss. Moves with enough points across all the games make it into
+ * the book, the highest scoring move of a position being the one played.
+ *
+ * Archives are read by GameArchive, and directories are searched for
+ * archives.
+ *
+ * Usage: OpeningBookBuilder [-size n] [-plies n] [-min-weight n]
+ *        book-file archive...
+ * e.g. java -jar blackstone.jar book -plies 10 book.bin games/
+ *
+ * @see OpeningBook
+ */
+public class OpeningBookBuilder {
+
+    private static final int DEFAULT_SIZE = 15;
+    private static final int DEFAULT_PLIES = 12;
+    private static final int DEFAULT_MIN_WEIGHT = 2;
+
+    private final int size;
+    private final int plies;
+    private final Symmetry symmetry;
+    // Points scored by every move, by the canonical hash of the position
+    // and the move as seen in the canonical image
+    private final Map<Long, Map<Integer, Integer>> weights = new HashMap<>();
+    private int games;
+
+    /**
+     * Create a new builder.
+     * @param size Size of the board the book is for, games on other board
+     *             sizes are skipped
+     * @param plies Number of moves of each game to add to the book
+     */
+    OpeningBookBuilder(int size, int plies) {
+        this.size = size;
+        this.plies = plies;
+        this.symmetry = Symmetry.forSize(size);
+    }
+
+    /**
+     * Add the opening of a game. Moves after the end of the game, or after
+     * an illegal move, are ignored.
+     * @param moves Moves of the game, in order
+     */
+    void addGame(List<Move> moves) {
+        // Replay the game first to find the result
+        State state = new State(size);
+        int played = 0;
+        int result = 0;
+        for(Move move : moves) {
+            if(!isLegal(state, move)) break;
+            state.makeMove(move);
+            played++;
+            result = state.terminal();
+            if(result != 0) break;
+        }
+        if(played == 0) return;
+        games++;
+
+        state = new State(size);
+        for(int i = 0; i < Math.min(plies, played); i++) {
+            Move move = moves.get(i);
+            int field = move.row * size + move.col;
+            int canonical = state.getCanonicalSymmetry();
+            int mover = i % 2 == 0 ? 1 : 2;
+            int weight = result == 0 || result == 3 ? 1 : result == mover
+                    ? 2 : 0;
+            weights.computeIfAbsent(state.getSymmetricHash(canonical),
+                    key -> new HashMap<>())
+                    .merge(symmetry.apply(canonical, field), weight,
+                            Integer::sum);
+            state.makeMove(field);
+        }
+    }
+
+    private boolean isLegal(State state, Move move) {
+        return move.row >= 0 && move.row < size && move.col >= 0
+                && move.col < size && state.getIndex(move.row, move.col)
+                == 0;
+    }
+
+    /**
+     * Add every game found in an archive file, or in the archive files in a
+     * directory.
+     * @param path Archive file or directory
+     * @throws IOException If an archive can't be read
+     */
+    void addArchive(Path path) throws IOException {
+        for(Path file : GameArchive.listFiles(path)) {
+            for(List<Move> game : GameArchive.readGames(file, size)) {
+                addGame(game);
+            }
+        }
+    }
+
+    /**
+     * Write the book.
+     * @param file File to write to, replaced if it exists
+     * @param minWeight Points a move needs to make it into the book
+     * @return Number of entries written
+     * @throws IOException If the file can't be written
+     */
+    int write(Path file, int minWeight) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        for(Map.Entry<Long, Map<Integer, Integer>> position :
+                weights.entrySet()) {
+            for(Map.Entry<Integer, Integer> move :
+                    position.getValue().entrySet()) {
+                if(move.getValue() >= minWeight) {
+                    entries.add(new long[] {position.getKey(), move.getKey(),
+                            move.getValue()});
+                }
+            }
+        }
+        entries.sort(Comparator.<long[]>comparingLong(entry -> entry[0])
+                .thenComparing(entry -> -entry[2])
+                .thenComparingLong(entry -> entry[1]));
+
+        try(DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(size);
+            out.writeInt(0);
+            for(long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeInt((int) entry[2]);
+            }
+        }
+        return entries.size();
+    }
+
+    /**
+     * @return Number of games added
+     */
+    int getGames() {
+        return games;
+    }
+
+    /**
+     * @return Number of distinct positions added
+     */
+    int getPositions() {
+        return weights.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = DEFAULT_SIZE;
+        int plies = DEFAULT_PLIES;
+        int minWeight = DEFAULT_MIN_WEIGHT;
+        int i = 0;
+        for(; i < args.length && args[i].startsWith("-"); i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch(args[i]) {
+                case "-size":
+                    size = value;
+                    break;
+                case "-plies":
+                    plies = value;
+                    break;
+                case "-min-weight":
+                    minWeight = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: "
+                            + args[i]);
+            }
+        }
+        if(args.length - i < 2) {
+            System.out.println("Usage: book [-size n] [-plies n] "
+                    + "[-min-weight n] book-file archive...");
+            return;
+        }
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(size, plies);
+        for(int archive = i + 1; archive < args.length; archive++) {
+            builder.addArchive(Paths.get(args[archive]));
+        }
+        int entries = builder.write(Paths.get(args[i]), minWeight);
+        System.out.printf("Games: %d%n", builder.getGames());
+        System.out.printf("Positions: %d%n", builder.getPositions());
+        System.out.printf("Book entries: %d%n", entries);
+    }
+}
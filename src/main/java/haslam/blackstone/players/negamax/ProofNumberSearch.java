@@ -0,0 +1,422 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Depth-first proof-number (df-pn) solver, used to decide won and lost
+ * positions without a heuristic evaluation, e.g. for marking the positions
+ * of archived games as solved (see ArchiveSolver).
+ *
+ * Every node has a proof number, the least number of leaves which have to
+ * be proven to prove the attacker wins, and a disproof number, the least
+ * number which have to be disproven to show the attacker doesn't. The
+ * search always expands the most proving node, the node which changes the
+ * numbers at the root the most, and depth-first thresholds on the numbers
+ * let it do so without keeping the tree in memory. The numbers of searched
+ * nodes are kept in a ProofNumberTable, which is garbage collected when it
+ * fills up.
+ *
+ * The attacker only plays threats: moves which make a four or a three, or
+ * which block a three of the defender. A four of the defender has to be
+ * blocked. The defender plays every move on the board, unless they have to
+ * block a four, or answer a three. A three is answered on one of the
+ * defensive squares of the three patterns in ThreatUtils, or by a four of
+ * the defender's own, so a defender's VCF is part of every proof. Any other
+ * answer lets the attacker make an open four. A proof is therefore a forced
+ * win as far as those patterns cover every three, while a disproof only
+ * means the attacker has no win through threats, and is reported as
+ * unknown.
+ *
+ * @see ProofNumberTable
+ */
+public class ProofNumberSearch {
+
+    // Results of a search, from the perspective of the player to move
+    public static final int UNKNOWN = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+
+    // Proof and disproof numbers of a solved node, sums saturate at this
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    // How often the time limit is checked, in nodes (a power of 2)
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    // Keys for each attacker, so that results for both don't mix
+    private static final long[] ATTACKER_KEYS = {0, 0x1D8E4E27C47D124FL,
+            0x6A09E667F3BCC909L};
+
+    private final State state;
+    private final ProofNumberTable table;
+    private final int fieldCount;
+
+    // Moves, and the numbers of the children, at each ply
+    private final int[][] moveBuffers;
+    private final int[][] childProofs;
+    private final int[][] childDisproofs;
+    private final int[] evaluateBuffer;
+    private final int[] threatBuffer;
+    private final int[] seen;
+    private int seenStamp;
+
+    private int attacker;
+    private long nodeLimit;
+    private long nodes;
+    private long startTime;
+    private long timeNanos;
+    private boolean aborted;
+
+    // Numbers of the last node searched by mid()
+    private int lastProof;
+    private int lastDisproof;
+    private int lastWork;
+
+    private List<Move> line;
+
+    /**
+     * Create a new proof-number search.
+     * @param state State to solve. The state is restored after every search.
+     * @param tableSizeMb Memory budget for the node table, in megabytes
+     */
+    public ProofNumberSearch(State state, int tableSizeMb) {
+        this.state = state;
+        this.table = new ProofNumberTable(tableSizeMb);
+        this.fieldCount = state.size * state.size;
+        this.moveBuffers = new int[fieldCount][fieldCount];
+        this.childProofs = new int[fieldCount][fieldCount];
+        this.childDisproofs = new int[fieldCount][fieldCount];
+        this.evaluateBuffer = new int[fieldCount];
+        this.threatBuffer = new int[8 * fieldCount];
+        this.seen = new int[fieldCount];
+        this.line = Collections.emptyList();
+    }
+
+    /**
+     * Solve the current state. The budget is split between proving a win
+     * for the player to move and proving a win for the opponent.
+     * @param nodeLimit Maximum number of nodes to search
+     * @param timeNanos Time limit, in nanoseconds
+     * @return WIN or LOSS for the player to move if proven, otherwise
+     * UNKNOWN
+     */
+    public int solve(long nodeLimit, long timeNanos) {
+        this.line = Collections.emptyList();
+        this.nodes = 0;
+        if(state.terminal() != 0) return UNKNOWN;
+
+        long start = System.nanoTime();
+        int player = state.currentIndex;
+        if(prove(player, nodeLimit / 2, timeNanos / 2)) return WIN;
+        long remainingTime = timeNanos - (System.nanoTime() - start);
+        if(prove(player == 1 ? 2 : 1, nodeLimit - nodes, remainingTime)) {
+            return LOSS;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return Moves of the last proven win, starting from the current state.
+     * The winning side plays the quickest win and the losing side the
+     * longest defence found in the table, and the line may end early if
+     * the rest of the proof was garbage collected.
+     */
+    public List<Move> getWinningLine() {
+        return line;
+    }
+
+    /**
+     * @return Number of nodes searched by the last call to solve()
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Clear the node table.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Try to prove a win for one of the players.
+     * @param attacker Player index to prove a win for
+     * @param limit Maximum number of nodes to search
+     * @param time Time limit, in nanoseconds
+     * @return True if proven
+     */
+    private boolean prove(int attacker, long limit, long time) {
+        this.attacker = attacker;
+        this.nodeLimit = nodes + limit;
+        this.startTime = System.nanoTime();
+        this.timeNanos = time;
+        this.aborted = false;
+
+        if(!evaluate()) {
+            mid(0, INFINITY, INFINITY);
+        }
+        if(lastProof != 0) return false;
+        this.line = extractLine();
+        return true;
+    }
+
+    /**
+     * Search a node until its proof number reaches the proof threshold, or
+     * its disproof number reaches the disproof threshold. The numbers of
+     * the node are stored in the table, and left in lastProof/lastDisproof.
+     * @param ply Distance from the root
+     * @param proofThreshold Proof number threshold
+     * @param disproofThreshold Disproof number threshold
+     */
+    private void mid(int ply, int proofThreshold, int disproofThreshold) {
+        nodes++;
+        if(nodes >= nodeLimit || ((nodes & (TIME_CHECK_INTERVAL - 1)) == 0
+                && System.nanoTime() - startTime > timeNanos)) {
+            aborted = true;
+        }
+
+        boolean or = state.currentIndex == attacker;
+        int[] moves = moveBuffers[ply];
+        int[] proofs = childProofs[ply];
+        int[] disproofs = childDisproofs[ply];
+        int count = generateMoves(moves);
+        for(int i = 0; i < count; i++) {
+            state.makeMove(moves[i]);
+            evaluate();
+            state.undoMove(moves[i]);
+            proofs[i] = lastProof;
+            disproofs[i] = lastDisproof;
+        }
+
+        int proof;
+        int disproof;
+        int work = 1;
+        while(true) {
+            // An OR node needs one child proven and all disproven, an AND
+            // node the other way round
+            int best = 0;
+            int second = INFINITY;
+            if(or) {
+                proof = INFINITY;
+                disproof = 0;
+                for(int i = 0; i < count; i++) {
+                    disproof = add(disproof, disproofs[i]);
+                    if(proofs[i] < proof) {
+                        second = proof;
+                        proof = proofs[i];
+                        best = i;
+                    } else if(proofs[i] < second) {
+                        second = proofs[i];
+                    }
+                }
+            } else {
+                proof = 0;
+                disproof = INFINITY;
+                for(int i = 0; i < count; i++) {
+                    proof = add(proof, proofs[i]);
+                    if(disproofs[i] < disproof) {
+                        second = disproof;
+                        disproof = disproofs[i];
+                        best = i;
+                    } else if(disproofs[i] < second) {
+                        second = disproofs[i];
+                    }
+                }
+            }
+            if(proof >= proofThreshold || disproof >= disproofThreshold
+                    || aborted) {
+                break;
+            }
+
+            // Search the most proving child until it is no longer the best
+            int childProofThreshold;
+            int childDisproofThreshold;
+            if(or) {
+                childProofThreshold = Math.min(proofThreshold, add(second,
+                        1));
+                childDisproofThreshold = add(disproofThreshold - disproof,
+                        disproofs[best]);
+            } else {
+                childProofThreshold = add(proofThreshold - proof,
+                        proofs[best]);
+                childDisproofThreshold = Math.min(disproofThreshold, add(
+                        second, 1));
+            }
+            state.makeMove(moves[best]);
+            mid(ply + 1, childProofThreshold, childDisproofThreshold);
+            state.undoMove(moves[best]);
+            proofs[best] = lastProof;
+            disproofs[best] = lastDisproof;
+            work = add(work, lastWork);
+        }
+
+        table.store(key(), proof, disproof, work);
+        lastProof = proof;
+        lastDisproof = disproof;
+        lastWork = work;
+    }
+
+    /**
+     * Set lastProof/lastDisproof to the numbers of the current state, from
+     * the table if it has been searched, otherwise from the position.
+     * Solved states get 0 and INFINITY. Unsolved states start with 1, and
+     * the number of moves for the other number, so that wide nodes are
+     * harder to prove (or disprove) than narrow ones.
+     * @return True if the state is solved
+     */
+    private boolean evaluate() {
+        int slot = table.find(key());
+        if(slot != -1) {
+            lastProof = table.getProof(slot);
+            lastDisproof = table.getDisproof(slot);
+            return lastProof == 0 || lastDisproof == 0;
+        }
+
+        int player = state.currentIndex;
+        int opponent = player == 1 ? 2 : 1;
+        boolean or = player == attacker;
+        boolean attackerWins;
+        if(state.hasThreats(State.FOUR_SQUARES, player)) {
+            // Five in one move
+            attackerWins = or;
+        } else if(state.getMoves() == fieldCount) {
+            // A draw is a loss for the attacker
+            attackerWins = false;
+        } else if(collect(State.FOUR_SQUARES, opponent, evaluateBuffer, 0)
+                > 1) {
+            // Two fives can't both be blocked
+            attackerWins = !or;
+        } else {
+            int count = generateMoves(evaluateBuffer);
+            if(count > 0) {
+                lastProof = or ? 1 : count;
+                lastDisproof = or ? count : 1;
+                return false;
+            }
+            // The attacker has no threats left
+            attackerWins = false;
+        }
+        lastProof = attackerWins ? 0 : INFINITY;
+        lastDisproof = attackerWins ? INFINITY : 0;
+        return true;
+    }
+
+    /**
+     * Generate the moves of the current state, which must not be solved.
+     * @param moves Buffer for the moves, as field indexes
+     * @return Number of moves
+     */
+    private int generateMoves(int[] moves) {
+        int player = state.currentIndex;
+        int opponent = player == 1 ? 2 : 1;
+
+        // A four has to be blocked
+        if(state.hasThreats(State.FOUR_SQUARES, opponent)) {
+            return collect(State.FOUR_SQUARES, opponent, moves, 0);
+        }
+        if(player == attacker) {
+            int count = collect(State.FOUR_MOVES, player, moves, 0);
+            count = collect(State.THREE_MOVES, player, moves, count);
+            return collect(State.THREE_SQUARES, opponent, moves, count);
+        }
+        if(state.hasThreats(State.THREE_SQUARES, opponent)) {
+            // Block the three, or counter with a four
+            int count = collect(State.THREE_SQUARES, opponent, moves, 0);
+            return collect(State.FOUR_MOVES, player, moves, count);
+        }
+        int count = 0;
+        for(int field = 0; field < fieldCount; field++) {
+            if(state.getIndex(field) == 0) moves[count++] = field;
+        }
+        return count;
+    }
+
+    /**
+     * Add the distinct threat squares of a type belonging to a player to a
+     * move buffer.
+     * @param type Type of threat square, as defined in State
+     * @param index Player index
+     * @param moves Move buffer
+     * @param count Number of moves already in the buffer
+     * @return Number of moves in the buffer
+     */
+    private int collect(int type, int index, int[] moves, int count) {
+        if(count == 0 && ++seenStamp == 0) {
+            Arrays.fill(seen, 0);
+            seenStamp = 1;
+        }
+        if(!state.hasThreats(type, index)) return count;
+        int found = state.getThreats(type, index, threatBuffer, 0);
+        for(int i = 0; i < found; i++) {
+            int field = threatBuffer[i];
+            if(seen[field] != seenStamp) {
+                seen[field] = seenStamp;
+                moves[count++] = field;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Follow a proof through the table, from the current state.
+     * @return Moves of the proof
+     */
+    private List<Move> extractLine() {
+        List<Move> moves = new ArrayList<>();
+        int[] buffer = new int[fieldCount];
+        int start = state.getMoves();
+        while(true) {
+            int player = state.currentIndex;
+            boolean or = player == attacker;
+            if(or && state.hasThreats(State.FOUR_SQUARES, player)) {
+                // Finish with the five
+                collect(State.FOUR_SQUARES, player, buffer, 0);
+                moves.add(toMove(buffer[0]));
+                break;
+            }
+            if(state.getMoves() == fieldCount) break;
+            int count = generateMoves(buffer);
+
+            // The attacker plays the quickest proven move, the defender the
+            // proven move with the most work (the longest defence)
+            int next = -1;
+            int nextWork = 0;
+            for(int i = 0; i < count; i++) {
+                state.makeMove(buffer[i]);
+                boolean solved = evaluate();
+                int slot = table.find(key());
+                int work = slot != -1 ? table.getWork(slot) : 0;
+                state.undoMove(buffer[i]);
+                if(!solved || lastProof != 0) continue;
+                if(next == -1 || (or ? work < nextWork : work > nextWork)) {
+                    next = buffer[i];
+                    nextWork = work;
+                }
+            }
+            if(next == -1) break;
+            moves.add(toMove(next));
+            state.makeMove(next);
+        }
+        state.rewind(start);
+        return moves;
+    }
+
+    private Move toMove(int field) {
+        return new Move(field / state.size, field % state.size);
+    }
+
+    private long key() {
+        return state.getZobristHash() ^ ATTACKER_KEYS[attacker];
+    }
+
+    /**
+     * Add two proof or disproof numbers, saturating at INFINITY.
+     */
+    private static int add(int a, int b) {
+        return (int) Math.min(INFINITY, Math.max(0, (long) a + b));
+    }
+}
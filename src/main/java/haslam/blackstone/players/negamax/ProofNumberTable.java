@@ -0,0 +1,158 @@
+package haslam.blackstone.players.negamax;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size table of proof and disproof numbers for the proof-number
+ * search, mapping a key to the numbers of a node and the work spent on it
+ * (the number of nodes searched below it).
+ *
+ * Entries are grouped into buckets of four. A new entry replaces the entry
+ * in its bucket with the least work, since that entry is the cheapest to
+ * search again.
+ *
+ * Once the table is three quarters full it is garbage collected: entries
+ * are removed in increasing order of work until half of the table is free.
+ * Long searches keep the expensive nodes near the root, and the cheap
+ * nodes near the leaves are discarded and searched again when needed.
+ */
+class ProofNumberTable {
+
+    // Bytes used by a single entry (key + proof + disproof + work)
+    private static final int ENTRY_BYTES = 20;
+    private static final int BUCKET_SIZE = 4;
+
+    private final long[] keys;
+    private final int[] proofs;
+    private final int[] disproofs;
+    // Work of each entry, 0 if the slot is empty
+    private final int[] work;
+    private final int bucketMask;
+    private final int gcLimit;
+    private int used;
+    private int collections;
+
+    /**
+     * Create a new proof-number table.
+     * @param sizeMb Memory budget in megabytes. The number of entries is
+     *               rounded down to a power of two that fits in the budget.
+     */
+    ProofNumberTable(int sizeMb) {
+        long budgetEntries = Math.max(BUCKET_SIZE, ((long) sizeMb << 20)
+                / ENTRY_BYTES);
+        int entries = (int) Long.highestOneBit(Math.min(budgetEntries,
+                1L << 28));
+        this.keys = new long[entries];
+        this.proofs = new int[entries];
+        this.disproofs = new int[entries];
+        this.work = new int[entries];
+        this.bucketMask = entries / BUCKET_SIZE - 1;
+        this.gcLimit = entries / 4 * 3;
+    }
+
+    /**
+     * Look up a node in the table.
+     * @param key Key of the node
+     * @return Slot holding the node, or -1 if the node is not stored
+     */
+    int find(long key) {
+        int index = bucketIndex(key);
+        for(int slot = index; slot < index + BUCKET_SIZE; slot++) {
+            if(work[slot] != 0 && keys[slot] == key) return slot;
+        }
+        return -1;
+    }
+
+    int getProof(int slot) {
+        return proofs[slot];
+    }
+
+    int getDisproof(int slot) {
+        return disproofs[slot];
+    }
+
+    int getWork(int slot) {
+        return work[slot];
+    }
+
+    /**
+     * Store the numbers of a node in the table, replacing any previous
+     * entry for the node.
+     * @param key Key of the node
+     * @param proof Proof number
+     * @param disproof Disproof number
+     * @param nodeWork Nodes searched below the node, at least 1
+     */
+    void store(long key, int proof, int disproof, int nodeWork) {
+        int index = bucketIndex(key);
+        int replace = index;
+        for(int slot = index; slot < index + BUCKET_SIZE; slot++) {
+            if(work[slot] != 0 && keys[slot] == key) {
+                replace = slot;
+                break;
+            }
+            if(work[slot] < work[replace]) replace = slot;
+        }
+        if(work[replace] == 0) used++;
+        keys[replace] = key;
+        proofs[replace] = proof;
+        disproofs[replace] = disproof;
+        work[replace] = Math.max(1, nodeWork);
+
+        if(used > gcLimit) collect();
+    }
+
+    /**
+     * Remove the entries with the least work, until at least half of the
+     * table is free. Entries are grouped by the magnitude of their work
+     * (log 2), and whole groups are removed at a time.
+     */
+    private void collect() {
+        int[] counts = new int[32];
+        for(int nodeWork : work) {
+            if(nodeWork != 0) counts[31 - Integer.numberOfLeadingZeros(
+                    nodeWork)]++;
+        }
+        int target = used - work.length / 2;
+        int removed = 0;
+        int threshold = 0;
+        while(threshold < 31 && removed < target) {
+            removed += counts[threshold++];
+        }
+        // Remove every entry with work below 2^threshold
+        long limit = 1L << threshold;
+        for(int slot = 0; slot < work.length; slot++) {
+            if(work[slot] != 0 && work[slot] < limit) {
+                work[slot] = 0;
+                used--;
+            }
+        }
+        collections++;
+    }
+
+    /**
+     * @return Number of entries in the table
+     */
+    int getUsed() {
+        return used;
+    }
+
+    /**
+     * @return Number of garbage collections run since the table was created
+     */
+    int getCollections() {
+        return collections;
+    }
+
+    /**
+     * Remove every entry from the table.
+     */
+    void clear() {
+        Arrays.fill(work, 0);
+        used = 0;
+    }
+
+    private int bucketIndex(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * BUCKET_SIZE;
+    }
+}
@@ -0,0 +1,375 @@
+package haslam.blackstone.players.negamax;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of solved positions, kept on disk so that positions proven won or
+ * lost are remembered between games and between runs. A position found in
+ * the cache is played without searching.
+ *
+ * The file is an append-only log of entries, memory-mapped for reading and
+ * writing. Entries are only ever added, and a newer entry for a position
+ * replaces an older one, so a file cut short (e.g. by the machine going
+ * down) is still valid up to the last complete entry. The mapping is grown
+ * by doubling as entries are added. Entries are found through an index on
+ * the heap, built when the file is opened, which only holds the position
+ * of every entry in the file.
+ *
+ * Positions are keyed by their canonical hash, like the opening book, so
+ * an entry covers every rotation and reflection of a position. The header
+ * holds a fingerprint of the Zobrist keys, and a file written with other
+ * keys is rejected rather than read as unrelated positions.
+ *
+ * Entries are written on a background thread, so storing a result doesn't
+ * hold up the search. The file is locked while open, and players in the
+ * same process using the same file share one instance.
+ *
+ * File layout (big-endian):
+ *
+ * Header: magic (int), version (int), board size (int), entry count (int),
+ *         Zobrist key fingerprint (long), reserved (long)
+ * Entries: key (long), move (int), score (int)
+ *
+ * @see OpeningBook
+ */
+final class SolvedPositionCache {
+
+    private static final Logger LOGGER =
+            LogManager.getLogger(SolvedPositionCache.class.getName());
+
+    static final int MAGIC = 0x42535043;
+    // Version 1 files could hold false wins from the threat-space search,
+    // and had no key fingerprint
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final int ENTRY_BYTES = 16;
+
+    // Entries mapped when a new file is created
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Caches in use, by file, shared by every player using the same file
+    private static final Map<Path, SolvedPositionCache> OPEN = new HashMap<>();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final int size;
+    private final Symmetry symmetry;
+    private final ExecutorService writer;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int entries;
+    // Open addressing index of the entries, holding entry number + 1 (0 for
+    // an empty slot). Kept at most half full.
+    private int[] slots;
+    private int users;
+
+    private SolvedPositionCache(Path file, FileChannel channel, FileLock lock,
+                                int size, int entries) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.size = size;
+        this.symmetry = Symmetry.forSize(size);
+        this.entries = entries;
+        this.capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(
+                Math.max(1, entries)) << 1);
+        this.buffer = map(capacity);
+        this.slots = new int[capacity << 1];
+        for(int i = 0; i < entries; i++) {
+            index(i);
+        }
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "SolvedCacheWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open a cache file, creating it if it doesn't exist. Every call must
+     * be matched by a call to close().
+     * @param file Cache file
+     * @param size Size of the board the cache is for
+     * @return Solved position cache
+     * @throws IOException If the file can't be mapped, isn't a cache for
+     * this board size, or is in use by another process
+     */
+    static SolvedPositionCache open(Path file, int size) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized(OPEN) {
+            SolvedPositionCache cache = OPEN.get(key);
+            if(cache == null) {
+                cache = create(key, size);
+                OPEN.put(key, cache);
+            } else if(cache.size != size) {
+                throw new IOException("Solved position cache is for size "
+                        + cache.size + ": " + file);
+            }
+            cache.users++;
+            return cache;
+        }
+    }
+
+    private static SolvedPositionCache create(Path file, int size)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            FileLock lock = channel.tryLock();
+            if(lock == null) {
+                throw new IOException("Solved position cache in use: " + file);
+            }
+            long length = channel.size();
+            int entries = 0;
+            if(length > 0) {
+                MappedByteBuffer header = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, Math.min(length,
+                                HEADER_BYTES));
+                if(length < HEADER_BYTES || header.getInt(0) != MAGIC
+                        || header.getInt(4) != VERSION) {
+                    throw new IOException("Not a solved position cache: "
+                            + file);
+                }
+                if(header.getInt(8) != size) {
+                    throw new IOException("Solved position cache is for size "
+                            + header.getInt(8) + ": " + file);
+                }
+                if(header.getLong(16) != State.getZobristFingerprint(size)) {
+                    throw new IOException("Solved position cache has other "
+                            + "Zobrist keys: " + file);
+                }
+                // Only complete entries count, in case the count was written
+                // before the entries reached the disk
+                entries = (int) Math.min(Math.max(0, header.getInt(12)),
+                        (length - HEADER_BYTES) / ENTRY_BYTES);
+            }
+            SolvedPositionCache cache = new SolvedPositionCache(file, channel,
+                    lock, size, entries);
+            cache.buffer.putInt(0, MAGIC);
+            cache.buffer.putInt(4, VERSION);
+            cache.buffer.putInt(8, size);
+            cache.buffer.putInt(12, entries);
+            cache.buffer.putLong(16, State.getZobristFingerprint(size));
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map the header and a number of entries, growing the file if needed.
+     * @param capacity Number of entries to map
+     * @return Mapped buffer
+     * @throws IOException If the file can't be mapped
+     */
+    private MappedByteBuffer map(int capacity) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES
+                + (long) capacity * ENTRY_BYTES);
+    }
+
+    /**
+     * Look up the current position.
+     * @param state State to look up
+     * @return Packed entry, holding the move to play mapped onto the board
+     * and the score it was proven with, or 0 if the position isn't cached
+     */
+    synchronized long probe(State state) {
+        if(state.size != size) return 0;
+        int canonical = state.getCanonicalSymmetry();
+        int entry = find(state.getSymmetricHash(canonical));
+        if(entry < 0) return 0;
+        int move = getEntryMove(entry);
+        if(move < 0 || move >= size * size) return 0;
+        int field = symmetry.invert(canonical, move);
+        // An occupied move can only come from a hash collision
+        if(state.getIndex(field) != 0) return 0;
+        return pack(field, getEntryScore(entry));
+    }
+
+    /**
+     * Store a solved position. The entry is written on the writer thread,
+     * so it might not be found by a probe straight away.
+     * @param state Solved state
+     * @param move Field index of the move to play
+     * @param score Score the move was proven with, a win or loss score
+     */
+    void store(State state, int move, int score) {
+        if(state.size != size) return;
+        int canonical = state.getCanonicalSymmetry();
+        long key = state.getSymmetricHash(canonical);
+        int canonicalMove = symmetry.apply(canonical, move);
+        writer.execute(() -> {
+            try {
+                append(key, canonicalMove, score);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write to solved position cache: {}",
+                        file, e);
+            }
+        });
+    }
+
+    /**
+     * Add an entry to the end of the file, unless it's already there. Runs
+     * on the writer thread.
+     */
+    private synchronized void append(long key, int move, int score)
+            throws IOException {
+        int existing = find(key);
+        if(existing >= 0 && getEntryMove(existing) == move
+                && getEntryScore(existing) == score) {
+            return;
+        }
+        if(entries == capacity) {
+            grow();
+        }
+        int offset = HEADER_BYTES + entries * ENTRY_BYTES;
+        buffer.putLong(offset, key);
+        buffer.putInt(offset + 8, move);
+        buffer.putInt(offset + 12, score);
+        index(entries++);
+        buffer.putInt(12, entries);
+    }
+
+    /**
+     * Double the number of entries mapped, and rebuild the index.
+     */
+    private void grow() throws IOException {
+        this.capacity <<= 1;
+        this.buffer = map(capacity);
+        this.slots = new int[capacity << 1];
+        for(int i = 0; i < entries; i++) {
+            index(i);
+        }
+    }
+
+    /**
+     * Add an entry to the index, replacing an older entry with the same key.
+     * @param entry Entry number
+     */
+    private void index(int entry) {
+        long key = getEntryKey(entry);
+        int mask = slots.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while(slots[slot] != 0 && getEntryKey(slots[slot] - 1) != key) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+    }
+
+    /**
+     * @param key Canonical hash of a position
+     * @return Number of the latest entry for the position, or -1 if there
+     * is none
+     */
+    private int find(long key) {
+        int mask = slots.length - 1;
+        for(int slot = (int) (key ^ (key >>> 32)) & mask; slots[slot] != 0;
+            slot = (slot + 1) & mask) {
+            if(getEntryKey(slots[slot] - 1) == key) return slots[slot] - 1;
+        }
+        return -1;
+    }
+
+    private long getEntryKey(int entry) {
+        return buffer.getLong(HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    private int getEntryMove(int entry) {
+        return buffer.getInt(HEADER_BYTES + entry * ENTRY_BYTES + 8);
+    }
+
+    private int getEntryScore(int entry) {
+        return buffer.getInt(HEADER_BYTES + entry * ENTRY_BYTES + 12);
+    }
+
+    /**
+     * Wait for every entry stored so far to be written.
+     */
+    void flush() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Solved position cache writer failed", e);
+        }
+    }
+
+    /**
+     * Stop using the cache. Once every user has closed it, pending entries
+     * are written and the file is closed.
+     */
+    void close() {
+        synchronized(OPEN) {
+            if(--users > 0) return;
+            OPEN.remove(file);
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this) {
+            try {
+                buffer.force();
+                lock.release();
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close solved position cache: {}", file,
+                        e);
+            }
+        }
+    }
+
+    /**
+     * @return Size of the board the cache is for
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Number of entries in the file, including replaced entries
+     */
+    synchronized int getEntryCount() {
+        return entries;
+    }
+
+    private static long pack(int move, int score) {
+        return ((long) (move + 1) << 32) | (score & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param entry Packed entry returned by probe
+     * @return Move as a field index
+     */
+    static int getMove(long entry) {
+        return (int) (entry >>> 32) - 1;
+    }
+
+    /**
+     * @param entry Packed entry returned by probe
+     * @return Score the move was proven with
+     */
+    static int getScore(long entry) {
+        return (int) entry;
+    }
+}
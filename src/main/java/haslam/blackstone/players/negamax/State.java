@@ -1,8 +1,9 @@
 package haslam.blackstone.players.negamax;
 import haslam.blackstone.core.Move;
 
-import java.util.Stack;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Internal game state representation for the AI.
@@ -10,14 +11,11 @@ import java.util.concurrent.ThreadLocalRandom;
 public class State {
 
     /**
-     * This object stores a 2D board array representing the status of each
-     * field (intersection) on the Gomoku board. A field can either be empty
-     * (0), 1/2 (occupied by a player) or 3 which is an out of bounds field,
-     * used for detecting that a field is at/near the edge of the board.
-     *
-     * Board directions are stored in a 4D array. This 4D array maps each field
-     * on the board to a set of neighbouring fields, 4 on each side of the
-     * stone, forming a star pattern:
+     * This object stores the board as a set of bitboards, one per line
+     * (row, column and both diagonals) for each player. Every field belongs
+     * to four lines, and the 9 fields centred on a field along one of its
+     * lines (4 on each side of the stone) can be read as a 9 bit integer
+     * with a single shift, forming a star pattern:
      *
      *  *       *        *
      *    *     *      *
@@ -29,55 +27,165 @@ public class State {
      *   *      *      *
      * *        *        *
      *
-     * To get the neighbouring fields, we index as follows:
-     * [row][col][direction][field #]
+     * Windows are indexed by direction, and bit 4 is always the centre
+     * field:
+     *
+     * [0] Diagonal from top left to bottom right
+     * [1] Diagonal from top right to bottom left
+     * [2] Vertical from top to bottom
+     * [3] Horizontal from left to right
+     *
+     * The status of each field (0 if empty, 1/2 if occupied by a player) is
+     * also kept in a flat array, indexed by row * size + col.
      *
-     * [0][0-9] Diagonal from top left to bottom right
-     * [1][0-9] Diagonal from top right to bottom left
-     * [2][0-9] Vertical from top to bottom
-     * [3][0-9] Horizontal from left to right
+     * @see BoardLines
      */
-    protected final Field[][] board;
-    protected final Field[][][][] directions;
+    protected final int size;
+    private final int[] fields;
+    // Line bitboards, indexed by [player][line]
+    private final int[][] lines;
+    private final BoardLines geometry;
 
     // The current player
     protected int currentIndex;
 
     // Zobrist hashing, for using the state in a hash data structure
     // https://en.wikipedia.org/wiki/Zobrist_hashing
+    // Keys are generated once per board size and shared between states, so
+    // a hash stays valid for every state (and search) in this JVM. They come
+    // from a fixed seed, so hashes (and the trees searched) are the same on
+    // every run and every machine.
+    private static final Map<Integer, long[][]> ZOBRIST_KEYS =
+            new ConcurrentHashMap<>();
+    private static final long ZOBRIST_SEED = 0x426C61636B73746FL;
+    // Toggled by a null move (a pass), so positions reached after one don't
+    // share a hash with positions where the other player is to move
+    private static final long NULL_MOVE_KEY = 0x2545F4914F6CDD1DL;
     private long zobristHash;
-    private final long[][][] zobristKeys;
+    private final long[][] zobristKeys;
+    // Hash of the image of the position under each symmetry of the board,
+    // kept up to date alongside the hash. The identity (symmetry 0) is the
+    // hash itself. The smallest of them is the canonical hash, shared by
+    // every rotation and reflection of the position.
+    private final Symmetry symmetry;
+    private final long[] symmetricHashes;
+
+    // Keep track of the moves made on this state, as field indexes
+    private final int[] moveStack;
+    private int moveCount;
+
+    // Total strength of each player's stones, as defined by the Evaluator,
+    // indexed by player (1/2). Updated as moves are made/unmade.
+    private final int[] scores;
+
+    // Types of threat square kept for each player, see ThreatUtils
+    static final int FOUR_SQUARES = 0;
+    static final int THREE_SQUARES = 1;
+    static final int REFUTATION_SQUARES = 2;
+    // Squares where a player can make a four, or a three
+    static final int FOUR_MOVES = 3;
+    static final int THREE_MOVES = 4;
+
+    // Threat squares on each line, indexed by [type][player][line] and laid
+    // out like the line bitboards. Lines holding any threat squares are
+    // also marked in a bitset indexed by [type][player], so that a player
+    // with no threats of a type is found without visiting every line.
+    private final int[][][] threats;
+    private final long[][][] threatLines;
+
+    // Largest distance from a stone at which empty fields are tracked as
+    // candidate moves
+    static final int MAX_RADIUS = 4;
+
+    // Number of stones within each radius of a field along the four lines
+    // through it, indexed by [radius][field]
+    private final int[][] neighbours;
+    // Empty fields with at least one stone within each radius, kept as a
+    // dense set indexed by [radius], along with the position of every
+    // field in the set (-1 if absent) and the size of each set
+    private final int[][] candidates;
+    private final int[][] candidatePositions;
+    private final int[] candidateCount;
 
-    // Keep track of the moves made on this state
-    private Stack<Move> moveStack;
-    
     /**
      * Create a new state.
      * @param intersections Number of intersections on the board
      */
     public State(int intersections) {
-        this.board = new Field[intersections][intersections];
-        for(int i = 0; i < intersections; i++) {
-            for(int j = 0; j < intersections; j++) {
-                board[i][j] = new Field(i, j);
-            }
-        }
-        this.directions = new Field[intersections][intersections][4][9];
+        this.size = intersections;
+        this.fields = new int[intersections * intersections];
+        this.geometry = BoardLines.forSize(intersections);
+        this.lines = new int[3][geometry.lineCount];
         this.currentIndex = 1;
-        this.zobristKeys = new long[2][intersections][intersections];
+        this.zobristKeys = ZOBRIST_KEYS.computeIfAbsent(intersections,
+                State::generateZobristKeys);
         this.zobristHash = 0;
-        this.moveStack = new Stack<>();
-        this.generateDirections(board);
-
-        // Generate Zobrist keys
-        for(int i = 0; i < zobristKeys.length; i++) {
-            for(int j = 0; j < zobristKeys[0].length; j++) {
-                for(int k = 0; k < zobristKeys[0][0].length; k++) {
-                    zobristKeys[i][j][k] = ThreadLocalRandom.current().nextLong
-                            (Long.MAX_VALUE);
-                }
+        this.symmetry = Symmetry.forSize(intersections);
+        this.symmetricHashes = new long[Symmetry.COUNT];
+        this.moveStack = new int[fields.length];
+        this.scores = new int[3];
+        this.threats = new int[5][3][geometry.lineCount];
+        this.threatLines = new long[5][3][(geometry.lineCount + 63) / 64];
+        this.neighbours = new int[MAX_RADIUS + 1][fields.length];
+        this.candidates = new int[MAX_RADIUS + 1][fields.length];
+        this.candidatePositions = new int[MAX_RADIUS + 1][fields.length];
+        this.candidateCount = new int[MAX_RADIUS + 1];
+        for(int[] positions : candidatePositions) {
+            Arrays.fill(positions, -1);
+        }
+    }
+
+    /**
+     * Create a copy of a state, with the same moves made in the same order.
+     * @param state State to copy
+     */
+    public State(State state) {
+        this(state.size);
+        for(int i = 0; i < state.moveCount; i++) {
+            makeMove(state.moveStack[i]);
+        }
+    }
+
+    /**
+     * Get a fingerprint of the Zobrist keys for a board size, which changes
+     * whenever the keys do (a new seed, or a new way of generating them).
+     * Hashes kept on disk are only valid with the same fingerprint.
+     * @param intersections Number of intersections on the board
+     * @return Fingerprint of the keys
+     */
+    static long getZobristFingerprint(int intersections) {
+        long[][] keys = ZOBRIST_KEYS.computeIfAbsent(intersections,
+                State::generateZobristKeys);
+        long fingerprint = NULL_MOVE_KEY;
+        for(long[] playerKeys : keys) {
+            for(long key : playerKeys) {
+                fingerprint = fingerprint * 31 + key;
             }
         }
+        return fingerprint;
+    }
+
+    /**
+     * Generate a set of Zobrist keys for a board size, with a SplitMix64
+     * generator seeded by the board size. The generator is written out here
+     * rather than taken from the JDK, so the keys can't change between Java
+     * versions.
+     * @param intersections Number of intersections on the board
+     * @return Pseudo-random (non-negative) keys, indexed by [player][field]
+     */
+    private static long[][] generateZobristKeys(int intersections) {
+        long[][] keys = new long[2][intersections * intersections];
+        long seed = ZOBRIST_SEED + intersections;
+        for(int i = 0; i < keys.length; i++) {
+            for(int j = 0; j < keys[0].length; j++) {
+                seed += 0x9E3779B97F4A7C15L;
+                long z = seed;
+                z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+                z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+                keys[i][j] = (z ^ (z >>> 31)) >>> 1;
+            }
+        }
+        return keys;
     }
 
     /**
@@ -88,135 +196,450 @@ public class State {
     public long getZobristHash() {
         return zobristHash;
     }
-    
+
+    /**
+     * Get the hash of the image of this state under a symmetry of the board.
+     * @param s Symmetry, 0 (the identity) to Symmetry.COUNT - 1
+     * @return Hash value
+     */
+    protected long getSymmetricHash(int s) {
+        return s == 0 ? zobristHash : symmetricHashes[s];
+    }
+
+    /**
+     * Get the symmetry whose image of this state has the smallest hash. The
+     * image is the canonical form of the state, the same for every rotation
+     * and reflection of it.
+     * @return Canonical symmetry
+     */
+    protected int getCanonicalSymmetry() {
+        int best = 0;
+        long bestHash = zobristHash;
+        for(int s = 1; s < Symmetry.COUNT; s++) {
+            if(symmetricHashes[s] < bestHash) {
+                best = s;
+                bestHash = symmetricHashes[s];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the canonical hash of this state: the smallest hash of its images
+     * under the symmetries of the board, the same for every rotation and
+     * reflection of the state.
+     * @return Canonical hash value
+     */
+    protected long getCanonicalHash() {
+        return getSymmetricHash(getCanonicalSymmetry());
+    }
+
+    /**
+     * Check whether this state is unchanged by a symmetry of the board, e.g.
+     * the opening stone in the centre is unchanged by all of them.
+     * @param s Symmetry
+     * @return True if every stone is mapped onto a stone of the same player
+     */
+    protected boolean isSymmetric(int s) {
+        if(s == 0) return true;
+        if(symmetricHashes[s] != zobristHash) return false;
+        for(int i = 0; i < moveCount; i++) {
+            int field = moveStack[i];
+            if(fields[symmetry.apply(s, field)] != fields[field]) return false;
+        }
+        return true;
+    }
+
     /**
      * Apply a move to this state.
      * @param move Move to apply
      */
     public void makeMove(Move move) {
-        moveStack.push(move);
-        this.board[move.row][move.col].index = this.currentIndex;
-        this.zobristHash ^= zobristKeys[board[move.row][move.col]
-                .index - 1][move.row][move.col];
-        this.currentIndex = this.currentIndex == 1 ? 2 : 1;
+        makeMove(move.row * size + move.col);
     }
-    
+
     /**
      * Undo a move on this state.
      * @param move Move to undo
      */
     public void undoMove(Move move) {
-        moveStack.pop();
-        this.zobristHash ^= zobristKeys[board[move.row][move.col]
-                .index - 1][move.row][move.col];
-        this.board[move.row][move.col].index = 0;
+        undoMove(move.row * size + move.col);
+    }
+
+    /**
+     * Apply a move to this state.
+     * @param field Field index of the move (row * size + col)
+     */
+    protected void makeMove(int field) {
+        moveStack[moveCount++] = field;
+        updateScores(field, -1);
+        setField(field, this.currentIndex);
+        updateScores(field, 1);
+        updateNeighbours(field, 1);
+        long[] keys = zobristKeys[this.currentIndex - 1];
+        this.zobristHash ^= keys[field];
+        for(int s = 1; s < Symmetry.COUNT; s++) {
+            symmetricHashes[s] ^= keys[symmetry.apply(s, field)];
+        }
         this.currentIndex = this.currentIndex == 1 ? 2 : 1;
     }
-    
+
     /**
-     * Return whether or not this field has occupied fields around it, within
-     * some given distance. Used to determine if a field on the board is
-     * worth evaluating as a possible move.
-     * @param row Field row
-     * @param col Field col
-     * @param distance How far to look in each direction, limit 4
-     * @return 
+     * Undo a move on this state.
+     * @param field Field index of the move (row * size + col)
      */
-    protected boolean hasAdjacent(int row, int col, int distance) {
-        for(int i = 0; i < 4; i++) {
-            for(int j = 1; j <= distance; j++) {
-                if(directions[row][col][i][4 + j].index == 1
-                        || directions[row][col][i][4 - j].index == 1
-                        || directions[row][col][i][4 + j].index == 2
-                        || directions[row][col][i][4 - j].index == 2) {
-                    return true;
-                }
+    protected void undoMove(int field) {
+        moveCount--;
+        long[] keys = zobristKeys[fields[field] - 1];
+        this.zobristHash ^= keys[field];
+        for(int s = 1; s < Symmetry.COUNT; s++) {
+            symmetricHashes[s] ^= keys[symmetry.apply(s, field)];
+        }
+        updateScores(field, -1);
+        setField(field, 0);
+        updateScores(field, 1);
+        updateNeighbours(field, -1);
+        this.currentIndex = this.currentIndex == 1 ? 2 : 1;
+    }
+
+    /**
+     * Pass the turn to the other player without placing a stone (a null
+     * move). Used by the search to test whether a position is so good that
+     * even passing doesn't lose the advantage.
+     */
+    protected void makeNullMove() {
+        this.zobristHash ^= NULL_MOVE_KEY;
+        for(int s = 1; s < Symmetry.COUNT; s++) {
+            symmetricHashes[s] ^= NULL_MOVE_KEY;
+        }
+        this.currentIndex = this.currentIndex == 1 ? 2 : 1;
+    }
+
+    /**
+     * Undo a null move on this state. Null moves aren't recorded with the
+     * moves made, so they aren't undone by rewind().
+     */
+    protected void undoNullMove() {
+        makeNullMove();
+    }
+
+    /**
+     * Undo moves on this state until only the given number of moves remain.
+     * Used to restore the state when a search is abandoned part way through.
+     * @param moves Number of moves to keep
+     */
+    protected void rewind(int moves) {
+        while(moveCount > moves) {
+            undoMove(moveStack[moveCount - 1]);
+        }
+    }
+
+    /**
+     * Set the status of a field, updating the line bitboards through it.
+     * @param field Field index
+     * @param index New status, 0 if empty or 1/2 for a player
+     */
+    private void setField(int field, int index) {
+        int previous = fields[field];
+        fields[field] = index;
+        for(int direction = 0; direction < 4; direction++) {
+            int line = geometry.lineIds[direction][field];
+            int bit = 1 << (geometry.positions[direction][field]
+                    + BoardLines.PADDING);
+            if(previous != 0) lines[previous][line] &= ~bit;
+            if(index != 0) lines[index][line] |= bit;
+            updateThreats(line);
+        }
+    }
+
+    /**
+     * Find the threat squares of both players on a line. Called whenever a
+     * stone on the line changes, as the threats of both players depend on
+     * it. Windows are read every 4 positions, so that every pattern on the
+     * line (up to 6 fields long) lies entirely inside one of the windows.
+     * @param line Line id
+     */
+    private void updateThreats(int line) {
+        int length = geometry.lengths[line];
+        for(int index = 1; index <= 2; index++) {
+            int stones = lines[index][line];
+            int blocked = lines[index == 1 ? 2 : 1][line]
+                    | ~geometry.bounds[line];
+            int fours = 0;
+            int threes = 0;
+            int refutations = 0;
+            int fourMoves = 0;
+            int threeMoves = 0;
+            for(int position = 0; stones != 0 && position < length;
+                position += 4) {
+                int stonesWindow = BoardLines.window(stones, position);
+                int blockedWindow = BoardLines.window(blocked, position);
+                int entry = ThreatUtils.lookup(stonesWindow, blockedWindow);
+                int moves = ThreatUtils.lookupMoves(stonesWindow,
+                        blockedWindow);
+                // Bit k of the window is bit (position + k) of the line
+                fours |= ThreatUtils.getFourSquares(entry) << position;
+                threes |= ThreatUtils.getThreeSquares(entry) << position;
+                refutations |= ThreatUtils.getRefutationSquares(entry)
+                        << position;
+                fourMoves |= ThreatUtils.getFourMoves(moves) << position;
+                threeMoves |= ThreatUtils.getThreeMoves(moves) << position;
             }
+            setThreats(FOUR_SQUARES, index, line, fours);
+            setThreats(THREE_SQUARES, index, line, threes);
+            setThreats(REFUTATION_SQUARES, index, line, refutations);
+            setThreats(FOUR_MOVES, index, line, fourMoves);
+            setThreats(THREE_MOVES, index, line, threeMoves);
+        }
+    }
+
+    private void setThreats(int type, int index, int line, int squares) {
+        threats[type][index][line] = squares;
+        if(squares != 0) {
+            threatLines[type][index][line >>> 6] |= 1L << line;
+        } else {
+            threatLines[type][index][line >>> 6] &= ~(1L << line);
+        }
+    }
+
+    /**
+     * Check if a player has any threat squares of a type on the board.
+     * @param type FOUR_SQUARES, THREE_SQUARES, REFUTATION_SQUARES,
+     *             FOUR_MOVES or THREE_MOVES
+     * @param index Player index (1/2)
+     * @return True if the player has a threat of this type
+     */
+    protected boolean hasThreats(int type, int index) {
+        for(long word : threatLines[type][index]) {
+            if(word != 0) return true;
         }
         return false;
     }
-    
-    /**
-     * Generate the 4D board directions array, by iterating
-     * diagonally/horizontally/vertically and storing the references to the
-     * neighbouring fields.
-     * @param board Field array
-     */
-    private void generateDirections(Field[][] board) {
-        for(int row = 0; row < board.length; row++) {
-            for(int col = 0; col < board.length; col++) {
-                directions[row][col][0][4] = board[row][col];
-                directions[row][col][1][4] = board[row][col];
-                directions[row][col][2][4] = board[row][col];
-                directions[row][col][3][4] = board[row][col];
-
-                for(int k = 0; k < 5; k++) {
-                    // Diagonal 1, top left
-                    if(row - k >= 0 && col - k >=0) {
-                        directions[row][col][0][4 - k] = board[row -
-                                k][col - k];
-                    } else {
-                        directions[row][col][0][4 - k] = new Field();
-                    }
-
-                    // Diagonal 1, bottom right
-                    if(row + k < board.length && col + k < board.length) {
-                        directions[row][col][0][4 + k] =
-                                board[row + k][col + k];
-                    } else {
-                        directions[row][col][0][4 + k] = new Field();
-                    }
-
-                    // Diagonal 2, top right
-                    if(row - k >= 0 && col + k < board.length) {
-                        directions[row][col][1][4 - k] =
-                                board[row - k][col + k];
-                    } else {
-                        directions[row][col][1][4 - k] = new Field();
-                    }
-
-                    // Diagonal 2, bottom left
-                    if(row + k < board.length && col - k >=0) {
-                        directions[row][col][1][4 + k] =
-                                board[row + k][col - k];
-                    } else {
-                        directions[row][col][1][4 + k] = new Field();
-                    }
-
-                    // Vertical top
-                    if(row - k >= 0) {
-                        directions[row][col][2][4 - k] =
-                                board[row - k][col];
-                    } else {
-                        directions[row][col][2][4 - k] = new Field();
-                    }
-
-                    // Vertical bottom
-                    if(row + k < board.length) {
-                        directions[row][col][2][4 + k] =
-                                board[row + k][col];
-                    } else {
-                        directions[row][col][2][4 + k] = new Field();
-                    }
-
-                    // Horizontal left
-                    if(col - k >= 0) {
-                        directions[row][col][3][4 - k] =
-                                board[row][col - k];
-                    } else {
-                        directions[row][col][3][4 - k] = new Field();
-                    }
-
-                    // Horizontal right
-                    if(col + k < board.length) {
-                        directions[row][col][3][4 + k] =
-                                board[row][col + k];
-                    } else {
-                        directions[row][col][3][4 + k] = new Field();
-                    }
+
+    /**
+     * Add the threat squares of a type belonging to a player to a buffer,
+     * as field indexes. A square shared by more than one threat is added
+     * once for each line it appears on.
+     * @param type FOUR_SQUARES, THREE_SQUARES, REFUTATION_SQUARES,
+     *             FOUR_MOVES or THREE_MOVES
+     * @param index Player index (1/2)
+     * @param moves Buffer to add the fields to
+     * @param count Number of fields already in the buffer
+     * @return Number of fields in the buffer after adding the threats
+     */
+    protected int getThreats(int type, int index, int[] moves, int count) {
+        long[] words = threatLines[type][index];
+        for(int word = 0; word < words.length; word++) {
+            for(long bits = words[word]; bits != 0; bits &= bits - 1) {
+                int line = word * 64 + Long.numberOfTrailingZeros(bits);
+                for(int squares = threats[type][index][line]; squares != 0;
+                    squares &= squares - 1) {
+                    moves[count++] = geometry.fields[line][Integer
+                            .numberOfTrailingZeros(squares)
+                            - BoardLines.PADDING];
                 }
             }
         }
+        return count;
+    }
+
+    /**
+     * Update the neighbour counts around a field that a stone was placed on
+     * or removed from, adding and removing candidates as fields gain their
+     * first or lose their last neighbouring stone.
+     * @param field Field index
+     * @param delta 1 if a stone was placed, -1 if it was removed
+     */
+    private void updateNeighbours(int field, int delta) {
+        for(int direction = 0; direction < 4; direction++) {
+            int line = geometry.lineIds[direction][field];
+            int position = geometry.positions[direction][field];
+            for(int distance = 1; distance <= MAX_RADIUS; distance++) {
+                if(position - distance >= 0) {
+                    updateNeighbour(geometry.fields[line][position -
+                            distance], distance, delta);
+                }
+                if(position + distance < geometry.lengths[line]) {
+                    updateNeighbour(geometry.fields[line][position +
+                            distance], distance, delta);
+                }
+            }
+        }
+        // The field itself is only a candidate while it's empty
+        for(int radius = 1; radius <= MAX_RADIUS; radius++) {
+            if(delta > 0) {
+                removeCandidate(radius, field);
+            } else if(neighbours[radius][field] > 0) {
+                addCandidate(radius, field);
+            }
+        }
+    }
+
+    private void updateNeighbour(int field, int distance, int delta) {
+        for(int radius = distance; radius <= MAX_RADIUS; radius++) {
+            int count = neighbours[radius][field] += delta;
+            if(fields[field] != 0) continue;
+            if(count == 1 && delta > 0) {
+                addCandidate(radius, field);
+            } else if(count == 0) {
+                removeCandidate(radius, field);
+            }
+        }
+    }
+
+    private void addCandidate(int radius, int field) {
+        if(candidatePositions[radius][field] != -1) return;
+        candidatePositions[radius][field] = candidateCount[radius];
+        candidates[radius][candidateCount[radius]++] = field;
+    }
+
+    private void removeCandidate(int radius, int field) {
+        int position = candidatePositions[radius][field];
+        if(position == -1) return;
+        // Move the last candidate into the gap
+        int last = candidates[radius][--candidateCount[radius]];
+        candidates[radius][position] = last;
+        candidatePositions[radius][last] = position;
+        candidatePositions[radius][field] = -1;
+    }
+
+    /**
+     * Get the number of candidate moves within a radius of the stones on the
+     * board, i.e. empty fields with a stone within this distance along one
+     * of the four lines through them.
+     * @param radius Radius, from 1 to MAX_RADIUS
+     * @return Number of candidates
+     */
+    protected int getCandidateCount(int radius) {
+        return candidateCount[radius];
+    }
+
+    /**
+     * Get a candidate move within a radius of the stones on the board.
+     * Candidates are in no particular order.
+     * @param radius Radius, from 1 to MAX_RADIUS
+     * @param i Candidate number, less than getCandidateCount(radius)
+     * @return Field index of the candidate (row * size + col)
+     */
+    protected int getCandidate(int radius, int i) {
+        return candidates[radius][i];
+    }
+
+    /**
+     * Get the status of a field.
+     * @param row Field row
+     * @param col Field col
+     * @return 0 if empty, or the index (1/2) of the player occupying it
+     */
+    protected int getIndex(int row, int col) {
+        return fields[row * size + col];
+    }
+
+    /**
+     * Get a player's stones in the 9 fields centred on a field, along one
+     * direction.
+     * @param index Player index (1/2)
+     * @param row Centre field row
+     * @param col Centre field col
+     * @param direction Direction (0-3)
+     * @return 9 bit window, bit i is set if the player has a stone on field
+     * i of the window (bit 4 is the centre)
+     */
+    protected int getStones(int index, int row, int col, int direction) {
+        return getStones(index, row * size + col, direction);
+    }
+
+    /**
+     * Get a player's stones in the 9 fields centred on a field, along one
+     * direction.
+     * @param index Player index (1/2)
+     * @param field Centre field index
+     * @param direction Direction (0-3)
+     * @return 9 bit window, bit 4 is the centre
+     */
+    protected int getStones(int index, int field, int direction) {
+        return BoardLines.window(lines[index][geometry.lineIds[direction]
+                [field]], geometry.positions[direction][field]);
+    }
+
+    /**
+     * Get the fields which a player can't use in the 9 fields centred on a
+     * field, along one direction. These are fields occupied by the opponent
+     * and fields which lie off the board.
+     * @param index Player index (1/2)
+     * @param row Centre field row
+     * @param col Centre field col
+     * @param direction Direction (0-3)
+     * @return 9 bit window, bit i is set if field i of the window is blocked
+     */
+    protected int getBlocked(int index, int row, int col, int direction) {
+        return getBlocked(index, row * size + col, direction);
+    }
+
+    /**
+     * Get the fields which a player can't use in the 9 fields centred on a
+     * field, along one direction.
+     * @param index Player index (1/2)
+     * @param field Centre field index
+     * @param direction Direction (0-3)
+     * @return 9 bit window, bit 4 is the centre
+     */
+    protected int getBlocked(int index, int field, int direction) {
+        int line = geometry.lineIds[direction][field];
+        return BoardLines.window(lines[index == 1 ? 2 : 1][line]
+                | ~geometry.bounds[line], geometry.positions[direction][field]);
+    }
+
+    /**
+     * Get the total strength of a player's stones on this state. Used by the
+     * Evaluator to score the state without visiting every field.
+     * @param index Player index (1/2)
+     * @return Sum of the window scores for every window of 5 on the board
+     * containing only this player's stones
+     */
+    protected int getScore(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Add (or remove) the score of every window of 5 passing through a field
+     * to each player's total. Called with -1 before the field changes, and
+     * with 1 after, so that only the windows through the field are rescored.
+     * @param field Field index
+     * @param sign 1 to add the window scores, -1 to remove them
+     */
+    private void updateScores(int field, int sign) {
+        for(int direction = 0; direction < 4; direction++) {
+            int stones1 = getStones(1, field, direction);
+            int stones2 = getStones(2, field, direction);
+            int outOfBounds = getBlocked(1, field, direction) & ~stones2;
+            // Every window of 5 in the 9 field window contains the field
+            for(int i = 0; i < 5; i++) {
+                int window = 0x1F << i;
+                if((outOfBounds & window) != 0) continue;
+                int count1 = Integer.bitCount(stones1 & window);
+                int count2 = Integer.bitCount(stones2 & window);
+                if(count2 == 0) {
+                    scores[1] += sign * Evaluator.WINDOW_SCORES[count1];
+                }
+                if(count1 == 0) {
+                    scores[2] += sign * Evaluator.WINDOW_SCORES[count2];
+                }
+            }
+        }
+    }
+
+    /**
+     * Return whether or not this field has occupied fields around it, within
+     * some given distance. Used to determine if a field on the board is
+     * worth evaluating as a possible move.
+     * @param row Field row
+     * @param col Field col
+     * @param distance How far to look in each direction, limit 4
+     * @return
+     */
+    protected boolean hasAdjacent(int row, int col, int distance) {
+        return neighbours[distance][row * size + col] > 0;
     }
 
     /**
@@ -225,28 +648,18 @@ public class State {
      * if the board is full
      */
     protected int terminal() {
-        Move move = moveStack.peek();
-        int row = move.row;
-        int col = move.col;
+        int field = moveStack[moveCount - 1];
         int lastIndex = currentIndex == 1 ? 2 : 1;
 
         // Check around the last move placed to see if it formed a five
-        for(int i = 0; i < 4; i++) {
-            for(int j = 0; j < 6; j++) {
-                if(directions[row][col][i][j].index == lastIndex) {
-                    int count = 0;
-                    for(int k = 1; k < 5; k++) {
-                        if(directions[row][col][i][j+k].index == lastIndex) {
-                            count++;
-                        } else {
-                            break;
-                        }
-                    }
-                    if(count == 4) return lastIndex;
-                }
+        for(int direction = 0; direction < 4; direction++) {
+            int stones = getStones(lastIndex, field, direction);
+            if((stones & (stones >>> 1) & (stones >>> 2) & (stones >>> 3)
+                    & (stones >>> 4)) != 0) {
+                return lastIndex;
             }
         }
-        return moveStack.size() == board.length * board.length ? 3 : 0;
+        return moveCount == fields.length ? 3 : 0;
     }
 
     /**
@@ -254,7 +667,24 @@ public class State {
      * @return # of moves
      */
     protected int getMoves() {
-        return moveStack.size();
+        return moveCount;
+    }
+
+    /**
+     * Get the last move made on this state.
+     * @return Field index of the last move, or -1 if no moves were made
+     */
+    protected int getLastMove() {
+        return moveCount == 0 ? -1 : moveStack[moveCount - 1];
+    }
+
+    /**
+     * Get the status of a field.
+     * @param field Field index
+     * @return 0 if empty, or the index (1/2) of the player occupying it
+     */
+    protected int getIndex(int field) {
+        return fields[field];
     }
 
     /**
@@ -265,7 +695,7 @@ public class State {
      * @return Field instance at given position
      */
     public Field getField(int row, int col) {
-        return this.board[row][col];
+        return new Field(row, col, getIndex(row, col));
     }
-    
+
 }
@@ -0,0 +1,81 @@
+package haslam.blackstone.players.negamax;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The 8 symmetries of a square board (the dihedral group): the 4 rotations,
+ * and the 4 reflections across the middle row, middle column and the two
+ * diagonals. A position and its 7 images under these symmetries play the
+ * same way, so the opening book can store just one of them.
+ *
+ * Symmetry 0 is the identity. Fields are mapped with lookup tables, shared
+ * by every user with the same board size.
+ */
+final class Symmetry {
+
+    static final int COUNT = 8;
+
+    private static final Map<Integer, Symmetry> SYMMETRIES =
+            new ConcurrentHashMap<>();
+
+    // Image of every field, and the field mapping to it, indexed by
+    // [symmetry][field]
+    private final int[][] images;
+    private final int[][] preimages;
+
+    private Symmetry(int size) {
+        int count = size * size;
+        int last = size - 1;
+        this.images = new int[COUNT][count];
+        this.preimages = new int[COUNT][count];
+        for(int row = 0; row < size; row++) {
+            for(int col = 0; col < size; col++) {
+                int[][] mapped = {
+                        {row, col},
+                        {col, last - row},
+                        {last - row, last - col},
+                        {last - col, row},
+                        {row, last - col},
+                        {last - row, col},
+                        {col, row},
+                        {last - col, last - row}
+                };
+                int field = row * size + col;
+                for(int symmetry = 0; symmetry < COUNT; symmetry++) {
+                    int image = mapped[symmetry][0] * size
+                            + mapped[symmetry][1];
+                    images[symmetry][field] = image;
+                    preimages[symmetry][image] = field;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the symmetries of a board size.
+     * @param size Size of the board
+     * @return Shared symmetries instance
+     */
+    static Symmetry forSize(int size) {
+        return SYMMETRIES.computeIfAbsent(size, Symmetry::new);
+    }
+
+    /**
+     * @param symmetry Symmetry, 0 to COUNT - 1
+     * @param field Field index
+     * @return Field the symmetry maps the field to
+     */
+    int apply(int symmetry, int field) {
+        return images[symmetry][field];
+    }
+
+    /**
+     * @param symmetry Symmetry, 0 to COUNT - 1
+     * @param field Field index
+     * @return Field the symmetry maps to the given field
+     */
+    int invert(int symmetry, int field) {
+        return preimages[symmetry][field];
+    }
+}
@@ -5,8 +5,10 @@ package haslam.blackstone.players.negamax;
  * four or a three (OXXXX and OOXXXO).
  */
 public class ThreatPattern {
-    private int[][] pattern;
-    private final int[] patternSquares;
+    private final int stones;
+    private final int length;
+    private final int squares;
+    private final int threatClass;
 
     /**
      * Create a new threat pattern.
@@ -15,44 +17,95 @@ public class ThreatPattern {
      * @param patternSquares The offensive/defensive squares of the
      *                       threat, i.e. the indices of all 0's in the
      *                       pattern array
+     * @param threatClass Threat class of the pattern, as defined in
+     *                    ThreatUtils
      */
-    public ThreatPattern(int[] pattern, int[] patternSquares) {
-        // Store the pattern from each haslam.blackstone.players perspective in pattern[][]
-        this.pattern = new int[2][1];
-        this.pattern[0] = pattern;
-        this.pattern[1] = switchPattern(pattern);
-        this.patternSquares = patternSquares;
+    public ThreatPattern(int[] pattern, int[] patternSquares, int
+            threatClass) {
+        // Store the pattern and squares as bit masks, bit i is set if there
+        // is a stone (or a square) at index i of the pattern
+        int stones = 0;
+        for(int i = 0; i < pattern.length; i++) {
+            if(pattern[i] == 1) {
+                stones |= 1 << i;
+            }
+        }
+        int squares = 0;
+        for(int square : patternSquares) {
+            squares |= 1 << square;
+        }
+        this.stones = stones;
+        this.length = pattern.length;
+        this.squares = squares;
+        this.threatClass = threatClass;
     }
 
     /**
-     * Get the pattern from the perspective of a player.
-     * @param playerIndex Player identifier
-     * @return Pattern array
+     * Search for every occurrence of this pattern in a window of fields.
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use
+     * @param width Number of fields in the window
+     * @return Mask of the pattern squares of every occurrence, 0 if the
+     * pattern wasn't found
      */
-    public int[] getPattern(int playerIndex) {
-        return this.pattern[playerIndex - 1];
+    public int matchSquares(int stones, int blocked, int width) {
+        int found = 0;
+        for(int starts = match(stones, blocked, width); starts != 0;
+            starts &= starts - 1) {
+            found |= squares << Integer.numberOfTrailingZeros(starts);
+        }
+        return found;
     }
 
     /**
-     * Return the offensive/defensive square indices in the pattern.
-     * @return int[] containing all the square indices
+     * Get the class of this pattern if it occurs in a window of fields.
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use
+     * @param width Number of fields in the window
+     * @return Threat class if found, or 0 if not found
      */
-    public int[] getPatternSquares() {
-        return this.patternSquares;
+    public int classIfMatched(int stones, int blocked, int width) {
+        return match(stones, blocked, width) != 0 ? threatClass : 0;
     }
 
     /**
-     * Convert an input pattern to player 2's perspective.
-     * @param pattern Input pattern array
-     * @return Same array with every 1 turned into a 2
+     * Check if this pattern occurs in a window of fields with one of its
+     * stones on a given field.
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use
+     * @param width Number of fields in the window
+     * @param field Index of the field in the window
+     * @return True if found
      */
-    private int[] switchPattern(int[] pattern) {
-        int[] patternSwitched = new int[pattern.length];
-        for(int i = 0; i < pattern.length; i++) {
-            if(pattern[i] == 1) {
-                patternSwitched[i] = 2;
+    public boolean matchesIncluding(int stones, int blocked, int width, int
+            field) {
+        for(int starts = match(stones, blocked, width); starts != 0;
+            starts &= starts - 1) {
+            if(((this.stones << Integer.numberOfTrailingZeros(starts))
+                    & (1 << field)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Search for this pattern in a window of fields.
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use
+     * @param width Number of fields in the window
+     * @return Mask of the starting indices of every occurrence
+     */
+    private int match(int stones, int blocked, int width) {
+        int mask = (1 << length) - 1;
+        int starts = 0;
+        for(int i = 0; i + length <= width; i++) {
+            // Stones must match exactly, and every other field must be empty
+            if(((stones >>> i) & mask) == this.stones
+                    && ((blocked >>> i) & mask) == 0) {
+                starts |= 1 << i;
             }
         }
-        return patternSwitched;
+        return starts;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,352 @@
+package haslam.blackstone.players.negamax;
+
+import java.util.Arrays;
+
+/**
+ * Threat-space search, used to find forced wins which are too deep for the
+ * main search. The attacker only plays moves which make a four (VCF,
+ * victory by continuous fours) or also moves which make a three (VCT,
+ * victory by continuous threats), and the defender only plays the replies
+ * to those threats. This keeps the tree narrow enough to search wins of
+ * 15-30 plies.
+ *
+ * The defender's replies to a four are the square which blocks the five,
+ * and the replies to a three are its defensive squares plus any move which
+ * makes a four of their own, which the attacker then has to block. A win
+ * is only proven if every reply loses, so a proven win is a forced win.
+ * A position which isn't proven is unknown: the attacker may still have a
+ * win outside of the threat space, or deeper than the search went.
+ *
+ * Searches use iterative deepening on the number of attacking moves, so
+ * that the shortest win is found first. Results are kept in a hash table
+ * owned by the search, keyed by the Zobrist hash of the state, the search
+ * type and the attacker. The table is kept between searches, and a win for
+ * one player must not be read back as a win for the other.
+ *
+ * @see State
+ */
+class ThreatSpaceSearch {
+
+    // Maximum number of attacking moves in a win
+    static final int MAX_DEPTH = 15;
+    // Maximum number of plies from the start of a search, including the
+    // attacker's forced blocks which don't count towards the depth
+    private static final int MAX_PLY = 2 * MAX_DEPTH + 32;
+    // How often the time limit is checked, in nodes (a power of 2)
+    private static final int TIME_CHECK_INTERVAL = 1024;
+
+    // Results of a search, also stored in the table
+    private static final int UNKNOWN = 0;
+    private static final int WIN = 1;
+    private static final int FAIL = 2;
+
+    // Keys for each search type, so that VCF and VCT results don't mix
+    private static final long VCF_KEY = 0x5DEECE66DL;
+    private static final long VCT_KEY = 0x2545F4914F6CDD1DL;
+    // Keys for each attacker, so that results for both players don't mix
+    private static final long[] ATTACKER_KEYS = {0, 0x1D8E4E27C47D124FL,
+            0x6A09E667F3BCC909L};
+
+    private final State state;
+
+    // Hash table of results: the key, and the result and depth packed into
+    // an int (result in bits 0-1, depth above). A win holds for any depth
+    // at least as large, and a failure for any depth at most as large.
+    private final long[] keys;
+    private final int[] results;
+    private final int tableMask;
+
+    // Moves generated at each ply, and scratch space for collecting and
+    // sorting threat squares
+    private final int[][] moveBuffers;
+    private final int[] threatBuffer;
+    private final long[] sortBuffer;
+    private final int[] seen;
+    private int seenStamp;
+
+    private boolean threes;
+    // Key of the search type and attacker, XOR'd into the table keys
+    private long modeKey;
+    private long startTime;
+    private long timeNanos;
+    private int nodeLimit;
+    private int nodes;
+    private boolean aborted;
+    private int winningMove;
+    private int winningDepth;
+
+    /**
+     * Create a new threat-space search.
+     * @param state State to search, which may be shared with another search
+     *              as long as they don't run at the same time. The state is
+     *              restored after every search.
+     * @param tableBits Size of the hash table, as a power of 2
+     */
+    ThreatSpaceSearch(State state, int tableBits) {
+        this.state = state;
+        this.keys = new long[1 << tableBits];
+        this.results = new int[1 << tableBits];
+        this.tableMask = (1 << tableBits) - 1;
+        int fields = state.size * state.size;
+        this.moveBuffers = new int[MAX_PLY][fields];
+        this.threatBuffer = new int[8 * fields];
+        this.sortBuffer = new long[fields];
+        this.seen = new int[fields];
+        this.winningMove = -1;
+    }
+
+    /**
+     * Search for a forced win for the player to move.
+     * @param threes False to search for a VCF (fours only), true to search
+     *               for a VCT (fours and threes)
+     * @param maxDepth Maximum number of attacking moves
+     * @param timeNanos Time limit, in nanoseconds
+     * @param nodeLimit Maximum number of nodes to search
+     * @return Field index of the first move of the win, or -1 if no win was
+     * proven
+     */
+    int solve(boolean threes, int maxDepth, long timeNanos, int nodeLimit) {
+        this.threes = threes;
+        this.modeKey = (threes ? VCT_KEY : VCF_KEY)
+                ^ ATTACKER_KEYS[state.currentIndex];
+        this.startTime = System.nanoTime();
+        this.timeNanos = timeNanos;
+        this.nodeLimit = nodeLimit;
+        this.nodes = 0;
+        this.aborted = false;
+        this.winningMove = -1;
+        this.winningDepth = 0;
+
+        for(int depth = 1; depth <= Math.min(maxDepth, MAX_DEPTH); depth++) {
+            if(attack(depth, 0) == WIN) {
+                this.winningDepth = depth;
+                return winningMove;
+            }
+            if(aborted) break;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of attacking moves in the last win found
+     */
+    int getWinningDepth() {
+        return winningDepth;
+    }
+
+    /**
+     * @return Number of nodes visited by the last search
+     */
+    int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Clear the hash table.
+     */
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(results, 0);
+    }
+
+    /**
+     * Search a node where the attacker is to move.
+     * @param depth Number of attacking moves remaining
+     * @param ply Distance from the start of the search
+     * @return WIN, FAIL, or UNKNOWN if the search was aborted
+     */
+    private int attack(int depth, int ply) {
+        int attacker = state.currentIndex;
+        int defender = attacker == 1 ? 2 : 1;
+
+        // Five in one move
+        if(state.hasThreats(State.FOUR_SQUARES, attacker)) {
+            if(ply == 0) {
+                int[] moves = moveBuffers[ply];
+                collect(State.FOUR_SQUARES, attacker, moves, 0);
+                winningMove = moves[0];
+            }
+            return WIN;
+        }
+        if(ply >= MAX_PLY - 1 || checkAbort()) return UNKNOWN;
+
+        int result = probe(depth);
+        if(result != UNKNOWN && ply > 0) return result;
+
+        int[] moves = moveBuffers[ply];
+        if(state.hasThreats(State.FOUR_SQUARES, defender)) {
+            // The defender has a four, the attacker has to block it, and
+            // the block has to keep up the attack
+            int count = collect(State.FOUR_SQUARES, defender, moves, 0);
+            if(count > 1) {
+                result = FAIL;
+            } else {
+                state.makeMove(moves[0]);
+                result = defend(depth, ply + 1);
+                state.undoMove(moves[0]);
+                if(result == WIN && ply == 0) winningMove = moves[0];
+            }
+            store(depth, result);
+            return result;
+        }
+        if(depth == 0) return FAIL;
+
+        int count = collect(State.FOUR_MOVES, attacker, moves, 0);
+        if(threes) {
+            count = collect(State.THREE_MOVES, attacker, moves, count);
+        }
+        count = sort(moves, count, attacker);
+
+        result = FAIL;
+        for(int i = 0; i < count; i++) {
+            int move = moves[i];
+            state.makeMove(move);
+            int value = defend(depth - 1, ply + 1);
+            state.undoMove(move);
+            if(value == WIN) {
+                if(ply == 0) winningMove = move;
+                result = WIN;
+                break;
+            }
+            if(value == UNKNOWN) result = UNKNOWN;
+        }
+        store(depth, result);
+        return result;
+    }
+
+    /**
+     * Search a node where the defender is to move.
+     * @param depth Number of attacking moves remaining
+     * @param ply Distance from the start of the search
+     * @return WIN if the attacker wins against every reply, FAIL, or
+     * UNKNOWN if the search was aborted
+     */
+    private int defend(int depth, int ply) {
+        int defender = state.currentIndex;
+        int attacker = defender == 1 ? 2 : 1;
+
+        // The defender makes five first
+        if(state.hasThreats(State.FOUR_SQUARES, defender)) return FAIL;
+        if(ply >= MAX_PLY - 1 || checkAbort()) return UNKNOWN;
+
+        int result = probe(depth);
+        if(result != UNKNOWN) return result;
+
+        int[] moves = moveBuffers[ply];
+        int count;
+        if(state.hasThreats(State.FOUR_SQUARES, attacker)) {
+            // Two ways to make five can't both be blocked
+            count = collect(State.FOUR_SQUARES, attacker, moves, 0);
+            if(count > 1) return WIN;
+        } else if(threes && state.hasThreats(State.THREE_SQUARES,
+                attacker)) {
+            // Block the three, or counter with a four
+            count = collect(State.THREE_SQUARES, attacker, moves, 0);
+            count = collect(State.FOUR_MOVES, defender, moves, count);
+        } else {
+            // The last attacking move wasn't a threat
+            return FAIL;
+        }
+
+        result = WIN;
+        for(int i = 0; i < count; i++) {
+            int move = moves[i];
+            state.makeMove(move);
+            int value = attack(depth, ply + 1);
+            state.undoMove(move);
+            if(value != WIN) {
+                result = value;
+                break;
+            }
+        }
+        store(depth, result);
+        return result;
+    }
+
+    /**
+     * Count a node, and check whether the search should stop.
+     * @return True if the search is out of time or nodes
+     */
+    private boolean checkAbort() {
+        nodes++;
+        if(nodes >= nodeLimit || ((nodes & (TIME_CHECK_INTERVAL - 1)) == 0
+                && System.nanoTime() - startTime > timeNanos)) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * Add the distinct threat squares of a type belonging to a player to a
+     * move buffer.
+     * @param type Type of threat square, as defined in State
+     * @param index Player index
+     * @param moves Move buffer
+     * @param count Number of moves already in the buffer
+     * @return Number of moves in the buffer
+     */
+    private int collect(int type, int index, int[] moves, int count) {
+        if(count == 0 && ++seenStamp == 0) {
+            Arrays.fill(seen, 0);
+            seenStamp = 1;
+        }
+        int found = state.getThreats(type, index, threatBuffer, 0);
+        for(int i = 0; i < found; i++) {
+            int field = threatBuffer[i];
+            if(seen[field] != seenStamp) {
+                seen[field] = seenStamp;
+                moves[count++] = field;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sort attacking moves by their static score, best first.
+     * @param moves Move buffer
+     * @param count Number of moves in the buffer
+     * @param index Player making the moves
+     * @return Number of moves in the buffer
+     */
+    private int sort(int[] moves, int count, int index) {
+        for(int i = 0; i < count; i++) {
+            int score = Evaluator.evaluateField(state, moves[i], index);
+            sortBuffer[i] = (long) -score << 32 | moves[i];
+        }
+        Arrays.sort(sortBuffer, 0, count);
+        for(int i = 0; i < count; i++) {
+            moves[i] = (int) sortBuffer[i];
+        }
+        return count;
+    }
+
+    /**
+     * Look up the result of a previous search of this state.
+     * @param depth Number of attacking moves remaining
+     * @return WIN or FAIL if known for this depth, otherwise UNKNOWN
+     */
+    private int probe(int depth) {
+        long key = state.getZobristHash() ^ modeKey;
+        int slot = (int) (key ^ key >>> 32) & tableMask;
+        if(keys[slot] != key) return UNKNOWN;
+        int result = results[slot] & 3;
+        int stored = results[slot] >>> 2;
+        if(result == WIN && depth >= stored) return WIN;
+        if(result == FAIL && depth <= stored) return FAIL;
+        return UNKNOWN;
+    }
+
+    /**
+     * Store the result of a search of this state. Results of aborted
+     * searches aren't stored.
+     * @param depth Number of attacking moves remaining
+     * @param result WIN, FAIL or UNKNOWN
+     */
+    private void store(int depth, int result) {
+        if(result == UNKNOWN || aborted) return;
+        long key = state.getZobristHash() ^ modeKey;
+        int slot = (int) (key ^ key >>> 32) & tableMask;
+        keys[slot] = key;
+        results[slot] = result | depth << 2;
+    }
+}
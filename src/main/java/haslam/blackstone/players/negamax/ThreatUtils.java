@@ -3,6 +3,7 @@ package haslam.blackstone.players.negamax;
 import haslam.blackstone.core.Move;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -10,44 +11,227 @@ import java.util.List;
  * existing stone on the board and so we only need to search 4 fields in
  * every direction to find the threat.
  *
- * Currently uses a very brute-force way of finding each threat and does
- * some redundant computations, will need to be improved in the future to
- * provide better AI performance
+ * The 9 fields around a stone in one direction are encoded as two 9 bit
+ * masks, the player's stones and the fields the player can't use (opponent
+ * stones or off the board), which together form an 18 bit key. Every
+ * possible key is matched against the threat patterns once, when the class
+ * is loaded, and the result is stored in a table. Looking up a key returns
+ * the strongest threat class in the window, along with the four, three and
+ * refutation squares of every occurrence of every pattern in the window.
+ *
+ * A second table holds the squares where the player can make a four or a
+ * three, used by the threat-space search to generate attacking moves.
  */
 class ThreatUtils {
 
+    // Threat classes, in increasing order of strength
+    static final int NONE = 0;
+    static final int BROKEN_THREE = 1;
+    static final int OPEN_THREE = 2;
+    static final int FOUR = 3;
+    static final int OPEN_FOUR = 4;
+    static final int FIVE = 5;
+
+    // Layout of a table entry: three 9 bit square masks, then the class
+    private static final int THREE_SHIFT = 9;
+    private static final int REFUTATION_SHIFT = 18;
+    private static final int CLASS_SHIFT = 27;
+    private static final int SQUARE_MASK = 0x1FF;
+
     private static final List<ThreatPattern> REFUTATIONS;
     private static final List<ThreatPattern> THREES;
     private static final List<ThreatPattern> FOURS;
+    private static final List<ThreatPattern> CLASSES;
+
+    // Table entries, indexed by stones | blocked << 9
+    private static final int[] TABLE;
+    // Squares which make a four, and squares which make a three, indexed
+    // by stones | blocked << 9
+    private static final int[] MOVE_TABLE;
 
     static {
         THREES = new ArrayList<>();
         FOURS = new ArrayList<>();
         REFUTATIONS = new ArrayList<>();
+        CLASSES = new ArrayList<>();
 
         THREES.add(new ThreatPattern(new int[] {0, 1, 1, 1, 0, 0}, new int[]
-                {0, 4, 5}));
+                {0, 4, 5}, OPEN_THREE));
         THREES.add(new ThreatPattern(new int[] {0, 0, 1, 1, 1, 0}, new int[]
-                {0, 1, 5}));
+                {0, 1, 5}, OPEN_THREE));
         THREES.add(new ThreatPattern(new int[] {0, 1, 0, 1, 1, 0}, new int[]
-                {0, 2, 5}));
+                {0, 2, 5}, BROKEN_THREE));
         THREES.add(new ThreatPattern(new int[] {0, 1, 1, 0, 1, 0}, new int[]
-                {0, 3, 5}));
+                {0, 3, 5}, BROKEN_THREE));
 
-        FOURS.add(new ThreatPattern(new int[] {1, 1, 1, 1, 0}, new int[] {4} ));
-        FOURS.add(new ThreatPattern(new int[] {1, 1, 1, 0, 1}, new int[] {3} ));
-        FOURS.add(new ThreatPattern(new int[] {1, 1, 0, 1, 1}, new int[] {2} ));
-        FOURS.add(new ThreatPattern(new int[] {1, 0, 1, 1, 1}, new int[] {1} ));
-        FOURS.add(new ThreatPattern(new int[] {0, 1, 1, 1, 1}, new int[] {0} ));
+        FOURS.add(new ThreatPattern(new int[] {1, 1, 1, 1, 0}, new int[] {4},
+                FOUR));
+        FOURS.add(new ThreatPattern(new int[] {1, 1, 1, 0, 1}, new int[] {3},
+                FOUR));
+        FOURS.add(new ThreatPattern(new int[] {1, 1, 0, 1, 1}, new int[] {2},
+                FOUR));
+        FOURS.add(new ThreatPattern(new int[] {1, 0, 1, 1, 1}, new int[] {1},
+                FOUR));
+        FOURS.add(new ThreatPattern(new int[] {0, 1, 1, 1, 1}, new int[] {0},
+                FOUR));
 
         REFUTATIONS.add(new ThreatPattern(new int[] {1, 1, 1, 0, 0}, new
-                int[] {3, 4}));
+                int[] {3, 4}, NONE));
         REFUTATIONS.add(new ThreatPattern(new int[] {1, 1, 0, 0, 1}, new
-                int[] {2, 3} ));
+                int[] {2, 3}, NONE));
         REFUTATIONS.add(new ThreatPattern(new int[] {1, 0, 0, 1, 1}, new
-                int[] {1, 2} ));
+                int[] {1, 2}, NONE));
         REFUTATIONS.add(new ThreatPattern(new int[] {0, 0, 1, 1, 1}, new
-                int[] {0, 1} ));
+                int[] {0, 1}, NONE));
+
+        // Patterns which only change the class of a window
+        CLASSES.add(new ThreatPattern(new int[] {1, 1, 1, 1, 1}, new int[0],
+                FIVE));
+        CLASSES.add(new ThreatPattern(new int[] {0, 1, 1, 1, 1, 0}, new
+                int[] {0, 5}, OPEN_FOUR));
+
+        TABLE = new int[1 << 18];
+        MOVE_TABLE = new int[1 << 18];
+        for(int key = 0; key < TABLE.length; key++) {
+            int stones = key & SQUARE_MASK;
+            int blocked = key >>> 9;
+            // A field can't hold a stone and be blocked
+            if((stones & blocked) != 0) continue;
+
+            int threatClass = NONE;
+            int fours = 0;
+            int threes = 0;
+            int refutations = 0;
+            for(ThreatPattern pattern : FOURS) {
+                fours |= pattern.matchSquares(stones, blocked, 9);
+                threatClass = Math.max(threatClass, pattern.classIfMatched
+                        (stones, blocked, 9));
+            }
+            for(ThreatPattern pattern : THREES) {
+                threes |= pattern.matchSquares(stones, blocked, 9);
+                threatClass = Math.max(threatClass, pattern.classIfMatched
+                        (stones, blocked, 9));
+            }
+            for(ThreatPattern pattern : REFUTATIONS) {
+                refutations |= pattern.matchSquares(stones, blocked, 9);
+            }
+            for(ThreatPattern pattern : CLASSES) {
+                threatClass = Math.max(threatClass, pattern.classIfMatched
+                        (stones, blocked, 9));
+            }
+            TABLE[key] = fours | threes << THREE_SHIFT | refutations <<
+                    REFUTATION_SHIFT | threatClass << CLASS_SHIFT;
+
+            // Try a stone on every empty field, looking for new fours and
+            // threes which include it
+            int fourMoves = 0;
+            int threeMoves = 0;
+            for(int field = 0; field < 9; field++) {
+                if(((stones | blocked) & (1 << field)) != 0) continue;
+                int placed = stones | 1 << field;
+                for(ThreatPattern pattern : FOURS) {
+                    if(pattern.matchesIncluding(placed, blocked, 9, field)) {
+                        fourMoves |= 1 << field;
+                    }
+                }
+                for(ThreatPattern pattern : THREES) {
+                    if(pattern.matchesIncluding(placed, blocked, 9, field)) {
+                        threeMoves |= 1 << field;
+                    }
+                }
+            }
+            MOVE_TABLE[key] = fourMoves | threeMoves << THREE_SHIFT;
+        }
+    }
+
+    /**
+     * Look up the threats in a window of 9 fields.
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use
+     * @return Table entry for the window
+     */
+    static int lookup(int stones, int blocked) {
+        return TABLE[stones | blocked << 9];
+    }
+
+    /**
+     * Look up the squares in a window of 9 fields where a player can make a
+     * four or a three.
+     * @param stones Window of the player's stones
+     * @param blocked Window of fields the player can't use
+     * @return Move table entry for the window
+     */
+    static int lookupMoves(int stones, int blocked) {
+        return MOVE_TABLE[stones | blocked << 9];
+    }
+
+    /**
+     * Get the squares which make a four in a window.
+     * @param entry Move table entry
+     * @return 9 bit mask of squares, bit 4 is the centre of the window
+     */
+    static int getFourMoves(int entry) {
+        return entry & SQUARE_MASK;
+    }
+
+    /**
+     * Get the squares which make a three in a window.
+     * @param entry Move table entry
+     * @return 9 bit mask of squares, bit 4 is the centre of the window
+     */
+    static int getThreeMoves(int entry) {
+        return (entry >>> THREE_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Look up the threats around a field in one direction.
+     * @param state State to search
+     * @param row Row of the field to search around
+     * @param col Column of the field to search around
+     * @param direction Direction to search (0-3)
+     * @param playerIndex Player index to search for
+     * @return Table entry for the window centred on the field
+     */
+    static int lookup(State state, int row, int col, int direction, int
+            playerIndex) {
+        return lookup(state.getStones(playerIndex, row, col, direction),
+                state.getBlocked(playerIndex, row, col, direction));
+    }
+
+    /**
+     * Get the strongest threat in a window.
+     * @param entry Table entry
+     * @return Threat class, NONE to FIVE
+     */
+    static int getThreatClass(int entry) {
+        return entry >>> CLASS_SHIFT;
+    }
+
+    /**
+     * Get the squares which complete a five in a window.
+     * @param entry Table entry
+     * @return 9 bit mask of squares, bit 4 is the centre of the window
+     */
+    static int getFourSquares(int entry) {
+        return entry & SQUARE_MASK;
+    }
+
+    /**
+     * Get the offensive/defensive squares of every three in a window.
+     * @param entry Table entry
+     * @return 9 bit mask of squares, bit 4 is the centre of the window
+     */
+    static int getThreeSquares(int entry) {
+        return (entry >>> THREE_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Get the squares which turn a three in a window into a four.
+     * @param entry Table entry
+     * @return 9 bit mask of squares, bit 4 is the centre of the window
+     */
+    static int getRefutationSquares(int entry) {
+        return (entry >>> REFUTATION_SHIFT) & SQUARE_MASK;
     }
 
     /**
@@ -57,21 +241,31 @@ class ThreatUtils {
      * @return List of moves corresponding to the offensive squares of the
      * threat
      */
-    static List<Move> getThrees(State state, Field field, int
+    static List<Move> getThrees(State state, int row, int col, int
             playerIndex) {
-        return getThreatMoves(THREES, state, field, playerIndex);
+        List<Move> moves = new ArrayList<>();
+        for(int direction = 0; direction < 4; direction++) {
+            addMoves(moves, getThreeSquares(lookup(state, row, col,
+                    direction, playerIndex)), row, col, direction);
+        }
+        return moves;
     }
 
     /**
-     * Check a field for a broken three or a straight three pattern on the
-     * board (0XXX0 and 0X0XX0) belonging to a player.
+     * Check a field for a four pattern on the board (XXXX0 and XX0XX)
+     * belonging to a player.
      * @param playerIndex Player index
      * @return List of moves corresponding to the offensive/defensive squares of
      * the threat
      */
-    static List<Move> getFours(State state, Field field, int
+    static List<Move> getFours(State state, int row, int col, int
             playerIndex) {
-        return getThreatMoves(FOURS, state, field, playerIndex);
+        List<Move> moves = new ArrayList<>();
+        for(int direction = 0; direction < 4; direction++) {
+            addMoves(moves, getFourSquares(lookup(state, row, col,
+                    direction, playerIndex)), row, col, direction);
+        }
+        return moves;
     }
 
     /**
@@ -80,77 +274,46 @@ class ThreatUtils {
      * @return List of moves corresponding to the offensive/defensive squares of
      * the refutation
      */
-    static List<Move> getRefutations(State state, Field field, int
+    static List<Move> getRefutations(State state, int row, int col, int
             playerIndex) {
-        return getThreatMoves(REFUTATIONS, state, field, playerIndex);
-    }
-
-    /**
-     * Search for threats around a field in a game state, mapping each threat
-     * to offensive/defensive moves if found.
-     * @param patternList List of ThreatPattern objects to search for
-     * @param state State to search
-     * @param field Field to search around
-     * @param playerIndex Player index to search for
-     * @return Moves that create threats for the current player
-     */
-    private static List<Move> getThreatMoves(
-            List<ThreatPattern> patternList,
-            State state,
-            Field field,
-            int playerIndex) {
-        List<Move> threatMoves = new ArrayList<>();
-        // Loop around the field in every direction
-        // (diagonal/horizontal/vertical)
+        List<Move> moves = new ArrayList<>();
         for(int direction = 0; direction < 4; direction++) {
-            Field[] directionArray = state.directions[field.row][field.col]
-                    [direction];
-            for(ThreatPattern pattern : patternList) {
-                // Try to find the pattern
-                int patternIndex = matchPattern(directionArray, pattern
-                        .getPattern(playerIndex));
-                if(patternIndex != -1) {
-                    // Found pattern, get the squares in the pattern and map
-                    // them to moves on the board
-                    for(int patternSquareIndex : pattern.getPatternSquares()) {
-                        Field patternSquareField = directionArray[patternIndex +
-                                patternSquareIndex];
-                        threatMoves.add(new Move(patternSquareField.row,
-                                patternSquareField.col));
-                    }
-                }
-            }
+            addMoves(moves, getRefutationSquares(lookup(state, row, col,
+                    direction, playerIndex)), row, col, direction);
         }
-        return threatMoves;
+        return moves;
+    }
+
+    static List<Move> getThrees(State state, Field field, int playerIndex) {
+        return getThrees(state, field.row, field.col, playerIndex);
+    }
+
+    static List<Move> getFours(State state, Field field, int playerIndex) {
+        return getFours(state, field.row, field.col, playerIndex);
+    }
+
+    static List<Move> getRefutations(State state, Field field, int
+            playerIndex) {
+        return getRefutations(state, field.row, field.col, playerIndex);
     }
 
     /**
-     * Search for a pattern in a field array.
-     * @param direction Field array
-     * @param pattern Pattern to match e.g. [2 0 2 2]
-     * @return The starting index if found, or -1 if not found
+     * Map a mask of squares in a window to moves on the board.
+     * @param moves List to add the moves to
+     * @param squares 9 bit mask of squares
+     * @param row Row of the centre of the window
+     * @param col Column of the centre of the window
+     * @param direction Direction of the window
      */
-    private static int matchPattern(Field[] direction, int[] pattern) {
-        for(int i = 0; i < direction.length; i++) {
-            // Check if the pattern lies within the bounds of the direction
-            if(i + (pattern.length - 1) < direction.length) {
-                int count = 0;
-                for(int j = 0; j < pattern.length; j++) {
-                    if(direction[i + j].index == pattern[j]) {
-                        count++;
-                    } else {
-                        break;
-                    }
-                }
-                // Every element was the same, return the start index
-                if(count == pattern.length) {
-                    return i;
-                }
-            } else {
-                break;
-            }
+    static void addMoves(Collection<Move> moves, int squares, int row, int
+            col, int direction) {
+        while(squares != 0) {
+            // Index 4 of the window is the field we searched around
+            int offset = Integer.numberOfTrailingZeros(squares) - 4;
+            moves.add(new Move(row + offset * BoardLines.ROW_STEP[direction],
+                    col + offset * BoardLines.COL_STEP[direction]));
+            squares &= squares - 1;
         }
-        return -1;
     }
 
 }
@@ -0,0 +1,125 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.players.TimeAllocation;
+
+/**
+ * Decides how long the player thinks about each move, from the limits of the
+ * game and how the search is going.
+ *
+ * Every move gets two limits. The hard limit is never exceeded: the search
+ * is abandoned when it runs out, part way through an iteration if needed.
+ * The soft limit is the time the move should normally take. Both are worked
+ * out by TimeAllocation, from the remaining game time spread over the moves
+ * the player expects to have left, and the move time if moves are timed.
+ *
+ * After each iteration of the search, the soft limit is scaled by how
+ * stable the best move is. A best move that hasn't changed for a few
+ * iterations stops the search early, and a best move that has just changed
+ * lets it run longer (up to the hard limit). A new iteration is only
+ * started if it's likely to finish within the scaled limit, since an
+ * unfinished iteration is mostly wasted. A proven win or loss stops the
+ * search straight away.
+ */
+class TimeManager {
+
+    // Soft limit of a move as a fraction of the move time, when only moves
+    // are timed
+    private static final double MOVE_TIME_SOFT_FRACTION = 0.5;
+    // Scaling of the soft limit by stability: after the best move changes,
+    // and once it has held for STABLE_ITERATIONS iterations
+    private static final double UNSTABLE_FACTOR = 2.0;
+    private static final double STABLE_FACTOR = 0.5;
+    private static final int STABLE_ITERATIONS = 3;
+    // An iteration usually takes a few times longer than all the previous
+    // ones together, so one is only started in the first part of the limit
+    private static final double NEXT_ITERATION_FRACTION = 0.5;
+
+    private final long moveTimeMillis;
+    private final long gameTimeMillis;
+
+    private long moveStart;
+    private long softLimit;
+    private long hardLimit;
+    private int bestMove;
+    private int stableIterations;
+
+    /**
+     * Create a new time manager.
+     * @param moveTimeMillis Time per move in milliseconds, 0 if untimed
+     * @param gameTimeMillis Time per game in milliseconds, 0 if untimed
+     */
+    TimeManager(long moveTimeMillis, long gameTimeMillis) {
+        this.moveTimeMillis = moveTimeMillis;
+        this.gameTimeMillis = gameTimeMillis;
+    }
+
+    /**
+     * Work out the limits for a new move.
+     * @param gameTimeRemainingMillis Game time remaining, in milliseconds
+     * @param movesMade Number of moves made in the game so far, by both
+     *                  players
+     */
+    void startMove(long gameTimeRemainingMillis, int movesMade) {
+        this.moveStart = System.nanoTime();
+        long hard = TimeAllocation.getMaxMoveTime(moveTimeMillis,
+                gameTimeMillis, gameTimeRemainingMillis);
+        long soft;
+        if(gameTimeMillis > 0) {
+            soft = Math.min(hard, TimeAllocation.getGameTimeShare(
+                    gameTimeRemainingMillis, movesMade));
+        } else if(moveTimeMillis > 0) {
+            soft = (long) (hard * MOVE_TIME_SOFT_FRACTION);
+        } else {
+            soft = hard;
+        }
+        this.hardLimit = hard * 1000000;
+        this.softLimit = Math.max(1, soft) * 1000000;
+        this.bestMove = -1;
+        this.stableIterations = 0;
+    }
+
+    /**
+     * @return Time the move should normally take, in nanoseconds
+     */
+    long getSoftLimit() {
+        return softLimit;
+    }
+
+    /**
+     * @return Time the move can't exceed, in nanoseconds
+     */
+    long getHardLimit() {
+        return hardLimit;
+    }
+
+    /**
+     * @return Time since the move was started, in nanoseconds
+     */
+    long getElapsed() {
+        return System.nanoTime() - moveStart;
+    }
+
+    /**
+     * Decide whether to start another iteration of the search.
+     * @param elapsedNanos Time spent on the move so far, in nanoseconds
+     * @param move Best move after the last iteration, as a field index
+     * @param score Score of the best move
+     * @return True if the search should stop
+     */
+    boolean stopAfterIteration(long elapsedNanos, int move, int score) {
+        if(Math.abs(score) >= NegamaxSearch.WIN_THRESHOLD) return true;
+
+        double factor = 1.0;
+        if(move == bestMove) {
+            stableIterations++;
+            if(stableIterations >= STABLE_ITERATIONS) factor = STABLE_FACTOR;
+        } else {
+            if(bestMove != -1) factor = UNSTABLE_FACTOR;
+            stableIterations = 0;
+        }
+        this.bestMove = move;
+
+        double limit = Math.min(hardLimit, softLimit * factor);
+        return elapsedNanos >= limit * NEXT_ITERATION_FRACTION;
+    }
+}
@@ -0,0 +1,151 @@
+package haslam.blackstone.players.negamax;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table, mapping the Zobrist hash of a state to the
+ * result of a previous search of that state. Backed by two primitive arrays
+ * so that no objects are created when storing or probing entries.
+ *
+ * Each entry is a pair of longs, the full 64-bit key and a packed data word:
+ *
+ * [0-15]  Score (signed)
+ * [16-23] Depth searched
+ * [24-25] Bound type (exact, lower or upper)
+ * [32-47] Best move (field index + 1, 0 if no move)
+ * [48-55] Generation (search the entry was stored in)
+ *
+ * Entries are grouped into buckets of two. The first slot of a bucket is
+ * depth-preferred, and is only replaced by a search of equal or greater
+ * depth, a newer result for the same state, or any result once the entry
+ * is left over from a previous search. The second slot is always replaced,
+ * so that recent shallow results are still kept when the first slot holds
+ * a deeper entry.
+ *
+ * The table is kept between searches (and games), so results from previous
+ * moves are reused instead of relearned.
+ *
+ * The table is shared by parallel searches without any locking. Each key is
+ * stored XOR'd with its data word, so an entry torn by two threads writing
+ * at the same time no longer matches its hash and is treated as a miss.
+ */
+class TranspositionTable {
+
+    static final int EXACT = 1;
+    static final int LOWER_BOUND = 2;
+    static final int UPPER_BOUND = 3;
+
+    // Bytes used by a single entry (key + data)
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private int generation;
+
+    /**
+     * Create a new transposition table.
+     * @param sizeMb Memory budget in megabytes. The number of entries is
+     *               rounded down to a power of two that fits in the budget.
+     */
+    TranspositionTable(int sizeMb) {
+        long budgetEntries = Math.max(2, ((long) sizeMb << 20) / ENTRY_BYTES);
+        int entries = (int) Long.highestOneBit(Math.min(budgetEntries,
+                1L << 30));
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.bucketMask = (entries >> 1) - 1;
+    }
+
+    /**
+     * Look up a state in the table.
+     * @param hash Zobrist hash of the state
+     * @return Packed data word for the state, or 0 if the state is not stored
+     */
+    long probe(long hash) {
+        int index = bucketIndex(hash);
+        for(int slot = index; slot < index + 2; slot++) {
+            long entry = data[slot];
+            if(entry != 0 && (keys[slot] ^ entry) == hash) return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * Store the result of a search in the table.
+     * @param hash Zobrist hash of the state
+     * @param depth Depth searched
+     * @param score Score of the state
+     * @param bound Bound type (EXACT, LOWER_BOUND, UPPER_BOUND)
+     * @param move Best move found as a field index, or -1 if none
+     */
+    void store(long hash, int depth, int score, int bound, int move) {
+        long entry = (score & 0xFFFFL)
+                | ((long) Math.min(depth, 0xFF) << 16)
+                | ((long) bound << 24)
+                | ((long) (move + 1) << 32)
+                | ((long) generation << 48);
+        int index = bucketIndex(hash);
+        long existing = data[index];
+        if(existing == 0 || (keys[index] ^ existing) == hash
+                || depth >= getDepth(existing)
+                || getGeneration(existing) != generation) {
+            keys[index] = hash ^ entry;
+            data[index] = entry;
+        } else {
+            keys[index + 1] = hash ^ entry;
+            data[index + 1] = entry;
+        }
+    }
+
+    /**
+     * Start a new search. Entries stored by previous searches can still be
+     * probed, but are replaced before any entry from the current search.
+     */
+    void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Remove all entries from the table.
+     */
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * @return Total number of entries the table can hold
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    static int getScore(long entry) {
+        return (short) (entry & 0xFFFF);
+    }
+
+    static int getDepth(long entry) {
+        return (int) ((entry >>> 16) & 0xFF);
+    }
+
+    static int getBound(long entry) {
+        return (int) ((entry >>> 24) & 0x3);
+    }
+
+    /**
+     * @param entry Packed data word
+     * @return Best move stored as a field index, or -1 if none
+     */
+    static int getMove(long entry) {
+        return (int) ((entry >>> 32) & 0xFFFF) - 1;
+    }
+
+    static int getGeneration(long entry) {
+        return (int) ((entry >>> 48) & 0xFF);
+    }
+
+    private int bucketIndex(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & bucketMask) << 1;
+    }
+}
@@ -0,0 +1,321 @@
+package haslam.blackstone.players.playout;
+
+import java.util.SplittableRandom;
+
+/**
+ * Light board for playing games out at random, as fast as possible. Moves
+ * are field indexes (row * size + col), and everything a playout needs is
+ * O(1) per move: empty fields are kept in an array with the filled ones
+ * swapped to the end, so a random empty field is a single lookup, and every
+ * field counts the stones near it, so random moves close to the stones can
+ * be picked without scanning the board. Fives are only looked for on the
+ * lines through the last move.
+ *
+ * Moves can only be undone in the reverse order they were made.
+ *
+ * @see PlayoutPolicy
+ */
+public class PlayoutBoard {
+
+    // Distance (in both directions) within which stones count as near
+    public static final int NEAR_DISTANCE = 2;
+    // Random fields tried when looking for an empty field near the stones,
+    // before settling for any empty field
+    private static final int NEAR_ATTEMPTS = 8;
+
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1},
+            {1, -1}};
+
+    private final int size;
+    private final byte[] fields;
+    // Stones within NEAR_DISTANCE of each field
+    private final byte[] near;
+    // Empty fields in [0, emptyCount), filled fields after, and the
+    // position of every field in the array
+    private final int[] empty;
+    private final int[] emptyIndex;
+    private int emptyCount;
+    private final int[] moveStack;
+    private int moveCount;
+    private int currentIndex;
+    // Player who has five in a row, 0 if none
+    private int winner;
+    // Line through a field, used by findFive()
+    private final int[] line = new int[9];
+
+    /**
+     * Create a new, empty board.
+     * @param size Size of the board
+     */
+    public PlayoutBoard(int size) {
+        this.size = size;
+        int count = size * size;
+        this.fields = new byte[count];
+        this.near = new byte[count];
+        this.empty = new int[count];
+        this.emptyIndex = new int[count];
+        this.moveStack = new int[count];
+        for(int i = 0; i < count; i++) {
+            empty[i] = i;
+            emptyIndex[i] = i;
+        }
+        this.emptyCount = count;
+        this.currentIndex = 1;
+    }
+
+    /**
+     * Create a copy of a board.
+     * @param board Board to copy
+     */
+    public PlayoutBoard(PlayoutBoard board) {
+        this(board.size);
+        for(int i = 0; i < board.moveCount; i++) {
+            makeMove(board.moveStack[i]);
+        }
+    }
+
+    /**
+     * Place a stone for the player to move.
+     * @param field Empty field
+     */
+    public void makeMove(int field) {
+        fields[field] = (byte) currentIndex;
+        moveStack[moveCount++] = field;
+
+        // Swap the field with the last empty field, undoing the move only
+        // has to grow the empty fields again
+        int index = emptyIndex[field];
+        int last = empty[--emptyCount];
+        empty[index] = last;
+        emptyIndex[last] = index;
+        empty[emptyCount] = field;
+        emptyIndex[field] = emptyCount;
+
+        updateNear(field, 1);
+        if(winner == 0 && isFive(field)) {
+            winner = currentIndex;
+        }
+        currentIndex = 3 - currentIndex;
+    }
+
+    /**
+     * Undo the last move made.
+     */
+    public void undoMove() {
+        int field = moveStack[--moveCount];
+        currentIndex = 3 - currentIndex;
+        if(winner == currentIndex && isFive(field)) {
+            winner = 0;
+        }
+        fields[field] = 0;
+        emptyCount++;
+        updateNear(field, -1);
+    }
+
+    /**
+     * Undo moves until only the given number of moves remain.
+     * @param moves Number of moves to keep
+     */
+    public void rewind(int moves) {
+        while(moveCount > moves) {
+            undoMove();
+        }
+    }
+
+    /**
+     * Play the game out from the current position, then undo the moves of
+     * the playout.
+     * @param policy Policy choosing the moves
+     * @param random Random number generator
+     * @return Index (1/2) of the winner, or 3 for a draw
+     */
+    public int playout(PlayoutPolicy policy, SplittableRandom random) {
+        int start = moveCount;
+        int result;
+        while((result = terminal()) == 0) {
+            makeMove(policy.selectMove(this, random));
+        }
+        rewind(start);
+        return result;
+    }
+
+    private void updateNear(int field, int delta) {
+        int row = field / size;
+        int col = field % size;
+        for(int r = Math.max(0, row - NEAR_DISTANCE); r <= Math.min(size - 1,
+                row + NEAR_DISTANCE); r++) {
+            for(int c = Math.max(0, col - NEAR_DISTANCE); c <= Math.min(
+                    size - 1, col + NEAR_DISTANCE); c++) {
+                near[r * size + c] += delta;
+            }
+        }
+    }
+
+    /**
+     * Check whether the stone on a field is part of five in a row.
+     * @param field Occupied field
+     * @return True if there are five in a row through the field
+     */
+    private boolean isFive(int field) {
+        int player = fields[field];
+        int row = field / size;
+        int col = field % size;
+        for(int[] direction : DIRECTIONS) {
+            int count = 1 + count(player, row, col, direction[0],
+                    direction[1]) + count(player, row, col, -direction[0],
+                    -direction[1]);
+            if(count >= 5) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count the stones of a player in a row from a field (not included).
+     */
+    private int count(int player, int row, int col, int dRow, int dCol) {
+        int count = 0;
+        row += dRow;
+        col += dCol;
+        while(row >= 0 && row < size && col >= 0 && col < size
+                && fields[row * size + col] == player && count < 4) {
+            count++;
+            row += dRow;
+            col += dCol;
+        }
+        return count;
+    }
+
+    /**
+     * Find a field which completes five in a row for a player, on one of
+     * the lines through a field. Only lines through the last moves need to
+     * be checked during a playout, fours elsewhere have been answered.
+     * @param player Player to complete five for
+     * @param field Field to check the lines through, or -1
+     * @return Empty field completing five, or -1 if there is none
+     */
+    public int findFive(int player, int field) {
+        if(field < 0) return -1;
+        int row = field / size;
+        int col = field % size;
+        for(int[] direction : DIRECTIONS) {
+            // Read the 9 fields of the line centred on the field: stones of
+            // the player count 1, empty fields 0 and anything else (the
+            // opponent or the edge) breaks every window containing it
+            int stones = 0;
+            for(int i = 0; i < 9; i++) {
+                int r = row + (i - 4) * direction[0];
+                int c = col + (i - 4) * direction[1];
+                int value = r < 0 || r >= size || c < 0 || c >= size ? -1
+                        : fields[r * size + c];
+                line[i] = value == player ? 1 : value == 0 ? 0 : -1;
+                if(value == player) stones++;
+            }
+            if(stones < 4) continue;
+            // Slide a window of five along the line
+            for(int start = 0; start < 5; start++) {
+                int count = 0;
+                int gap = -1;
+                for(int i = start; i < start + 5; i++) {
+                    if(line[i] == 1) {
+                        count++;
+                    } else if(line[i] == 0 && gap == -1) {
+                        gap = i;
+                    } else {
+                        count = -1;
+                        break;
+                    }
+                }
+                if(count == 4 && gap != -1) {
+                    return (row + (gap - 4) * direction[0]) * size + col
+                            + (gap - 4) * direction[1];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pick a random empty field, each with the same probability.
+     * @param random Random number generator
+     * @return Empty field, or -1 if the board is full
+     */
+    public int randomEmpty(SplittableRandom random) {
+        if(emptyCount == 0) return -1;
+        return empty[random.nextInt(emptyCount)];
+    }
+
+    /**
+     * Pick a random empty field, preferring fields near the stones.
+     * @param random Random number generator
+     * @return Empty field, or -1 if the board is full
+     */
+    public int randomNear(SplittableRandom random) {
+        if(emptyCount == 0) return -1;
+        for(int i = 0; i < NEAR_ATTEMPTS; i++) {
+            int field = empty[random.nextInt(emptyCount)];
+            if(near[field] > 0) return field;
+        }
+        return empty[random.nextInt(emptyCount)];
+    }
+
+    /**
+     * Write the empty fields near the stones to a buffer.
+     * @param moves Buffer, at least size * size long
+     * @return Number of fields written
+     */
+    public int getCandidates(int[] moves) {
+        if(moveCount == 0) {
+            moves[0] = (size / 2) * size + size / 2;
+            return 1;
+        }
+        int count = 0;
+        for(int i = 0; i < emptyCount; i++) {
+            if(near[empty[i]] > 0) moves[count++] = empty[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return 0 if the game isn't over, the index (1/2) of the player with
+     * five in a row, or 3 if the board is full
+     */
+    public int terminal() {
+        if(winner != 0) return winner;
+        return emptyCount == 0 ? 3 : 0;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public int getMoves() {
+        return moveCount;
+    }
+
+    /**
+     * @return Last move made, or -1 if the board is empty
+     */
+    public int getLastMove() {
+        return moveCount == 0 ? -1 : moveStack[moveCount - 1];
+    }
+
+    /**
+     * @param back Number of moves back, 0 for the last move
+     * @return Move made that many moves before the last, or -1
+     */
+    public int getMove(int back) {
+        return moveCount > back ? moveStack[moveCount - 1 - back] : -1;
+    }
+
+    /**
+     * @param field Field index
+     * @return 0 if empty, or the index (1/2) of the player on the field
+     */
+    public int getIndex(int field) {
+        return fields[field];
+    }
+}
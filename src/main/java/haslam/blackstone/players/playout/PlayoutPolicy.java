@@ -0,0 +1,70 @@
+package haslam.blackstone.players.playout;
+
+import java.util.SplittableRandom;
+
+/**
+ * Policies for choosing the moves of a playout. All of them are O(1) per
+ * move, apart from the five checks of THREATS which only look at the lines
+ * through the last two moves.
+ */
+public enum PlayoutPolicy {
+
+    /**
+     * Any empty field, each with the same probability.
+     */
+    UNIFORM {
+        @Override
+        public int selectMove(PlayoutBoard board, SplittableRandom random) {
+            return board.randomEmpty(random);
+        }
+    },
+
+    /**
+     * A random empty field, preferring fields near the stones.
+     */
+    NEAR {
+        @Override
+        public int selectMove(PlayoutBoard board, SplittableRandom random) {
+            return board.randomNear(random);
+        }
+    },
+
+    /**
+     * Complete five if possible, otherwise block the opponent's five, and
+     * otherwise play as NEAR. Playouts then mostly end in wins that the
+     * loser couldn't have stopped, rather than missed fours.
+     */
+    THREATS {
+        @Override
+        public int selectMove(PlayoutBoard board, SplittableRandom random) {
+            int move = findForcedMove(board);
+            return move != -1 ? move : board.randomNear(random);
+        }
+    };
+
+    /**
+     * Choose the next move of a playout.
+     * @param board Board to choose a move on, the game isn't over
+     * @param random Random number generator
+     * @return Empty field to play
+     */
+    public abstract int selectMove(PlayoutBoard board,
+                                   SplittableRandom random);
+
+    /**
+     * Find the field completing five for the player to move, or else the
+     * field blocking the opponent's five. Fours are looked for through the
+     * last move of each player, since older fours would already have been
+     * completed or blocked.
+     * @param board Board to look at
+     * @return Winning or blocking field, or -1 if there is none
+     */
+    public static int findForcedMove(PlayoutBoard board) {
+        int player = board.getCurrentIndex();
+        int move = board.findFive(player, board.getMove(1));
+        if(move == -1) {
+            move = board.findFive(3 - player, board.getMove(0));
+        }
+        return move;
+    }
+}
@@ -2,58 +2,55 @@ package haslam.blackstone.players.random;
 
 import haslam.blackstone.core.Move;
 import haslam.blackstone.players.Player;
+import haslam.blackstone.players.playout.PlayoutBoard;
+import haslam.blackstone.players.playout.PlayoutPolicy;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
+/**
+ * Player which plays any empty field at random, each with the same
+ * probability. Backed by a PlayoutBoard, so picking a move takes constant
+ * time however full the board is.
+ */
 public class RandomPlayer implements Player {
 
-    private Random random;
-    private List<Move> moves;
+    private SplittableRandom random;
+    private PlayoutBoard board;
     private int size;
 
     @Override
     public void setupGame(int index, int boardSize, long moveTimeMillis, long gameTimeMillis) {
-        this.moves = new ArrayList<>();
-        this.random = new Random();
+        this.board = new PlayoutBoard(boardSize);
+        this.random = new SplittableRandom();
         this.size = boardSize;
     }
 
     @Override
     public Move loadBoard(List<Move> orderedMoves, long gameTimeRemainingMillis) {
-        this.moves = orderedMoves;
-        Move move = getRandomMove();
-        moves.add(move);
-        return move;
+        this.board = new PlayoutBoard(size);
+        for(Move move : orderedMoves) {
+            board.makeMove(move.row * size + move.col);
+        }
+        return playRandomMove();
     }
 
     @Override
     public Move getMove(Move opponentsMove, long gameTimeRemainingMillis) {
-        moves.add(opponentsMove);
-        Move move = getRandomMove();
-        moves.add(move);
-        return move;
+        board.makeMove(opponentsMove.row * size + opponentsMove.col);
+        return playRandomMove();
     }
 
-    private Move getRandomMove() {
-        List<Move> availableMoves = new ArrayList<>();
-
-        for(int row = 0; row < size; row++) {
-            for(int col = 0; col < size; col++) {
-                Move move = new Move(row, col);
-                if(!moves.contains(move)) {
-                    availableMoves.add(move);
-                }
-            }
-        }
-        return availableMoves.get(random.nextInt(availableMoves.size()));
+    private Move playRandomMove() {
+        int field = PlayoutPolicy.UNIFORM.selectMove(board, random);
+        board.makeMove(field);
+        return new Move(field / size, field % size);
     }
 
     @Override
     public Move beginGame(long gameTimeRemainingMillis) {
         Move move = new Move(size / 2, size / 2);
-        moves.add(move);
+        board.makeMove(move.row * size + move.col);
         return move;
     }
 }
@@ -0,0 +1,148 @@
+package haslam.blackstone.players.mcts;
+
+import haslam.blackstone.core.GameState;
+import haslam.blackstone.core.Move;
+import haslam.blackstone.players.SearchReport;
+import haslam.blackstone.players.playout.PlayoutBoard;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MctsPlayerTest {
+
+    private static MctsPlayer createPlayer(int threads) {
+        MctsSettings settings = MctsSettings.withDefaults();
+        settings.setThreads(threads);
+        settings.setTreeSizeMb(8);
+        return new MctsPlayer(settings);
+    }
+
+    @Test
+    public void testWinningMove() {
+        MctsPlayer player = createPlayer(1);
+        player.setupGame(1, 15, 200, 0);
+        List<Move> moves = new ArrayList<>(Arrays.asList(
+                new Move(7, 3), new Move(0, 0),
+                new Move(7, 4), new Move(0, 2),
+                new Move(7, 5), new Move(0, 4),
+                new Move(7, 6), new Move(0, 6)));
+        Move move = player.loadBoard(moves, 0);
+        assertTrue(move.equals(new Move(7, 2)) || move.equals(new Move(7,
+                7)));
+        player.cleanup();
+    }
+
+    @Test
+    public void testBlocksFour() {
+        MctsPlayer player = createPlayer(1);
+        player.setupGame(2, 15, 200, 0);
+        List<Move> moves = new ArrayList<>(Arrays.asList(
+                new Move(7, 3), new Move(7, 7),
+                new Move(7, 4), new Move(0, 0),
+                new Move(7, 5), new Move(0, 4),
+                new Move(7, 6)));
+        assertEquals(new Move(7, 2), player.loadBoard(moves, 0));
+
+        // Loading another board starts from an empty board
+        moves = new ArrayList<>(Arrays.asList(
+                new Move(3, 10), new Move(0, 0),
+                new Move(4, 10), new Move(2, 10),
+                new Move(5, 10), new Move(0, 2),
+                new Move(6, 10)));
+        assertEquals(new Move(7, 10), player.loadBoard(moves, 0));
+        player.cleanup();
+    }
+
+    @Test
+    public void testParallelGame() {
+        MctsPlayer player = createPlayer(2);
+        List<SearchReport> reports = new ArrayList<>();
+        player.setSearchListener(reports::add);
+        player.setupGame(1, 15, 100, 0);
+        GameState game = new GameState(15);
+        game.makeMove(player.beginGame(0));
+
+        // Play random replies near the last move, the player has to keep
+        // in step with the game and only play legal moves
+        Random random = new Random(1);
+        int played = 1;
+        for(int i = 0; i < 6 && game.terminal() == 0; i++) {
+            Move last = game.getLastMove();
+            Move reply;
+            do {
+                reply = new Move(last.row + random.nextInt(5) - 2, last.col
+                        + random.nextInt(5) - 2);
+            } while(reply.row < 0 || reply.row >= 15 || reply.col < 0
+                    || reply.col >= 15 || !game.validateMove(reply));
+            game.makeMove(reply);
+            Move move = player.getMove(reply, 0);
+            assertTrue(game.validateMove(move));
+            game.makeMove(move);
+            played++;
+        }
+        player.cleanup();
+
+        // A report for every move, the opening move without playouts
+        assertEquals(played, reports.size());
+        assertEquals(new Move(7, 7), reports.get(0).getBestMove());
+        assertEquals(0, reports.get(0).getNodes());
+        for(SearchReport report : reports) {
+            assertTrue(report.isFinished());
+            assertTrue(report == reports.get(0) || report.getNodes() > 0);
+            assertNotNull(report.getBestMove());
+            assertEquals(report.getBestMove(), report.getPrincipalVariation()
+                    .get(0));
+        }
+    }
+
+    @Test
+    public void testTreeReuse() {
+        PlayoutBoard board = new PlayoutBoard(15);
+        board.makeMove(7 * 15 + 7);
+        MctsSearch search = new MctsSearch(board, MctsSettings.withDefaults(),
+                new SplittableRandom(1));
+        Tree tree = new Tree(100000);
+        int[] moves = new int[15 * 15];
+        tree.startExpansion(0);
+        tree.expand(0, moves, search.generateChildren(moves));
+        search.setStopped(false);
+        search.search(tree, System.nanoTime() + 50000000L, false);
+
+        // Copy the subtree of the most visited move, it has to keep its
+        // statistics and children
+        int best = tree.getFirstChild(0);
+        for(int child = best; child < tree.getFirstChild(0) + tree
+                .getChildCount(0); child++) {
+            if(tree.getVisits(child) > tree.getVisits(best)) best = child;
+        }
+        Tree copy = new Tree(100000);
+        copy.copySubtree(tree, best);
+        assertEquals(tree.getMove(best), copy.getMove(0));
+        assertEquals(tree.getStats(best), copy.getStats(0));
+        assertTrue(copy.isExpanded(0));
+        assertEquals(tree.getChildCount(best), copy.getChildCount(0));
+        for(int i = 0; i < copy.getChildCount(0); i++) {
+            int from = tree.getFirstChild(best) + i;
+            int to = copy.getFirstChild(0) + i;
+            assertEquals(tree.getMove(from), copy.getMove(to));
+            assertEquals(tree.getStats(from), copy.getStats(to));
+        }
+
+        // A copy which doesn't fit keeps the nodes nearest the root
+        Tree small = new Tree(1 + tree.getChildCount(best));
+        small.copySubtree(tree, best);
+        assertEquals(small.getCapacity(), small.getUsed());
+        for(int i = 0; i < small.getChildCount(0); i++) {
+            assertFalse(small.isExpanded(small.getFirstChild(0) + i));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static haslam.blackstone.players.negamax.TestPositions.DOUBLE_THREE;
+import static haslam.blackstone.players.negamax.TestPositions.setupState;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArchiveSolverTest {
+
+    private static final int SIZE = 15;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Solve an archive holding a game which ends on the double three, and
+     * one on another board size, and check the position before the game
+     * ended is stored as won.
+     */
+    @Test
+    public void testSolveArchive() throws IOException {
+        String game = Arrays.stream(DOUBLE_THREE).map(move -> new Move(
+                move[0], move[1]).getAlgebraicString(SIZE)).collect(
+                Collectors.joining(","));
+        Path archive = directory.resolve("games.txt");
+        Files.write(archive, Arrays.asList("15", game, "19", "K10,L11"));
+        assertEquals(1, GameArchive.readGames(archive, SIZE).size());
+
+        Path file = directory.resolve("solved.bin");
+        SolvedPositionCache cache = SolvedPositionCache.open(file, SIZE);
+        ArchiveSolver solver = new ArchiveSolver(SIZE, 100000,
+                Long.MAX_VALUE, cache);
+        assertEquals(DOUBLE_THREE.length, solver.solveGame(GameArchive
+                .readGames(archive, SIZE).get(0)));
+        assertEquals(1, solver.getWinner());
+
+        // The line is a real win: playing it out makes five
+        State state = setupState(DOUBLE_THREE);
+        solver.getLine().forEach(state::makeMove);
+        assertEquals(1, state.terminal());
+        cache.close();
+
+        // The same, through the command line
+        Files.delete(file);
+        ArchiveSolver.main(new String[] {"-nodes", "100000", "-cache",
+                file.toString(), directory.toString()});
+        cache = SolvedPositionCache.open(file, SIZE);
+        long entry = cache.probe(setupState(DOUBLE_THREE));
+        assertTrue(entry != 0);
+        assertEquals(Evaluator.WIN_SCORE, SolvedPositionCache.getScore(
+                entry));
+        cache.close();
+    }
+}
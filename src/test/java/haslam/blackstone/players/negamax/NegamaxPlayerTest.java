@@ -0,0 +1,165 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.GameState;
+import haslam.blackstone.core.Move;
+import haslam.blackstone.players.SearchReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NegamaxPlayerTest {
+
+    /**
+     * Find a legal move for the opponent which the player isn't expecting.
+     */
+    private static Move unexpectedMove(GameState game, Move expected) {
+        for(int row = 0; row < game.getSize(); row++) {
+            for(int col = 0; col < game.getSize(); col++) {
+                Move move = new Move(row, col);
+                if(game.validateMove(move) && !move.equals(expected)) {
+                    return move;
+                }
+            }
+        }
+        throw new IllegalStateException("Board is full");
+    }
+
+    @Test
+    public void testPondering() throws InterruptedException {
+        assertFalse(NegamaxSettings.withDefaults().isPonderingEnabled());
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setPonderingEnabled(true);
+        NegamaxPlayer player = new NegamaxPlayer(settings);
+        List<SearchReport> reports = new ArrayList<>();
+        player.setSearchListener(report -> {
+            if(report.isFinished()) reports.add(report);
+        });
+        player.setupGame(1, 15, 100, 0);
+        GameState game = new GameState(15);
+        game.makeMove(player.beginGame(0));
+
+        // Alternate between the expected reply (ponder hits) and other
+        // moves (ponder misses), the player's state has to stay in step
+        // with the game either way
+        for(int i = 0; i < 6 && game.terminal() == 0; i++) {
+            Move expected = player.getPonderMove();
+            boolean hit = i % 2 == 0 && expected != null;
+            Move reply = hit ? expected : unexpectedMove(game, expected);
+            if(hit) {
+                // The opponent's thinking time isn't the player's
+                Thread.sleep(300);
+            }
+            reports.clear();
+            game.makeMove(reply);
+            Move move = player.getMove(reply, 0);
+            assertNotNull(move);
+            assertTrue(game.validateMove(move));
+            game.makeMove(move);
+            if(hit && !reports.isEmpty()) {
+                assertTrue(reports.get(reports.size() - 1).getTimeMillis()
+                        < 200);
+            }
+        }
+        player.cleanup();
+        assertTrue(player.getPonderMove() == null);
+    }
+
+    @Test
+    public void testStopLatency() {
+        // Read the clock as rarely as possible, the timer has to stop the
+        // search well within the 100ms the game allows on top of the limit
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setPonderingEnabled(false);
+        settings.setTimeCheckInterval(1 << 20);
+        NegamaxPlayer player = new NegamaxPlayer(settings);
+        player.setupGame(1, BenchmarkPositions.SIZE, 0, 0);
+        player.loadPosition(BenchmarkPositions.parse(BenchmarkPositions
+                .POSITIONS[BenchmarkPositions.POSITIONS.length - 1],
+                BenchmarkPositions.SIZE));
+
+        long timeNanos = 200 * 1000000L;
+        long start = System.nanoTime();
+        player.search(NegamaxSearch.MAX_PLY - 1, timeNanos);
+        long elapsed = System.nanoTime() - start;
+        player.cleanup();
+        assertTrue(elapsed < timeNanos + 50 * 1000000L);
+        assertTrue(player.getStopLatency() < 50 * 1000000L);
+    }
+
+    @Test
+    public void testSearchReports() {
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setPonderingEnabled(false);
+        NegamaxPlayer player = new NegamaxPlayer(settings);
+        List<SearchReport> reports = new ArrayList<>();
+        player.setSearchListener(reports::add);
+        player.setupGame(1, 15, 300, 0);
+        Move move = player.loadBoard(Arrays.asList(new Move(7, 7),
+                new Move(7, 8), new Move(8, 8)), 0);
+        player.cleanup();
+
+        // One report per iteration, then one for the move
+        assertTrue(reports.size() >= 2);
+        SearchReport last = reports.get(reports.size() - 1);
+        assertTrue(last.isFinished());
+        assertEquals(move, last.getBestMove());
+        for(int i = 0; i < reports.size() - 1; i++) {
+            SearchReport report = reports.get(i);
+            assertFalse(report.isFinished());
+            assertFalse(report.getPrincipalVariation().isEmpty());
+            assertTrue(report.getSelectiveDepth() >= report.getDepth());
+            if(i > 0) {
+                assertEquals(reports.get(i - 1).getDepth() + 1,
+                        report.getDepth());
+                assertTrue(report.getNodes() >= reports.get(i - 1)
+                        .getNodes());
+            }
+        }
+        assertTrue(last.getNodes() > 0);
+        assertTrue(last.getHashHitRate() >= 0 && last.getHashHitRate() <= 1);
+        assertTrue(last.getFirstMoveCutoffRate() > 0
+                && last.getFirstMoveCutoffRate() <= 1);
+    }
+
+    /**
+     * Moves decided without the main search (the opening move, and a forced
+     * win from the threat-space search) still get a finished report.
+     */
+    @Test
+    public void testReportsWithoutSearch() {
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        NegamaxPlayer player = new NegamaxPlayer(settings);
+        List<SearchReport> reports = new ArrayList<>();
+        player.setSearchListener(reports::add);
+        player.setupGame(1, 15, 1000, 0);
+
+        Move move = player.beginGame(0);
+        assertEquals(1, reports.size());
+        assertTrue(reports.get(0).isFinished());
+        assertEquals(move, reports.get(0).getBestMove());
+
+        // An open four on row 7
+        reports.clear();
+        move = player.loadBoard(Arrays.asList(new Move(7, 7), new Move(0, 0),
+                new Move(7, 8), new Move(0, 2), new Move(7, 9), new Move(0, 4),
+                new Move(7, 10), new Move(0, 6)), 0);
+        player.cleanup();
+        assertEquals(1, reports.size());
+        SearchReport report = reports.get(0);
+        assertTrue(report.isFinished());
+        assertEquals(move, report.getBestMove());
+        assertTrue(report.getScore() >= NegamaxSearch.WIN_THRESHOLD);
+        assertEquals(0, report.getNodes());
+        // All of the time went to the threat-space search
+        assertEquals(report.getThreatSearchTimeMillis(), report
+                .getTimeMillis());
+    }
+
+}
@@ -0,0 +1,146 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NegamaxSearchTest {
+
+    /**
+     * Search every benchmark position twice, checking that the second search
+     * allocates a small, fixed amount (the result and principal variation of
+     * each iteration) rather than an amount that grows with the node count.
+     */
+    @Test
+    public void testNoAllocationPerNode() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory
+                        .getThreadMXBean();
+        for(String position : BenchmarkPositions.POSITIONS) {
+            State state = new State(BenchmarkPositions.SIZE);
+            for(Move move : BenchmarkPositions.parse(position,
+                    BenchmarkPositions.SIZE)) {
+                state.makeMove(move);
+            }
+            NegamaxSearch search = new NegamaxSearch(state,
+                    new TranspositionTable(1), NegamaxSettings.withDefaults(),
+                    false);
+            search.iterativeDeepening(2, 4, Long.MAX_VALUE);
+
+            long before = threads.getCurrentThreadAllocatedBytes();
+            search.iterativeDeepening(2, 5, Long.MAX_VALUE);
+            long allocated = threads.getCurrentThreadAllocatedBytes()
+                    - before;
+            assertTrue(allocated < 4096, allocated + " bytes allocated for "
+                    + search.getNodeCount() + " nodes");
+        }
+    }
+
+    /**
+     * Run the search with every selective search technique enabled, and
+     * check that it still finds a quiet move winning by a double three, and
+     * that the state is restored when a search is abandoned (possibly after
+     * a null move).
+     */
+    @Test
+    public void testSelectiveSearch() {
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setThreatSpaceSearchEnabled(false);
+        settings.setLateMoveReductionsEnabled(true);
+        settings.setNullMovePruningEnabled(true);
+        settings.setFutilityPruningEnabled(true);
+
+        State state = TestPositions.setupState(TestPositions.DOUBLE_THREE);
+        NegamaxSearch search = new NegamaxSearch(state,
+                new TranspositionTable(1), settings, false);
+        assertEquals(new Move(7, 9), search.iterativeDeepening(2, 6,
+                Long.MAX_VALUE));
+        assertTrue(search.getScore() >= NegamaxSearch.WIN_THRESHOLD);
+
+        for(String position : BenchmarkPositions.POSITIONS) {
+            state = new State(BenchmarkPositions.SIZE);
+            for(Move move : BenchmarkPositions.parse(position,
+                    BenchmarkPositions.SIZE)) {
+                state.makeMove(move);
+            }
+            long hash = state.getZobristHash();
+            int player = state.currentIndex;
+            search = new NegamaxSearch(state, new TranspositionTable(1),
+                    settings, false);
+            search.iterativeDeepening(2, NegamaxSearch.MAX_PLY - 1,
+                    20 * 1000000L);
+            assertEquals(hash, state.getZobristHash());
+            assertEquals(player, state.currentIndex);
+        }
+    }
+
+    /**
+     * With a single stone in the centre, the 16 moves within two fields of
+     * it along its lines are only 4 different moves up to symmetry.
+     */
+    @Test
+    public void testRemoveSymmetricMoves() {
+        State state = new State(15);
+        state.makeMove(new Move(7, 7));
+        NegamaxSearch search = new NegamaxSearch(state,
+                new TranspositionTable(1), NegamaxSettings.withDefaults(),
+                false);
+        int[] moves = new int[state.size * state.size];
+        int count = search.getSortedMoves(state, 2, moves, 0);
+        assertEquals(16, count);
+        assertEquals(4, search.removeSymmetricMoves(moves, count));
+
+        // Nothing is removed once the position has no symmetry
+        state.makeMove(new Move(7, 8));
+        state.makeMove(new Move(6, 6));
+        count = search.getSortedMoves(state, 2, moves, 0);
+        assertEquals(count, search.removeSymmetricMoves(moves, count));
+    }
+
+    /**
+     * The aspiration windows and null windows of the iterative search must
+     * give the same move and score as a single full-window search to the
+     * same depth, and the principal variation must be a legal line starting
+     * with the move.
+     */
+    @Test
+    public void testSearchMatchesFullWindow() {
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        for(String position : BenchmarkPositions.POSITIONS) {
+            State state = new State(BenchmarkPositions.SIZE);
+            for(Move move : BenchmarkPositions.parse(position,
+                    BenchmarkPositions.SIZE)) {
+                state.makeMove(move);
+            }
+            NegamaxSearch search = new NegamaxSearch(state,
+                    new TranspositionTable(16), settings, false);
+            Move best = search.iterativeDeepening(2, 5, Long.MAX_VALUE);
+            NegamaxSearch fullWindow = new NegamaxSearch(state,
+                    new TranspositionTable(16), settings, false);
+            Move expected = fullWindow.iterativeDeepening(5, 5,
+                    Long.MAX_VALUE);
+            assertEquals(fullWindow.getScore(), search.getScore(), position);
+            assertEquals(expected, best, position);
+
+            List<Move> pv = search.getPrincipalVariation();
+            assertEquals(best, pv.get(0));
+            assertTrue(pv.size() <= 5);
+            for(int i = 0; i < pv.size(); i++) {
+                Move move = pv.get(i);
+                assertEquals(0, state.getIndex(move.row, move.col));
+                // Only the last move of the line can end the game
+                assertEquals(0, state.terminal(), position);
+                state.makeMove(move);
+            }
+            for(int i = pv.size() - 1; i >= 0; i--) {
+                state.undoMove(pv.get(i));
+            }
+        }
+    }
+
+}
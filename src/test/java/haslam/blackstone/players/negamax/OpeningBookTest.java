@@ -0,0 +1,109 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OpeningBookTest {
+
+    private static final int SIZE = 15;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Build a book from a text archive of three games. The first two play
+     * J10 after H8, J9, and the third plays a reflection of the same
+     * opening, but continues differently and only once.
+     */
+    private Path buildBook() throws IOException {
+        Path archive = directory.resolve("games.txt");
+        Files.write(archive, Arrays.asList(
+                "15",
+                "H8,J9,J10,J7",
+                "H8,J9,J10,G7",
+                "H8,G6,F7,H6"));
+        OpeningBookBuilder builder = new OpeningBookBuilder(SIZE, 4);
+        builder.addArchive(directory);
+        assertEquals(3, builder.getGames());
+        Path book = directory.resolve("book.bin");
+        builder.write(book, 2);
+        return book;
+    }
+
+    private static State createState(Move... moves) {
+        State state = new State(SIZE);
+        for(Move move : moves) {
+            state.makeMove(move);
+        }
+        return state;
+    }
+
+    private static Move parse(String move) {
+        return BenchmarkPositions.parse(move, SIZE).get(0);
+    }
+
+    @Test
+    public void testProbe() throws IOException {
+        OpeningBook book = OpeningBook.open(buildBook());
+        assertEquals(SIZE, book.getSize());
+        assertEquals(parse("H8"), book.probe(createState()));
+        assertEquals(parse("J10"), book.probe(createState(parse("H8"),
+                parse("J9"))));
+        // Only played once, below the minimum weight
+        assertNull(book.probe(createState(parse("H8"), parse("G6"),
+                parse("F7"))));
+        assertNull(book.probe(createState(parse("A1"))));
+        assertNull(book.probe(new State(19)));
+    }
+
+    @Test
+    public void testProbeSymmetricPositions() throws IOException {
+        OpeningBook book = OpeningBook.open(buildBook());
+        Symmetry symmetry = Symmetry.forSize(SIZE);
+        Move first = parse("H8");
+        Move second = parse("J9");
+        Move expected = parse("J10");
+        for(int s = 0; s < Symmetry.COUNT; s++) {
+            State state = new State(SIZE);
+            state.makeMove(symmetry.apply(s, first.row * SIZE + first.col));
+            state.makeMove(symmetry.apply(s, second.row * SIZE + second.col));
+            int field = symmetry.apply(s, expected.row * SIZE + expected.col);
+            assertEquals(new Move(field / SIZE, field % SIZE),
+                    book.probe(state));
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        Path file = directory.resolve("invalid.bin");
+        Files.write(file, new byte[OpeningBook.HEADER_BYTES
+                + OpeningBook.ENTRY_BYTES]);
+        assertThrows(IOException.class, () -> OpeningBook.open(file));
+    }
+
+    @Test
+    public void testPlayerUsesBook() throws IOException {
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setOpeningBookFile(buildBook().toString());
+        settings.setPonderingEnabled(false);
+        NegamaxPlayer player = new NegamaxPlayer(settings);
+        player.setupGame(1, SIZE, 1000, 0);
+        List<Move> moves = new ArrayList<>(Arrays.asList(parse("H8"),
+                parse("J9")));
+        assertEquals(parse("J10"), player.loadBoard(moves, 0));
+        assertEquals(0, player.getNodeCount());
+        player.cleanup();
+    }
+}
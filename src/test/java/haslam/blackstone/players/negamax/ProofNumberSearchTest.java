@@ -0,0 +1,77 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static haslam.blackstone.players.negamax.TestPositions.DOUBLE_THREE;
+import static haslam.blackstone.players.negamax.TestPositions.setupState;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class ProofNumberSearchTest {
+
+    @Test
+    public void testWin() {
+        State state = setupState(DOUBLE_THREE);
+        long hash = state.getZobristHash();
+        ProofNumberSearch search = new ProofNumberSearch(state, 16);
+
+        assertEquals(ProofNumberSearch.WIN, search.solve(1000000,
+                Long.MAX_VALUE));
+        assertEquals(hash, state.getZobristHash());
+
+        // The line is a real win: playing it out makes five
+        List<Move> line = search.getWinningLine();
+        line.forEach(state::makeMove);
+        assertEquals(1, state.terminal());
+    }
+
+    @Test
+    public void testLoss() {
+        // Player 2 to move against a double three, with no fours to counter
+        State state = setupState(DOUBLE_THREE);
+        state.makeMove(new Move(7, 9));
+        ProofNumberSearch search = new ProofNumberSearch(state, 16);
+
+        assertEquals(ProofNumberSearch.LOSS, search.solve(1000000,
+                Long.MAX_VALUE));
+        List<Move> line = search.getWinningLine();
+        line.forEach(state::makeMove);
+        assertEquals(1, state.terminal());
+    }
+
+    /**
+     * The double three is no win when the defender can answer it with fours
+     * of their own: player 2 has twos on row 0 and column 0, blocked at the
+     * far end, which (0,0) turns into two fours.
+     */
+    @Test
+    public void testDefenderFoursRefuteThreats() {
+        State state = setupState(new int[][] {{7, 7}, {0, 1}, {7, 8},
+                {0, 2}, {8, 9}, {0, 3}, {9, 9}, {1, 0}, {0, 5}, {2, 0},
+                {5, 0}, {3, 0}});
+        ProofNumberSearch search = new ProofNumberSearch(state, 16);
+
+        assertNotEquals(ProofNumberSearch.WIN, search.solve(1000000,
+                Long.MAX_VALUE));
+
+        // After the double three, the fours win for player 2
+        state.makeMove(new Move(7, 9));
+        assertEquals(ProofNumberSearch.WIN, search.solve(1000000,
+                Long.MAX_VALUE));
+        assertEquals(new Move(0, 0), search.getWinningLine().get(0));
+    }
+
+    @Test
+    public void testUnknown() {
+        // Nothing to prove for either player this early
+        State state = setupState(new int[][] {{7, 7}, {7, 8}});
+        ProofNumberSearch search = new ProofNumberSearch(state, 16);
+
+        assertEquals(ProofNumberSearch.UNKNOWN, search.solve(10000,
+                Long.MAX_VALUE));
+    }
+
+}
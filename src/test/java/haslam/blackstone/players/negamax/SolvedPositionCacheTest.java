@@ -0,0 +1,211 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SolvedPositionCacheTest {
+
+    private static final int SIZE = 15;
+
+    @TempDir
+    Path directory;
+
+    private static State createState(String moves) {
+        State state = new State(SIZE);
+        for(Move move : BenchmarkPositions.parse(moves, SIZE)) {
+            state.makeMove(move);
+        }
+        return state;
+    }
+
+    private static int field(String move) {
+        Move parsed = BenchmarkPositions.parse(move, SIZE).get(0);
+        return parsed.row * SIZE + parsed.col;
+    }
+
+    /**
+     * Store more entries than are first mapped, so the file has to grow,
+     * and check they are all still found after the file is reopened. Each
+     * position holds two stones, the first on the top edge and left of the
+     * middle (so no position is an image of another), and the move stored
+     * is the field after the second.
+     */
+    @Test
+    public void testEntriesSurviveReopening() throws IOException {
+        Path file = directory.resolve("solved.bin");
+        SolvedPositionCache cache = SolvedPositionCache.open(file, SIZE);
+        int positions = 0;
+        for(int first = 1; first < 7; first++) {
+            for(int second = first + 1; second < SIZE * SIZE - 1; second++) {
+                State state = new State(SIZE);
+                state.makeMove(first);
+                state.makeMove(second);
+                cache.store(state, second + 1, Evaluator.WIN_SCORE);
+                positions++;
+            }
+        }
+        // Storing the same result again doesn't add an entry
+        State state = new State(SIZE);
+        state.makeMove(1);
+        state.makeMove(2);
+        cache.store(state, 3, Evaluator.WIN_SCORE);
+        cache.flush();
+        assertEquals(positions, cache.getEntryCount());
+        cache.close();
+
+        cache = SolvedPositionCache.open(file, SIZE);
+        assertEquals(positions, cache.getEntryCount());
+        for(int first = 1; first < 7; first++) {
+            for(int second = first + 1; second < SIZE * SIZE - 1; second++) {
+                state = new State(SIZE);
+                state.makeMove(first);
+                state.makeMove(second);
+                long entry = cache.probe(state);
+                assertEquals(second + 1, SolvedPositionCache.getMove(entry));
+                assertEquals(Evaluator.WIN_SCORE, SolvedPositionCache
+                        .getScore(entry));
+            }
+        }
+        assertEquals(0, cache.probe(createState("H8")));
+        cache.close();
+    }
+
+    /**
+     * A newer result for a position replaces the older one, and is found
+     * in every rotation and reflection of the position.
+     */
+    @Test
+    public void testProbeSymmetricPositions() throws IOException {
+        Path file = directory.resolve("solved.bin");
+        SolvedPositionCache cache = SolvedPositionCache.open(file, SIZE);
+        State state = createState("H8,J9,H9");
+        cache.store(state, field("H7"), -Evaluator.WIN_SCORE);
+        cache.store(state, field("H10"), -Evaluator.WIN_SCORE + 4);
+        cache.flush();
+
+        Symmetry symmetry = Symmetry.forSize(SIZE);
+        for(int s = 0; s < Symmetry.COUNT; s++) {
+            State image = new State(SIZE);
+            for(String move : new String[] {"H8", "J9", "H9"}) {
+                image.makeMove(symmetry.apply(s, field(move)));
+            }
+            long entry = cache.probe(image);
+            assertEquals(symmetry.apply(s, field("H10")),
+                    SolvedPositionCache.getMove(entry));
+            assertEquals(-Evaluator.WIN_SCORE + 4,
+                    SolvedPositionCache.getScore(entry));
+        }
+        assertEquals(0, cache.probe(createState("H8,J9")));
+        assertEquals(0, cache.probe(new State(19)));
+        cache.close();
+    }
+
+    @Test
+    public void testSharedAndInvalidFiles() throws IOException {
+        Path file = directory.resolve("solved.bin");
+        SolvedPositionCache cache = SolvedPositionCache.open(file, SIZE);
+        assertSame(cache, SolvedPositionCache.open(file, SIZE));
+        assertThrows(IOException.class, () -> SolvedPositionCache.open(file,
+                19));
+        cache.close();
+        cache.close();
+        assertThrows(IOException.class, () -> SolvedPositionCache.open(file,
+                19));
+
+        Path invalid = directory.resolve("invalid.bin");
+        Files.write(invalid, new byte[SolvedPositionCache.HEADER_BYTES]);
+        assertThrows(IOException.class, () -> SolvedPositionCache.open(
+                invalid, SIZE));
+    }
+
+    /**
+     * A file written with other Zobrist keys, or by an older version, holds
+     * hashes of unrelated positions and must not be read.
+     */
+    @Test
+    public void testOtherKeysRejected() throws IOException {
+        Path file = directory.resolve("solved.bin");
+        writeHeader(file, SolvedPositionCache.VERSION, State
+                .getZobristFingerprint(SIZE));
+        SolvedPositionCache.open(file, SIZE).close();
+
+        writeHeader(file, SolvedPositionCache.VERSION, State
+                .getZobristFingerprint(SIZE) + 1);
+        assertThrows(IOException.class, () -> SolvedPositionCache.open(file,
+                SIZE));
+        writeHeader(file, 1, State.getZobristFingerprint(SIZE));
+        assertThrows(IOException.class, () -> SolvedPositionCache.open(file,
+                SIZE));
+    }
+
+    private static void writeHeader(Path file, int version, long fingerprint)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SolvedPositionCache
+                .HEADER_BYTES);
+        header.putInt(SolvedPositionCache.MAGIC).putInt(version).putInt(SIZE)
+                .putInt(0).putLong(fingerprint);
+        Files.write(file, header.array());
+    }
+
+    /**
+     * Check that the player plays a cached move without searching, and that
+     * it stores the forced wins it finds itself.
+     */
+    @Test
+    public void testPlayerUsesCache() throws IOException {
+        Path file = directory.resolve("solved.bin");
+        SolvedPositionCache cache = SolvedPositionCache.open(file, SIZE);
+        cache.store(createState("H8,J9"), field("A1"), Evaluator.WIN_SCORE);
+        cache.close();
+
+        NegamaxSettings settings = NegamaxSettings.withDefaults();
+        settings.setSolvedCacheFile(file.toString());
+        settings.setPonderingEnabled(false);
+        NegamaxPlayer player = new NegamaxPlayer(settings);
+        player.setupGame(1, SIZE, 1000, 0);
+        assertEquals(BenchmarkPositions.parse("A1", SIZE).get(0), player
+                .loadBoard(parseMoves("H8,J9"), 0));
+        assertEquals(0, player.getNodeCount());
+
+        // An open four, won straight away
+        Move win = player.loadBoard(parseMoves("H8,A1,J8,A3,K8,A5,L8,A7"), 0);
+        player.cleanup();
+        cache = SolvedPositionCache.open(file, SIZE);
+        long entry = cache.probe(createState("H8,A1,J8,A3,K8,A5,L8,A7"));
+        assertEquals(win.row * SIZE + win.col, SolvedPositionCache.getMove(
+                entry));
+        assertEquals(2, cache.getEntryCount());
+        cache.close();
+
+        // The next game opens the cache again, even if it was set up twice
+        player.setupGame(1, SIZE, 1000, 0);
+        player.setupGame(1, SIZE, 1000, 0);
+        assertEquals(BenchmarkPositions.parse("A1", SIZE).get(0), player
+                .loadBoard(parseMoves("H8,J9"), 0));
+        player.cleanup();
+        // Every open was closed, so the file is no longer locked
+        try(FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            assertNotNull(channel.tryLock());
+        }
+    }
+
+    private static List<Move> parseMoves(String moves) {
+        return new ArrayList<>(BenchmarkPositions.parse(moves, SIZE));
+    }
+}
@@ -0,0 +1,293 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StateTest {
+
+    /**
+     * Zobrist keys come from a fixed seed, so hashes are the same on every
+     * run and every machine (persisted hashes and bench signatures rely on
+     * this).
+     */
+    @Test
+    public void testFixedZobristKeys() {
+        State state = new State(15);
+        state.makeMove(new Move(7, 7));
+        assertEquals(1743710905574963260L, state.getZobristHash());
+        state.makeMove(new Move(7, 8));
+        assertEquals(6969635374618416474L, state.getZobristHash());
+    }
+
+    /**
+     * Play random moves alongside their images under every symmetry, checking
+     * that the incrementally maintained symmetric hashes match the hashes of
+     * the images, and that every image has the same canonical hash.
+     */
+    @Test
+    public void testSymmetricHashes() {
+        int size = 15;
+        Symmetry symmetry = Symmetry.forSize(size);
+        State state = new State(size);
+        State[] images = new State[Symmetry.COUNT];
+        for(int s = 0; s < Symmetry.COUNT; s++) {
+            images[s] = new State(size);
+        }
+        List<Move> moves = randomMoves(size, new Random(1)).subList(0, 40);
+        for(Move move : moves) {
+            int field = move.row * size + move.col;
+            state.makeMove(field);
+            for(int s = 0; s < Symmetry.COUNT; s++) {
+                images[s].makeMove(symmetry.apply(s, field));
+                assertEquals(images[s].getZobristHash(),
+                        state.getSymmetricHash(s));
+                assertEquals(state.getCanonicalHash(),
+                        images[s].getCanonicalHash());
+            }
+        }
+        Collections.reverse(moves);
+        for(Move move : moves) {
+            state.undoMove(move);
+        }
+        for(int s = 0; s < Symmetry.COUNT; s++) {
+            assertEquals(0, state.getSymmetricHash(s));
+        }
+    }
+
+    @Test
+    public void testIsSymmetric() {
+        State state = new State(15);
+        state.makeMove(new Move(7, 7));
+        for(int s = 0; s < Symmetry.COUNT; s++) {
+            assertTrue(state.isSymmetric(s));
+        }
+        // Only the diagonal reflections keep a diagonal pair of stones
+        state.makeMove(new Move(8, 8));
+        int symmetric = 0;
+        for(int s = 0; s < Symmetry.COUNT; s++) {
+            if(state.isSymmetric(s)) symmetric++;
+        }
+        assertEquals(2, symmetric);
+        state.makeMove(new Move(7, 8));
+        for(int s = 1; s < Symmetry.COUNT; s++) {
+            assertFalse(state.isSymmetric(s));
+        }
+    }
+
+    /**
+     * Fill a board in a random order, checking the incrementally maintained
+     * scores against a full evaluation of every stone after each move, and
+     * again while undoing every move.
+     */
+    @Test
+    public void testIncrementalScores() {
+        for(int size : new int[] {15, 19}) {
+            State state = new State(size);
+            List<Move> moves = randomMoves(size, new Random(size));
+            for(Move move : moves) {
+                state.makeMove(move);
+                assertScores(state);
+            }
+            Collections.reverse(moves);
+            for(Move move : moves) {
+                state.undoMove(move);
+                assertScores(state);
+            }
+            assertEquals(0, state.getScore(1));
+            assertEquals(0, state.getScore(2));
+        }
+    }
+
+    /**
+     * Check the line windows read from the bitboards against the fields
+     * around every point on a randomly filled board, including windows
+     * which run off the edge of the board.
+     */
+    @Test
+    public void testWindows() {
+        for(int size : new int[] {15, 19}) {
+            State state = new State(size);
+            int[][] board = new int[size][size];
+            for(Move move : randomMoves(size, new Random(size + 1))) {
+                board[move.row][move.col] = state.currentIndex;
+                state.makeMove(move);
+            }
+            for(int row = 0; row < size; row++) {
+                for(int col = 0; col < size; col++) {
+                    for(int direction = 0; direction < 4; direction++) {
+                        for(int index = 1; index <= 2; index++) {
+                            int stones = 0;
+                            int blocked = 0;
+                            for(int k = 0; k < 9; k++) {
+                                int r = row + (k - 4) * BoardLines
+                                        .ROW_STEP[direction];
+                                int c = col + (k - 4) * BoardLines
+                                        .COL_STEP[direction];
+                                if(r < 0 || c < 0 || r >= size || c >= size) {
+                                    blocked |= 1 << k;
+                                } else if(board[r][c] == index) {
+                                    stones |= 1 << k;
+                                } else if(board[r][c] != 0) {
+                                    blocked |= 1 << k;
+                                }
+                            }
+                            assertEquals(stones, state.getStones(index, row,
+                                    col, direction));
+                            assertEquals(blocked, state.getBlocked(index, row,
+                                    col, direction));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the incrementally maintained threat squares against a scan of
+     * every stone on the board, while filling and emptying a board.
+     */
+    @Test
+    public void testIncrementalThreats() {
+        State state = new State(15);
+        List<Move> moves = randomMoves(15, new Random(2));
+        for(Move move : moves) {
+            state.makeMove(move);
+            assertThreats(state);
+        }
+        Collections.reverse(moves);
+        for(Move move : moves) {
+            state.undoMove(move);
+            assertThreats(state);
+        }
+    }
+
+    private static void assertThreats(State state) {
+        for(int index = 1; index <= 2; index++) {
+            Set<Move> fours = new HashSet<>();
+            Set<Move> threes = new HashSet<>();
+            Set<Move> refutations = new HashSet<>();
+            for(int row = 0; row < state.size; row++) {
+                for(int col = 0; col < state.size; col++) {
+                    if(state.getIndex(row, col) == index) {
+                        fours.addAll(ThreatUtils.getFours(state, row, col,
+                                index));
+                        threes.addAll(ThreatUtils.getThrees(state, row, col,
+                                index));
+                        refutations.addAll(ThreatUtils.getRefutations(state,
+                                row, col, index));
+                    }
+                }
+            }
+            assertEquals(fours, getThreats(state, State.FOUR_SQUARES, index));
+            assertEquals(threes, getThreats(state, State.THREE_SQUARES,
+                    index));
+            assertEquals(refutations, getThreats(state, State
+                    .REFUTATION_SQUARES, index));
+            assertEquals(!fours.isEmpty(), state.hasThreats(State
+                    .FOUR_SQUARES, index));
+        }
+    }
+
+    private static Set<Move> getThreats(State state, int type, int index) {
+        int[] fields = new int[4 * state.size * state.size];
+        int count = state.getThreats(type, index, fields, 0);
+        Set<Move> moves = new HashSet<>();
+        for(int i = 0; i < count; i++) {
+            moves.add(new Move(fields[i] / state.size, fields[i] % state
+                    .size));
+        }
+        return moves;
+    }
+
+    /**
+     * Check the candidate set for every radius against the empty fields
+     * with a stone in reach, while filling and emptying a board.
+     */
+    @Test
+    public void testCandidates() {
+        State state = new State(15);
+        List<Move> moves = randomMoves(15, new Random(3));
+        for(Move move : moves) {
+            state.makeMove(move);
+            assertCandidates(state);
+        }
+        Collections.reverse(moves);
+        for(Move move : moves) {
+            state.undoMove(move);
+            assertCandidates(state);
+        }
+    }
+
+    private static void assertCandidates(State state) {
+        for(int radius = 1; radius <= State.MAX_RADIUS; radius++) {
+            Set<Integer> expected = new HashSet<>();
+            for(int row = 0; row < state.size; row++) {
+                for(int col = 0; col < state.size; col++) {
+                    if(state.getIndex(row, col) == 0
+                            && hasStoneInReach(state, row, col, radius)) {
+                        expected.add(row * state.size + col);
+                    }
+                }
+            }
+            Set<Integer> candidates = new HashSet<>();
+            for(int i = 0; i < state.getCandidateCount(radius); i++) {
+                candidates.add(state.getCandidate(radius, i));
+            }
+            assertEquals(expected.size(), state.getCandidateCount(radius));
+            assertEquals(expected, candidates);
+        }
+    }
+
+    private static boolean hasStoneInReach(State state, int row, int col,
+                                           int radius) {
+        for(int direction = 0; direction < 4; direction++) {
+            for(int k = -radius; k <= radius; k++) {
+                int r = row + k * BoardLines.ROW_STEP[direction];
+                int c = col + k * BoardLines.COL_STEP[direction];
+                if(k != 0 && r >= 0 && c >= 0 && r < state.size
+                        && c < state.size && state.getIndex(r, c) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<Move> randomMoves(int size, Random random) {
+        List<Move> moves = new ArrayList<>();
+        for(int row = 0; row < size; row++) {
+            for(int col = 0; col < size; col++) {
+                moves.add(new Move(row, col));
+            }
+        }
+        Collections.shuffle(moves, random);
+        return moves.subList(0, size * size / 2);
+    }
+
+    private static void assertScores(State state) {
+        int[] expected = new int[3];
+        for(int row = 0; row < state.size; row++) {
+            for(int col = 0; col < state.size; col++) {
+                int index = state.getIndex(row, col);
+                if(index == 1 || index == 2) {
+                    expected[index] += Evaluator.evaluateField(state, row,
+                            col, index);
+                }
+            }
+        }
+        assertEquals(expected[1], state.getScore(1));
+        assertEquals(expected[2], state.getScore(2));
+    }
+
+}
@@ -0,0 +1,30 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+
+/**
+ * Positions shared by the search tests, and a helper to set them up.
+ */
+class TestPositions {
+
+    /**
+     * Player 1 to move, with two twos which (7,9) turns into two open
+     * threes. A win by threats, but not by fours alone.
+     */
+    static final int[][] DOUBLE_THREE = {{7, 7}, {0, 0}, {7, 8}, {0, 14},
+            {8, 9}, {14, 0}, {9, 9}, {14, 14}};
+
+    private TestPositions() {
+    }
+
+    /**
+     * Make moves on a new 15x15 state, alternating between the players.
+     */
+    static State setupState(int[][] moves) {
+        State state = new State(15);
+        for(int[] move : moves) {
+            state.makeMove(new Move(move[0], move[1]));
+        }
+        return state;
+    }
+}
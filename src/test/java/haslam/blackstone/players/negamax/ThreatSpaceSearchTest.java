@@ -0,0 +1,71 @@
+package haslam.blackstone.players.negamax;
+
+import haslam.blackstone.core.Move;
+import org.junit.jupiter.api.Test;
+
+import static haslam.blackstone.players.negamax.TestPositions.DOUBLE_THREE;
+import static haslam.blackstone.players.negamax.TestPositions.setupState;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ThreatSpaceSearchTest {
+
+    @Test
+    public void testFourThreeVcf() {
+        // A three on row 7 blocked on the left, and a two on column 10
+        // which (7,10) turns into a four and an open three
+        State state = setupState(new int[][] {{7, 7}, {7, 6}, {7, 8},
+                {0, 0}, {7, 9}, {0, 2}, {8, 10}, {14, 14}, {9, 10},
+                {14, 12}});
+        long hash = state.getZobristHash();
+        ThreatSpaceSearch search = new ThreatSpaceSearch(state, 16);
+
+        // The four is blocked at (7,11), then the three becomes an open four
+        assertEquals(-1, search.solve(false, 1, Long.MAX_VALUE,
+                Integer.MAX_VALUE));
+        assertEquals(7 * 15 + 10, search.solve(false, ThreatSpaceSearch
+                .MAX_DEPTH, Long.MAX_VALUE, Integer.MAX_VALUE));
+        assertEquals(2, search.getWinningDepth());
+        assertEquals(hash, state.getZobristHash());
+    }
+
+    @Test
+    public void testThreeThreeVct() {
+        State state = setupState(DOUBLE_THREE);
+        long hash = state.getZobristHash();
+        ThreatSpaceSearch search = new ThreatSpaceSearch(state, 16);
+
+        // Without a three there are no fours to make
+        assertEquals(-1, search.solve(false, ThreatSpaceSearch.MAX_DEPTH,
+                Long.MAX_VALUE, Integer.MAX_VALUE));
+        assertEquals(0, search.getWinningDepth());
+        int win = search.solve(true, ThreatSpaceSearch.MAX_DEPTH,
+                Long.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(7 * 15 + 9, win);
+        assertEquals(hash, state.getZobristHash());
+    }
+
+    /**
+     * Search for both players on the same instance. Black has to block the
+     * four on column 7 at (6,7), which makes a four of its own, but white's
+     * block at (7,7) makes an open four on row 7. White's win after the
+     * block must not be read back from the table as a win for black.
+     */
+    @Test
+    public void testResultsKeptPerAttacker() {
+        State state = setupState(new int[][] {{1, 7}, {2, 7}, {8, 7},
+                {3, 7}, {9, 7}, {4, 7}, {10, 7}, {5, 7}, {0, 0}, {11, 7},
+                {0, 14}, {7, 4}, {14, 0}, {7, 5}, {14, 14}, {7, 6}});
+        ThreatSpaceSearch search = new ThreatSpaceSearch(state, 16);
+        assertEquals(-1, search.solve(false, ThreatSpaceSearch.MAX_DEPTH,
+                Long.MAX_VALUE, Integer.MAX_VALUE));
+
+        state.makeMove(new Move(6, 7));
+        assertEquals(7 * 15 + 7, search.solve(false, ThreatSpaceSearch
+                .MAX_DEPTH, Long.MAX_VALUE, Integer.MAX_VALUE));
+        state.undoMove(new Move(6, 7));
+
+        assertEquals(-1, search.solve(false, ThreatSpaceSearch.MAX_DEPTH,
+                Long.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+}
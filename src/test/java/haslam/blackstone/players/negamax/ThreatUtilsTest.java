@@ -54,4 +54,33 @@ public class ThreatUtilsTest {
         assertEquals(new HashSet<>(threeMoves).size(), 3);
     }
 
+    @Test
+    public void testThreatClasses() {
+        // Windows are read from bit 0, bit 4 is the centre field
+        assertEquals(ThreatUtils.FIVE, ThreatUtils.getThreatClass(ThreatUtils
+                .lookup(0b000111110, 0)));
+        assertEquals(ThreatUtils.OPEN_FOUR, ThreatUtils.getThreatClass(
+                ThreatUtils.lookup(0b000111100, 0)));
+        assertEquals(ThreatUtils.FOUR, ThreatUtils.getThreatClass(ThreatUtils
+                .lookup(0b000111100, 0b000000010)));
+        assertEquals(ThreatUtils.FOUR, ThreatUtils.getThreatClass(ThreatUtils
+                .lookup(0b000110110, 0)));
+        assertEquals(ThreatUtils.OPEN_THREE, ThreatUtils.getThreatClass(
+                ThreatUtils.lookup(0b000011100, 0)));
+        assertEquals(ThreatUtils.BROKEN_THREE, ThreatUtils.getThreatClass(
+                ThreatUtils.lookup(0b000110100, 0)));
+        assertEquals(ThreatUtils.NONE, ThreatUtils.getThreatClass(ThreatUtils
+                .lookup(0b000011100, 0b100000010)));
+    }
+
+    @Test
+    public void testEveryOccurrence() {
+        // __XXX____: both straight three patterns match
+        int entry = ThreatUtils.lookup(0b000011100, 0);
+        assertEquals(0b001100011, ThreatUtils.getThreeSquares(entry));
+        // Four squares on both sides of the gap are found: XXXX_XXXX
+        entry = ThreatUtils.lookup(0b111101111, 0);
+        assertEquals(0b000010000, ThreatUtils.getFourSquares(entry));
+    }
+
 }
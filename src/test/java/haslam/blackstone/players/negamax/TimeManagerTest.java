@@ -0,0 +1,63 @@
+package haslam.blackstone.players.negamax;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeManagerTest {
+
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void testLimits() {
+        // Game time only: spread over the moves left, never over the limit
+        TimeManager manager = new TimeManager(0, 1200000);
+        manager.startMove(1200000, 0);
+        assertTrue(manager.getSoftLimit() < manager.getHardLimit());
+        assertTrue(manager.getHardLimit() < 1200000 * MILLIS);
+        long early = manager.getSoftLimit();
+        manager.startMove(1200000, 60);
+        assertTrue(manager.getSoftLimit() > early);
+
+        // Move time only
+        manager = new TimeManager(5000, 0);
+        manager.startMove(0, 10);
+        assertTrue(manager.getHardLimit() < 5000 * MILLIS);
+        assertTrue(manager.getSoftLimit() < manager.getHardLimit());
+
+        // Both, the move time caps the hard limit
+        manager = new TimeManager(1000, 1200000);
+        manager.startMove(1200000, 10);
+        assertTrue(manager.getHardLimit() < 1000 * MILLIS);
+        assertTrue(manager.getSoftLimit() <= manager.getHardLimit());
+
+        // Almost out of game time
+        manager = new TimeManager(0, 1200000);
+        manager.startMove(10, 100);
+        assertEquals(MILLIS, manager.getHardLimit());
+    }
+
+    @Test
+    public void testStability() {
+        TimeManager manager = new TimeManager(10000, 0);
+        manager.startMove(0, 10);
+        long soft = manager.getSoftLimit();
+
+        // Just under the usual point to stop, while the move is new
+        long elapsed = soft / 2 - 1;
+        assertFalse(manager.stopAfterIteration(elapsed, 1, 0));
+        // The best move changed, so the search gets longer
+        assertFalse(manager.stopAfterIteration(soft / 2 + 1, 2, 0));
+        // Once stable, the search stops early
+        manager.stopAfterIteration(0, 2, 0);
+        manager.stopAfterIteration(0, 2, 0);
+        assertTrue(manager.stopAfterIteration(soft / 4 + 1, 2, 0));
+
+        // A proven result stops the search straight away
+        manager.startMove(0, 10);
+        assertTrue(manager.stopAfterIteration(0, 1, Evaluator.WIN_SCORE));
+    }
+
+}
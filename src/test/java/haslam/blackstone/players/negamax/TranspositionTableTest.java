@@ -0,0 +1,46 @@
+package haslam.blackstone.players.negamax;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(0x1234L, 5, -250, TranspositionTable.LOWER_BOUND, 112);
+
+        long entry = table.probe(0x1234L);
+        assertEquals(5, TranspositionTable.getDepth(entry));
+        assertEquals(-250, TranspositionTable.getScore(entry));
+        assertEquals(TranspositionTable.LOWER_BOUND,
+                TranspositionTable.getBound(entry));
+        assertEquals(112, TranspositionTable.getMove(entry));
+
+        // Unknown states are not found
+        assertEquals(0, table.probe(0x4321L));
+    }
+
+    @Test
+    public void testReplacementPolicy() {
+        TranspositionTable table = new TranspositionTable(1);
+        // Keys which map to the same bucket
+        long deep = 1L << 48;
+        long shallow = 2L << 48;
+        long shallower = 3L << 48;
+
+        table.store(deep, 6, 10, TranspositionTable.EXACT, 1);
+        table.store(shallow, 2, 20, TranspositionTable.EXACT, 2);
+        // The deep entry is kept in the depth-preferred slot
+        assertEquals(6, TranspositionTable.getDepth(table.probe(deep)));
+        assertEquals(2, TranspositionTable.getDepth(table.probe(shallow)));
+
+        // The always-replace slot is overwritten by the newest result
+        table.store(shallower, 1, 30, TranspositionTable.EXACT, 3);
+        assertEquals(6, TranspositionTable.getDepth(table.probe(deep)));
+        assertEquals(0, table.probe(shallow));
+        assertEquals(30, TranspositionTable.getScore(table.probe(shallower)));
+    }
+
+}
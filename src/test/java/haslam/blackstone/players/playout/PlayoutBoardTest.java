@@ -0,0 +1,92 @@
+package haslam.blackstone.players.playout;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlayoutBoardTest {
+
+    private static int field(int row, int col) {
+        return row * 15 + col;
+    }
+
+    @Test
+    public void testFindFive() {
+        PlayoutBoard board = new PlayoutBoard(15);
+        // Black: a broken four on row 7 (gap at col 5), white elsewhere
+        board.makeMove(field(7, 3));
+        board.makeMove(field(0, 0));
+        board.makeMove(field(7, 4));
+        board.makeMove(field(0, 2));
+        board.makeMove(field(7, 6));
+        board.makeMove(field(0, 4));
+        board.makeMove(field(7, 7));
+        assertEquals(field(7, 5), board.findFive(1, field(7, 7)));
+        assertEquals(field(7, 5), board.findFive(1, field(7, 3)));
+        assertEquals(-1, board.findFive(2, field(0, 4)));
+        assertEquals(-1, board.findFive(1, -1));
+        assertEquals(field(7, 5), PlayoutPolicy.findForcedMove(board));
+
+        // Blocked by white, and no five through the other lines
+        board.makeMove(field(7, 5));
+        assertEquals(-1, board.findFive(1, field(7, 7)));
+        assertEquals(-1, PlayoutPolicy.findForcedMove(board));
+    }
+
+    @Test
+    public void testTerminal() {
+        PlayoutBoard board = new PlayoutBoard(15);
+        for(int i = 0; i < 4; i++) {
+            board.makeMove(field(i, i));
+            board.makeMove(field(i, 14));
+        }
+        assertEquals(0, board.terminal());
+        board.makeMove(field(4, 4));
+        assertEquals(1, board.terminal());
+        board.undoMove();
+        assertEquals(0, board.terminal());
+        assertEquals(1, board.getCurrentIndex());
+    }
+
+    @Test
+    public void testPlayoutRestoresBoard() {
+        PlayoutBoard board = new PlayoutBoard(15);
+        board.makeMove(field(7, 7));
+        board.makeMove(field(7, 8));
+        int[] before = new int[15 * 15];
+        int candidates = board.getCandidates(before);
+
+        SplittableRandom random = new SplittableRandom(1);
+        for(PlayoutPolicy policy : PlayoutPolicy.values()) {
+            for(int i = 0; i < 100; i++) {
+                int result = board.playout(policy, random);
+                assertTrue(result >= 1 && result <= 3);
+                assertEquals(2, board.getMoves());
+                assertEquals(0, board.terminal());
+                assertEquals(1, board.getCurrentIndex());
+                assertEquals(field(7, 8), board.getLastMove());
+                int[] after = new int[15 * 15];
+                assertEquals(candidates, board.getCandidates(after));
+            }
+        }
+    }
+
+    @Test
+    public void testUniformCoversEveryEmptyField() {
+        PlayoutBoard board = new PlayoutBoard(5);
+        board.makeMove(12);
+        SplittableRandom random = new SplittableRandom(1);
+        Set<Integer> seen = new HashSet<>();
+        for(int i = 0; i < 1000; i++) {
+            int field = PlayoutPolicy.UNIFORM.selectMove(board, random);
+            assertEquals(0, board.getIndex(field));
+            seen.add(field);
+        }
+        assertEquals(24, seen.size());
+    }
+}